@@ -0,0 +1,20 @@
+package com.downloader.benchmarks;
+
+import java.util.Arrays;
+import org.openjdk.jmh.Main;
+
+//runs the suites like the plain JMH main, results are written as JSON unless another format is asked for
+public class BenchmarkRunner {
+
+    private static final String[] JSON_RESULTS = {"-rf", "json", "-rff", "target/jmh-result.json"};
+
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("-rf")) {
+            Main.main(args);
+            return;
+        }
+        var withResults = Arrays.copyOf(args, args.length + JSON_RESULTS.length);
+        System.arraycopy(JSON_RESULTS, 0, withResults, args.length, JSON_RESULTS.length);
+        Main.main(withResults);
+    }
+}
@@ -0,0 +1,182 @@
+package com.downloader.benchmarks;
+
+import com.downloader.TestProperties;
+import com.downloader.entity.*;
+import com.downloader.service.*;
+import com.downloader.task.DownloadTask;
+import com.downloader.task.direct.DirectDownloadTask;
+import com.downloader.task.io.DirectBufferPool;
+import com.downloader.task.reactive.ReactiveDownloadTask;
+import com.sun.management.OperatingSystemMXBean;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.*;
+import okio.Buffer;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+//a batch of downloads running at once per engine, each on a virtual thread like the service runs them. The body is
+//throttled by the server so the connections overlap; cpu time per batch is reported next to the wall time, run with
+//-prof gc for the allocation side. The server shares the process and its cpu is part of the figure for both engines
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class ConcurrentDownloadBenchmark {
+
+    @Param({"BLOCKING", "REACTIVE"})
+    private DownloadEngine engine;
+
+    @Param({"1000"})
+    private int downloads;
+
+    @Param({"262144"})
+    private int bodySize;
+
+    private MockWebServer server;
+    private OkHttpClient okHttpClient;
+    private ConnectionProvider connections;
+    private WebClient webClient;
+    private DownloadMetrics metrics;
+    private DownloadSink downloadSink;
+    private BandwidthLimiter bandwidthLimiter;
+    private DirectBufferPool bufferPool;
+    private DiskWriteScheduler diskWriteScheduler;
+    private Path outputPath;
+    private byte[] body;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Cpu {
+
+        public long cpuMillis;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        body = new byte[bodySize];
+        new Random(42).nextBytes(body);
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                    .setBody(new Buffer().write(body))
+                    .throttleBody(64 * 1024, 100, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+
+        var properties = TestProperties.defaults();
+        okHttpClient = new OkHttpClient
+            .Builder()
+            .connectionPool(new ConnectionPool(downloads, 5, TimeUnit.MINUTES))
+            .build();
+        connections = ConnectionProvider
+            .builder("benchmark")
+            .maxConnections(downloads)
+            .pendingAcquireMaxCount(-1)
+            .build();
+        webClient = WebClient
+            .builder()
+            .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+            .build();
+        metrics = new DownloadMetrics(new SimpleMeterRegistry());
+        downloadSink = new DownloadSink(properties, metrics);
+        downloadSink.start();
+        bandwidthLimiter = new BandwidthLimiter(properties);
+        bufferPool = new DirectBufferPool(
+            (int) properties.io().minBuffer().toBytes(),
+            (int) properties.io().maxBuffer().toBytes()
+        );
+        diskWriteScheduler = new DiskWriteScheduler(properties, bufferPool, metrics);
+        outputPath = Files.createTempDirectory("dload-bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.shutdown();
+        downloadSink.close();
+        okHttpClient.dispatcher().executorService().shutdown();
+        okHttpClient.connectionPool().evictAll();
+        connections.dispose();
+        FileUtils.deleteQuietly(outputPath.toFile());
+    }
+
+    @TearDown(Level.Invocation)
+    public void clean() throws IOException {
+        FileUtils.cleanDirectory(outputPath.toFile());
+    }
+
+    @Benchmark
+    public long downloadAll(Cpu cpu) throws Exception {
+        var os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        var cpuStarted = os.getProcessCpuTime();
+        var infos = new ArrayList<DownloadInfo>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < downloads; i++) {
+                var downloadInfo = newDownload();
+                infos.add(downloadInfo);
+                executor.execute(newTask(downloadInfo));
+            }
+        }
+        cpu.cpuMillis += TimeUnit.NANOSECONDS.toMillis(os.getProcessCpuTime() - cpuStarted);
+        return infos
+            .stream()
+            .peek(info -> {
+                if (info.getStatus() != DownloadStatus.COMPLETED) {
+                    throw new IllegalStateException("Download did not complete: " + info.getError());
+                }
+            })
+            .mapToLong(DownloadInfo::getTotalSize)
+            .sum();
+    }
+
+    private DownloadInfo newDownload() {
+        var filename = UUID.randomUUID().toString();
+        return DownloadInfo
+            .builder()
+            .id(filename)
+            .url(server.url("/" + filename).toString())
+            .filename(filename)
+            .filePath(outputPath.resolve(filename).toString())
+            .status(DownloadStatus.QUEUED)
+            .build();
+    }
+
+    private DownloadTask newTask(DownloadInfo downloadInfo) {
+        if (engine == DownloadEngine.REACTIVE) {
+            return ReactiveDownloadTask
+                .builder()
+                .downloadInfo(downloadInfo)
+                .webClient(webClient)
+                .downloadSink(downloadSink)
+                .bandwidthLimiter(bandwidthLimiter)
+                .metrics(metrics)
+                .build();
+        }
+        return DirectDownloadTask
+            .builder()
+            .downloadInfo(downloadInfo)
+            .httpClient(okHttpClient)
+            .downloadSink(downloadSink)
+            .bandwidthLimiter(bandwidthLimiter)
+            .metrics(metrics)
+            .ioMode(IoMode.CHANNEL)
+            .bufferPool(bufferPool)
+            .diskWriteScheduler(diskWriteScheduler)
+            .build();
+    }
+}
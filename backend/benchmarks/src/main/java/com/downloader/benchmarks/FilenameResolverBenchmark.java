@@ -0,0 +1,38 @@
+package com.downloader.benchmarks;
+
+import com.downloader.service.FilenameResolver;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilenameResolverBenchmark {
+
+    private static final List<String> PLAIN = List.of("attachment; filename=\"ubuntu-24.04-desktop-amd64.iso\"");
+    private static final List<String> ENCODED = List.of(
+        "attachment; filename=\"fallback.bin\"; filename*=UTF-8''%E6%96%87%E4%BB%B6%20%28final%29.tar.gz"
+    );
+    private static final String URL = "https://mirror.example.com/pub/releases/24.04/ubuntu-24.04-desktop-amd64.iso?token=abc%20def";
+
+    private final FilenameResolver filenameResolver = new FilenameResolver();
+
+    @Benchmark
+    public String parsePlainDisposition() {
+        return filenameResolver.parseContentDisposition(PLAIN);
+    }
+
+    @Benchmark
+    public String parseEncodedDisposition() {
+        return filenameResolver.parseContentDisposition(ENCODED);
+    }
+
+    @Benchmark
+    public String resolveFromUrl() {
+        return filenameResolver.resolveFilename(URL, null, null);
+    }
+}
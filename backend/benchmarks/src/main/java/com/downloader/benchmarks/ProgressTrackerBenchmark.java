@@ -0,0 +1,58 @@
+package com.downloader.benchmarks;
+
+import com.downloader.TestProperties;
+import com.downloader.entity.*;
+import com.downloader.task.ProgressTracker;
+import com.downloader.task.estimate.SpeedEstimator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+//per-chunk progress bookkeeping, this is what every read of the download loop pays on top of the copy,
+//and the sampler pass that derives speed and progress from it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgressTrackerBenchmark {
+
+    @Param({"8192", "65536"})
+    private int chunkSize;
+
+    private ProgressTracker progressTracker;
+    private long now;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        var downloadInfo = DownloadInfo
+            .builder()
+            .id("bench")
+            .status(DownloadStatus.DOWNLOADING)
+            .totalSize(Long.MAX_VALUE)
+            .build();
+        progressTracker = new ProgressTracker(downloadInfo, () -> {
+        }, SpeedEstimator.of(TestProperties.defaults().progress()));
+        now = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public void update() {
+        progressTracker.update(chunkSize);
+    }
+
+    //segment workers of one download report into the same tracker
+    @Benchmark
+    @Threads(4)
+    public void updateContended() {
+        progressTracker.update(chunkSize);
+    }
+
+    @Benchmark
+    public void sample() {
+        progressTracker.update(chunkSize);
+        //every call is a speed calculation
+        now += 1000;
+        progressTracker.sample(now);
+    }
+}
@@ -0,0 +1,118 @@
+package com.downloader.benchmarks;
+
+import com.downloader.TestProperties;
+import com.downloader.entity.*;
+import com.downloader.service.*;
+import com.downloader.task.direct.DirectDownloadTask;
+import com.downloader.task.io.DirectBufferPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.*;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.*;
+import okio.Buffer;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.unit.DataSize;
+
+//end to end read/write loop of a direct download against an in-process server, the body is served from memory
+//so the numbers show the client side of the loop and the disk
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReadWriteLoopBenchmark {
+
+    @Param({"STREAM", "CHANNEL"})
+    private IoMode ioMode;
+
+    //upper bound of the adaptive buffer in CHANNEL mode, the STREAM loop always reads 8KB
+    @Param({"65536", "1048576", "4194304"})
+    private int maxBuffer;
+
+    @Param({"67108864"})
+    private int bodySize;
+
+    private MockWebServer server;
+    private OkHttpClient httpClient;
+    private DownloadMetrics metrics;
+    private DownloadSink downloadSink;
+    private BandwidthLimiter bandwidthLimiter;
+    private DirectBufferPool bufferPool;
+    private DiskWriteScheduler diskWriteScheduler;
+    private Path outputPath;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        body = new byte[bodySize];
+        new java.util.Random(42).nextBytes(body);
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody(new Buffer().write(body));
+            }
+        });
+        server.start();
+
+        var properties = TestProperties.with(Map.of("io.mode", ioMode, "io.max-buffer", DataSize.ofBytes(maxBuffer)));
+        httpClient = new OkHttpClient();
+        metrics = new DownloadMetrics(new SimpleMeterRegistry());
+        downloadSink = new DownloadSink(properties, metrics);
+        downloadSink.start();
+        bandwidthLimiter = new BandwidthLimiter(properties);
+        bufferPool = new DirectBufferPool(
+            (int) properties.io().minBuffer().toBytes(),
+            (int) properties.io().maxBuffer().toBytes()
+        );
+        diskWriteScheduler = new DiskWriteScheduler(properties, bufferPool, metrics);
+        outputPath = Files.createTempDirectory("dload-bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.shutdown();
+        downloadSink.close();
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+        FileUtils.deleteQuietly(outputPath.toFile());
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        var filename = UUID.randomUUID().toString();
+        var downloadInfo = DownloadInfo
+            .builder()
+            .id(filename)
+            .url(server.url("/" + filename).toString())
+            .filename(filename)
+            .filePath(outputPath.resolve(filename).toString())
+            .status(DownloadStatus.QUEUED)
+            .build();
+        DirectDownloadTask
+            .builder()
+            .downloadInfo(downloadInfo)
+            .httpClient(httpClient)
+            .downloadSink(downloadSink)
+            .bandwidthLimiter(bandwidthLimiter)
+            .metrics(metrics)
+            .ioMode(ioMode)
+            .bufferPool(bufferPool)
+            .diskWriteScheduler(diskWriteScheduler)
+            .build()
+            .run();
+        if (downloadInfo.getStatus() != DownloadStatus.COMPLETED) {
+            throw new IllegalStateException("Download did not complete: " + downloadInfo.getError());
+        }
+        var file = new File(downloadInfo.getFilePath());
+        var length = file.length();
+        Files.delete(file.toPath());
+        return length;
+    }
+}
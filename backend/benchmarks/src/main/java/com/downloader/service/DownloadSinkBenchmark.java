@@ -0,0 +1,77 @@
+package com.downloader.service;
+
+import com.downloader.TestProperties;
+import com.downloader.entity.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+
+//publish and fan-out of one tick, lives in the service package to drive the flush directly
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DownloadSinkBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    private int subscribers;
+
+    @Param({"1", "100"})
+    private int downloads;
+
+    private DownloadSink downloadSink;
+    private DownloadInfo[] infos;
+    private Disposable[] subscriptions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        downloadSink = new DownloadSink(TestProperties.defaults(), new DownloadMetrics(new SimpleMeterRegistry()));
+        subscriptions = new Disposable[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            var subscriber = new BaseSubscriber<DownloadBatch>() {
+            };
+            downloadSink.batches().subscribe(subscriber);
+            subscriptions[i] = subscriber;
+        }
+        infos = new DownloadInfo[downloads];
+        for (int i = 0; i < downloads; i++) {
+            infos[i] = DownloadInfo
+                .builder()
+                .id("download-" + i)
+                .filename("file-" + i + ".bin")
+                .status(DownloadStatus.DOWNLOADING)
+                .totalSize(1L << 30)
+                .build();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (var subscription : subscriptions) {
+            subscription.dispose();
+        }
+        downloadSink.close();
+    }
+
+    //hot path of the read loop, a map put per progress emit
+    @Benchmark
+    public void publish() {
+        for (var info : infos) {
+            downloadSink.publish(info);
+        }
+    }
+
+    //one tick, snapshotting every dirty download and handing the batch to each subscriber
+    @Benchmark
+    public void publishAndFlush() {
+        for (var info : infos) {
+            info.setDownloadedSize(info.getDownloadedSize() + 8192);
+            downloadSink.publish(info);
+        }
+        downloadSink.flush();
+    }
+}
@@ -1,9 +1,20 @@
 package com.downloader.config;
 
+import com.downloader.service.*;
+import com.downloader.task.io.DirectBufferPool;
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.binder.okhttp3.OkHttpConnectionPoolMetrics;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.concurrent.*;
 import okhttp3.*;
 import org.springframework.context.annotation.*;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
 public class AppConfig {
@@ -14,7 +25,19 @@ public class AppConfig {
     }
 
     @Bean
-    public OkHttpClient httpClient() {
+    public DirectBufferPool directBufferPool(DownloaderProperties properties) {
+        var io = properties.io();
+        return new DirectBufferPool((int) io.minBuffer().toBytes(), (int) io.maxBuffer().toBytes());
+    }
+
+    @Bean
+    public OkHttpClient httpClient(DownloadMetrics metrics, MeterRegistry registry, HostCircuitBreaker breaker,
+                                   DownloaderProperties properties) {
+        var probes = Math.max(properties.probe().concurrency(), 1);
+        //HTTP/2 hosts need a single connection, HTTP/1.1 ones one per small download running against them. Calls
+        //are all made with execute(), so the scheduler bounds them and the dispatcher is left at its defaults
+        var connectionPool = new ConnectionPool(properties.scheduler().maxActive() + probes, 5, TimeUnit.MINUTES);
+        new OkHttpConnectionPoolMetrics(connectionPool, "okhttp.pool", Tags.of("pool", "multiplexed")).bindTo(registry);
         return new OkHttpClient.Builder()
             .connectTimeout(10, TimeUnit.SECONDS)
             .readTimeout(30, TimeUnit.SECONDS)
@@ -22,17 +45,45 @@ public class AppConfig {
             .followRedirects(true)
             .followSslRedirects(true)
             .retryOnConnectionFailure(true)
-            .connectionPool(new ConnectionPool(10, 5, TimeUnit.MINUTES))
-            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
-            .addNetworkInterceptor(chain -> {
+            .connectionPool(connectionPool)
+            .eventListenerFactory(HttpMetricsListener.factory(metrics))
+            //set before OkHttp's bridge so it does not ask for gzip itself, keep-alive is the default of HTTP/1.1
+            //and a connection header is not allowed on HTTP/2
+            .addInterceptor(chain -> {
                 var request = chain
                     .request()
                     .newBuilder()
-                    .header("Connection", "keep-alive")
                     .header("Accept-Encoding", "identity")
                     .build();
                 return chain.proceed(request);
             })
+            .addInterceptor(new CircuitBreakerInterceptor(breaker))
+            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .build();
+    }
+
+    //used by the REACTIVE engine, timeouts and headers match the OkHttp client
+    @Bean
+    public WebClient webClient(HostCircuitBreaker breaker, DownloaderProperties properties) {
+        var scheduler = properties.scheduler();
+        var connections = ConnectionProvider
+            .builder("downloads")
+            .maxConnections(Math.max(scheduler.maxActive() * Math.max(properties.segments().connections(), 1), 1))
+            .pendingAcquireMaxCount(-1)
+            .maxIdleTime(Duration.ofMinutes(5))
+            .build();
+        var httpClient = HttpClient
+            .create(connections)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10_000)
+            .responseTimeout(Duration.ofSeconds(30))
+            .doOnConnected(connection -> connection.addHandlerLast(new ReadTimeoutHandler(30, TimeUnit.SECONDS)))
+            .followRedirect(true);
+        return WebClient
+            .builder()
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .defaultHeader("User-Agent", "Mozilla/5.0")
+            .defaultHeader("Accept-Encoding", "identity")
+            .filter(new CircuitBreakerFilter(breaker))
             .build();
     }
 }
@@ -4,4 +4,5 @@ public class AppConstants {
     public static final String DOWNLOAD_PATH = "/downloads";
     public static final String CONFIG_PATH = "/config";
     public static final String FILEPART_FORMAT = "%s.part";
+    public static final String EXTRACTING_FORMAT = "%s.extracting";
 }
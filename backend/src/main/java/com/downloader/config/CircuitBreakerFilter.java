@@ -0,0 +1,31 @@
+package com.downloader.config;
+
+import com.downloader.service.HostCircuitBreaker;
+import org.springframework.web.reactive.function.client.*;
+import reactor.core.publisher.Mono;
+
+//the WebClient side of CircuitBreakerInterceptor, cancelled exchanges are not signalled at all
+public class CircuitBreakerFilter implements ExchangeFilterFunction {
+
+    private final HostCircuitBreaker breaker;
+
+    public CircuitBreakerFilter(HostCircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        var host = request.url().getHost();
+        return next
+            .exchange(request)
+            .doOnNext(response -> {
+                var code = response.statusCode().value();
+                if (code >= 500 || code == 429) {
+                    breaker.onFailure(host);
+                } else {
+                    breaker.onSuccess(host);
+                }
+            })
+            .doOnError(e -> breaker.onFailure(host));
+    }
+}
@@ -0,0 +1,38 @@
+package com.downloader.config;
+
+import com.downloader.service.HostCircuitBreaker;
+import java.io.*;
+import java.net.SocketTimeoutException;
+import okhttp3.*;
+
+//feeds the breaker from every call: a host that answers is up, one that cannot be reached or answers 5xx/429 is not.
+//Calls cancelled by a pause or a cancel say nothing about the host
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    private final HostCircuitBreaker breaker;
+
+    public CircuitBreakerInterceptor(HostCircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        var host = chain.request().url().host();
+        try {
+            var response = chain.proceed(chain.request());
+            if (response.code() >= 500 || response.code() == 429) {
+                breaker.onFailure(host);
+            } else {
+                breaker.onSuccess(host);
+            }
+            return response;
+        } catch (IOException e) {
+            var cancelled = chain.call().isCanceled()
+                || e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+            if (!cancelled) {
+                breaker.onFailure(host);
+            }
+            throw e;
+        }
+    }
+}
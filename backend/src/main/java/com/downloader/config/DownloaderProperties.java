@@ -0,0 +1,80 @@
+package com.downloader.config;
+
+import com.downloader.entity.*;
+import com.downloader.task.retry.ErrorClass;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "downloader")
+public record DownloaderProperties(Segments segments, State state, Scheduler scheduler, Bandwidth bandwidth,
+                                   Events events, Probe probe, Io io, Progress progress,
+                                   Mirrors mirrors, Retry retry, Http http, Disk disk, Cache cache) {
+
+    public record Segments(int connections, DataSize minSize, DataSize minSplitSize, DataSize blockSize) {
+    }
+
+    //a mirror is dropped after maxFailures failed ranges in a row, or when its connections deliver less than
+    //slowRatio of the fastest source
+    public record Mirrors(int maxFailures, double slowRatio) {
+    }
+
+    //attempts and backoff per class of transient failure, the breaker keeps new downloads away from a failing host
+    public record Retry(RetryPolicy reset, RetryPolicy timeout, RetryPolicy serverError, RetryPolicy rateLimited,
+                        Breaker breaker) {
+
+        public RetryPolicy policy(ErrorClass errorClass) {
+            return switch (errorClass) {
+                case RESET -> reset;
+                case TIMEOUT -> timeout;
+                case SERVER_ERROR -> serverError;
+                case RATE_LIMITED -> rateLimited;
+            };
+        }
+    }
+
+    //the delay before attempt n is initialDelay * multiplier^(n-1), capped at maxDelay, of which the upper half is jitter
+    public record RetryPolicy(int maxAttempts, Duration initialDelay, Duration maxDelay, double multiplier) {
+    }
+
+    //a host is open, admitting no downloads, for openFor once failureThreshold calls to it failed in a row
+    public record Breaker(int failureThreshold, Duration openFor) {
+    }
+
+    //files smaller than multiplexBelow share their host's HTTP/2 connection, larger ones get connections of their own
+    public record Http(DataSize multiplexBelow) {
+    }
+
+    //writes are coalesced into blockSize blocks, a volume holding more than maxDirty unforced bytes has its writers
+    //force their files, and minFree is kept free when admitting downloads
+    public record Disk(DataSize blockSize, DataSize maxDirty, DataSize minFree) {
+    }
+
+    //completed files are kept under dir by their sha-256, up to maxSize in total, and handed to later downloads of
+    //the same content through reuse or the next method down (HARDLINK, REFLINK, COPY) the volume supports
+    public record Cache(boolean enabled, String dir, DataSize maxSize, ReuseMode reuse) {
+    }
+
+    public record State(Duration flushInterval, int compactAfter) {
+    }
+
+    public record Scheduler(int maxActive, int maxPerHost, SchedulingPolicy policy) {
+    }
+
+    public record Bandwidth(DataSize globalLimit) {
+    }
+
+    public record Events(Duration tick) {
+    }
+
+    public record Probe(Duration cacheTtl, int concurrency) {
+    }
+
+    //preallocate sizes the part files of single stream downloads up front, engine picks their implementation
+    public record Io(IoMode mode, boolean preallocate, DataSize minBuffer, DataSize maxBuffer, DownloadEngine engine) {
+    }
+
+    //window is the span of the WINDOW estimator and the slow time constant of EWMA, the fast one is a fifth of it
+    public record Progress(Duration interval, SpeedEstimatorType estimator, Duration window) {
+    }
+}
@@ -0,0 +1,49 @@
+package com.downloader.config;
+
+import com.downloader.service.DownloadMetrics;
+import java.net.*;
+import okhttp3.*;
+
+//one listener per call, tells pooled from freshly opened connections and times the first response byte. A reused
+//h2 connection is a stream multiplexed next to others
+public class HttpMetricsListener extends EventListener {
+
+    private final DownloadMetrics metrics;
+
+    private long callStarted;
+    private boolean connecting;
+    private boolean firstByte;
+
+    private HttpMetricsListener(DownloadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public static EventListener.Factory factory(DownloadMetrics metrics) {
+        return call -> new HttpMetricsListener(metrics);
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStarted = System.nanoTime();
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connecting = true;
+    }
+
+    //redirects acquire a connection per hop
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        metrics.recordConnection(!connecting, connection.protocol().toString());
+        connecting = false;
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        if (!firstByte) {
+            firstByte = true;
+            metrics.recordTimeToFirstByte(System.nanoTime() - callStarted);
+        }
+    }
+}
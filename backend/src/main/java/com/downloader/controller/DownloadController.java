@@ -3,8 +3,9 @@ package com.downloader.controller;
 import com.downloader.entity.*;
 import com.downloader.service.*;
 import java.time.Duration;
-import java.util.List;
+import java.util.*;
 import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.springframework.http.*;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
@@ -13,15 +14,40 @@ import reactor.core.publisher.Flux;
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/api/downloads")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = DownloadController.NEXT_CURSOR)
 public class DownloadController {
 
+    static final String NEXT_CURSOR = "X-Next-Cursor";
+
     private final DownloadService downloadService;
     private final NetworkInfoService networkInfoService;
 
+    //the matching downloads, one page of them when a limit or cursor is given. The cursor of the next page is sent
+    //in X-Next-Cursor
     @GetMapping
-    public List<DownloadInfo> list() {
-        return downloadService.list();
+    public ResponseEntity<List<DownloadInfo>> list(@RequestParam(required = false) Set<DownloadStatus> status,
+                                                   @RequestParam(required = false) String host,
+                                                   @RequestParam(required = false) String search,
+                                                   @RequestParam(required = false) Long createdFrom,
+                                                   @RequestParam(required = false) Long createdTo,
+                                                   @RequestParam(required = false) DownloadSort sort,
+                                                   @RequestParam(defaultValue = "asc") String order,
+                                                   @RequestParam(defaultValue = "0") int limit,
+                                                   @RequestParam(required = false) String cursor) {
+        var query = new DownloadQuery(
+            status, host, search, createdFrom, createdTo, sort, "desc".equalsIgnoreCase(order), limit, cursor
+        );
+        var page = downloadService.list(query);
+        var response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR, page.nextCursor());
+        }
+        return response.body(page.items());
+    }
+
+    @GetMapping("/counts")
+    public Map<DownloadStatus, Integer> counts() {
+        return downloadService.counts();
     }
 
     @PostMapping
@@ -30,6 +56,55 @@ public class DownloadController {
         return downloadService.add(request);
     }
 
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @SuppressWarnings("JvmTaintAnalysis")
+    public List<DownloadInfo> addAll(@RequestBody List<DownloadRequest> requests) {
+        return downloadService.addAll(requests);
+    }
+
+    //one url per line, blank lines and # comments are skipped
+    @PostMapping(value = "/bulk", consumes = MediaType.TEXT_PLAIN_VALUE)
+    @SuppressWarnings("JvmTaintAnalysis")
+    public List<DownloadInfo> addAll(@RequestBody String urls) {
+        var requests = urls
+            .lines()
+            .map(String::trim)
+            .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+            .map(DownloadRequest::of)
+            .toList();
+        return downloadService.addAll(requests);
+    }
+
+    @GetMapping("/queue")
+    public List<DownloadInfo> queue() {
+        return downloadService.queue();
+    }
+
+    @PutMapping("/queue")
+    public void reorder(@RequestBody List<String> ids) {
+        downloadService.reorder(ids);
+    }
+
+    @PutMapping("/{id}/priority")
+    public void setPriority(@PathVariable String id, @RequestBody PriorityRequest request) {
+        downloadService.setPriority(id, request.priority());
+    }
+
+    @GetMapping("/bandwidth")
+    public BandwidthLimit getGlobalSpeedLimit() {
+        return downloadService.getGlobalSpeedLimit();
+    }
+
+    @PutMapping("/bandwidth")
+    public void setGlobalSpeedLimit(@RequestBody BandwidthLimit limit) {
+        downloadService.setGlobalSpeedLimit(limit.bytesPerSecond());
+    }
+
+    @PutMapping("/{id}/bandwidth")
+    public void setSpeedLimit(@PathVariable String id, @RequestBody BandwidthLimit limit) {
+        downloadService.setSpeedLimit(id, limit.bytesPerSecond());
+    }
+
     @PostMapping("/{id}/pause")
     public void pause(@PathVariable String id) {
         downloadService.pause(id);
@@ -61,7 +136,33 @@ public class DownloadController {
                 .retry(Duration.ofSeconds(2))
                 .build()
             );
-        var stream = Flux.merge(progress, heartbeat());
+        var stream = Flux.merge(progress, this.<DownloadInfo>heartbeat());
+        return ResponseEntity
+            .ok()
+            .header("Cache-Control", "no-cache")
+            .header("Connection", "keep-alive")
+            .header("X-Accel-Buffering", "no")
+            .contentType(MediaType.TEXT_EVENT_STREAM)
+            .body(stream);
+    }
+
+
+    //one full snapshot, then only changed fields; Last-Event-ID resumes from that sequence
+    @GetMapping(value = "/stream", params = "mode=delta", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<DeltaEvent>>> streamDeltas(
+        @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId
+    ) {
+        var since = NumberUtils.toLong(lastEventId, -1);
+        var deltas = downloadService
+            .deltas(since)
+            .map(delta -> ServerSentEvent
+                .builder(delta)
+                .id(String.valueOf(delta.sequence()))
+                .event(delta.snapshot() ? "snapshot" : "delta")
+                .retry(Duration.ofSeconds(2))
+                .build()
+            );
+        var stream = Flux.merge(deltas, this.<DeltaEvent>heartbeat());
         return ResponseEntity
             .ok()
             .header("Cache-Control", "no-cache")
@@ -71,10 +172,17 @@ public class DownloadController {
             .body(stream);
     }
 
+    //a cursor that cannot be decoded
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity
+            .badRequest()
+            .body(e.getMessage());
+    }
 
-    private Flux<ServerSentEvent<DownloadInfo>> heartbeat() {
+    private <T> Flux<ServerSentEvent<T>> heartbeat() {
         return Flux
             .interval(Duration.ZERO, Duration.ofSeconds(25))
-            .map(i -> ServerSentEvent.<DownloadInfo>builder().comment("heartbeat").build());
+            .map(i -> ServerSentEvent.<T>builder().comment("heartbeat").build());
     }
 }
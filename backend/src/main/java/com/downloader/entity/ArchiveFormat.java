@@ -0,0 +1,37 @@
+package com.downloader.entity;
+
+import java.util.*;
+
+public enum ArchiveFormat {
+    AUTO(List.of()), TAR_GZ(List.of(".tar.gz", ".tgz")), ZIP(List.of(".zip"));
+
+    private final List<String> extensions;
+
+    ArchiveFormat(List<String> extensions) {
+        this.extensions = extensions;
+    }
+
+    //the format whose extension the filename ends with
+    public static Optional<ArchiveFormat> of(String filename) {
+        return Arrays
+            .stream(values())
+            .filter(format -> format.extension(filename).isPresent())
+            .findFirst();
+    }
+
+    //the directory the archive is extracted to, the filename without its extension
+    public String baseName(String filename) {
+        return extension(filename)
+            .map(extension -> filename.substring(0, filename.length() - extension.length()))
+            .filter(name -> !name.isEmpty())
+            .orElse(filename + ".contents");
+    }
+
+    private Optional<String> extension(String filename) {
+        var lower = filename.toLowerCase(Locale.ROOT);
+        return extensions
+            .stream()
+            .filter(lower::endsWith)
+            .findFirst();
+    }
+}
@@ -0,0 +1,4 @@
+package com.downloader.entity;
+
+public record BandwidthLimit(long bytesPerSecond) {
+}
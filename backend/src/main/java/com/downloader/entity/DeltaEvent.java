@@ -0,0 +1,14 @@
+package com.downloader.entity;
+
+import com.fasterxml.jackson.annotation.*;
+import java.util.*;
+
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public record DeltaEvent(long sequence, List<Map<String, Object>> changes, Set<String> removed,
+                         @JsonIgnore boolean snapshot) {
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return changes.isEmpty() && removed.isEmpty();
+    }
+}
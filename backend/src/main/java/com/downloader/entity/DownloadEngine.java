@@ -0,0 +1,5 @@
+package com.downloader.entity;
+
+public enum DownloadEngine {
+    BLOCKING, REACTIVE
+}
@@ -1,10 +1,13 @@
 package com.downloader.entity;
 
 import com.fasterxml.jackson.annotation.*;
+import java.util.List;
 import lombok.*;
 
 @Data
 @Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class DownloadInfo {
     private String id;
@@ -22,6 +25,35 @@ public class DownloadInfo {
     private long downloadedSize;
     private long timeRemaining;
     private String error;
+    private int priority;
+    private long speedLimit;
+    //epoch millis, 0 for downloads added before it was recorded
+    private long createdAt;
+    //archive bytes the extractor went through and the files it wrote, for downloads that are extracted
+    private long extractedSize;
+    private int extractedFiles;
+    @JsonIgnore
+    private boolean rangeSupported;
+    @JsonIgnore
+    private String etag;
+    @JsonIgnore
+    private String lastModified;
+    @JsonIgnore
+    private String checksum;
+    @JsonIgnore
+    private List<Mirror> mirrors;
+    @JsonIgnore
+    private ArchiveFormat extract;
+    //failed attempts since the download last made progress, and when a queued retry is due (epoch millis, 0 if none)
+    @JsonIgnore
+    private int attempts;
+    @JsonIgnore
+    private long retryAt;
     @JsonIgnore
     long version;
+
+    //progress fields are written together under this lock by the sampler
+    public synchronized DownloadInfo snapshot() {
+        return toBuilder().build();
+    }
 }
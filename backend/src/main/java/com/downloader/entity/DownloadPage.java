@@ -0,0 +1,7 @@
+package com.downloader.entity;
+
+import java.util.List;
+
+//nextCursor is null on the last page
+public record DownloadPage(List<DownloadInfo> items, String nextCursor) {
+}
@@ -0,0 +1,34 @@
+package com.downloader.entity;
+
+import java.util.*;
+
+public record DownloadQuery(
+    //any of the given statuses, all when empty
+    Set<DownloadStatus> statuses,
+    String host,
+    //part of the filename, case insensitive
+    String search,
+    //creation time bounds in epoch millis, inclusive
+    Long createdFrom,
+    Long createdTo,
+    DownloadSort sort,
+    boolean descending,
+    //without a limit or a cursor every match is returned at once, as before the listing was paged
+    int limit,
+    //nextCursor of the previous page
+    String cursor
+) {
+    public static final int DEFAULT_LIMIT = 200;
+    public static final int MAX_LIMIT = 1000;
+    public static final int UNPAGED = Integer.MAX_VALUE;
+
+    public DownloadQuery {
+        statuses = Objects.requireNonNullElse(statuses, Set.of());
+        sort = Objects.requireNonNullElse(sort, DownloadSort.CREATED);
+        if (limit > 0) {
+            limit = Math.min(limit, MAX_LIMIT);
+        } else {
+            limit = cursor != null ? DEFAULT_LIMIT : UNPAGED;
+        }
+    }
+}
@@ -2,15 +2,32 @@ package com.downloader.entity;
 
 
 import com.downloader.config.AppConstants;
-import java.util.Objects;
+import java.util.*;
 
 public record DownloadRequest(
     String url,
     String filename,
-    String outputPath
+    String outputPath,
+    Integer priority,
+    Long speedLimit,
+    //expected digest as "sha256:<hex>", "sha1:<hex>", "md5:<hex>" or bare hex
+    String checksum,
+    //a checksum file (sha256sum or BSD format) listing the file, used when no checksum is given
+    String checksumUrl,
+    //other urls of the same file, ranges are spread over them and the primary url
+    List<String> mirrors,
+    //unpacks the archive next to it while it downloads, AUTO tells the format from the filename
+    ArchiveFormat extract
 ) {
     public DownloadRequest {
         url = Objects.requireNonNull(url, "url must not be null");
         outputPath = Objects.requireNonNullElse(outputPath, AppConstants.DOWNLOAD_PATH);
+        priority = Objects.requireNonNullElse(priority, 0);
+        speedLimit = Objects.requireNonNullElse(speedLimit, 0L);
+        mirrors = Objects.requireNonNullElse(mirrors, List.of());
+    }
+
+    public static DownloadRequest of(String url) {
+        return new DownloadRequest(url, null, null, null, null, null, null, null, null);
     }
 }
@@ -0,0 +1,24 @@
+package com.downloader.entity;
+
+import java.util.Locale;
+
+//pages follow each other by (key, id). CREATED never changes, the other keys do: the filename and size are settled
+//by the probe and the size again by a download that finds out its length, the priority is set by the user. A
+//download whose key moves past the cursor while a listing is paged may be missed or listed twice
+public enum DownloadSort {
+    CREATED, FILENAME, SIZE, PRIORITY;
+
+    //keys compare as plain strings, numbers are zero padded and priorities shifted to be non-negative
+    public String keyOf(DownloadInfo downloadInfo) {
+        return switch (this) {
+            case CREATED -> pad(downloadInfo.getCreatedAt());
+            case FILENAME -> String.valueOf(downloadInfo.getFilename()).toLowerCase(Locale.ROOT);
+            case SIZE -> pad(downloadInfo.getTotalSize());
+            case PRIORITY -> pad((long) downloadInfo.getPriority() - Integer.MIN_VALUE);
+        };
+    }
+
+    private static String pad(long value) {
+        return "%020d".formatted(Math.max(value, 0));
+    }
+}
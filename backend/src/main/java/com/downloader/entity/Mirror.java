@@ -0,0 +1,5 @@
+package com.downloader.entity;
+
+//another url serving the same bytes, with the validators its own server reported for them
+public record Mirror(String url, String etag, String lastModified) {
+}
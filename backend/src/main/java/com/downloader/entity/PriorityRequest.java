@@ -0,0 +1,4 @@
+package com.downloader.entity;
+
+public record PriorityRequest(int priority) {
+}
@@ -0,0 +1,5 @@
+package com.downloader.entity;
+
+public record ProbeResult(long contentLength, boolean rangeSupported, String etag, String lastModified, String filename) {
+    public static final ProbeResult UNKNOWN = new ProbeResult(-1, false, null, null, null);
+}
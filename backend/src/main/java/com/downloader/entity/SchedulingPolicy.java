@@ -0,0 +1,5 @@
+package com.downloader.entity;
+
+public enum SchedulingPolicy {
+    FIFO, SHORTEST_REMAINING_FIRST, SHORTEST_ETA_FIRST
+}
@@ -0,0 +1,5 @@
+package com.downloader.entity;
+
+public enum SpeedEstimatorType {
+    EWMA, WINDOW
+}
@@ -0,0 +1,82 @@
+package com.downloader.service;
+
+import com.downloader.config.DownloaderProperties;
+import com.downloader.task.throttle.TokenBucket;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
+
+@Component
+public class BandwidthLimiter {
+
+    //reservations are taken in small quanta so a shared limit is split evenly between active readers
+    private static final int QUANTUM = 8192;
+
+    private final TokenBucket global;
+    private final Map<String, TokenBucket> downloads = new ConcurrentHashMap<>();
+
+    public BandwidthLimiter(DownloaderProperties properties) {
+        this.global = new TokenBucket(properties.bandwidth().globalLimit().toBytes());
+    }
+
+    public void acquire(String id, int bytes) {
+        var bucket = downloads.get(id);
+        if (bucket == null && global.isUnlimited()) {
+            return;
+        }
+        for (int remaining = bytes; remaining > 0 && !Thread.currentThread().isInterrupted(); remaining -= QUANTUM) {
+            var quantum = Math.min(remaining, QUANTUM);
+            if (bucket != null) {
+                bucket.acquire(quantum);
+            }
+            global.acquire(quantum);
+        }
+    }
+
+    //non-blocking form of acquire for readers that must not park: the bytes are reserved at once and the
+    //returned nanos are how long the caller has to hold them back
+    public long reserve(String id, int bytes) {
+        var bucket = downloads.get(id);
+        var own = bucket != null ? bucket.reserve(bytes) : 0;
+        return Math.max(own, global.reserve(bytes));
+    }
+
+    public long getGlobalLimit() {
+        return global.getBytesPerSecond();
+    }
+
+    public void setGlobalLimit(long bytesPerSecond) {
+        global.setBytesPerSecond(bytesPerSecond);
+    }
+
+    public void setLimit(String id, long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            downloads.remove(id);
+        } else {
+            downloads.compute(id, (key, bucket) -> {
+                if (bucket == null) {
+                    return new TokenBucket(bytesPerSecond);
+                }
+                bucket.setBytesPerSecond(bytesPerSecond);
+                return bucket;
+            });
+        }
+    }
+
+    //the tighter of the download's own and the global limit, 0 when neither applies
+    public long getEffectiveLimit(String id) {
+        var global = getGlobalLimit();
+        var own = Optional
+            .ofNullable(downloads.get(id))
+            .map(TokenBucket::getBytesPerSecond)
+            .orElse(0L);
+        if (global <= 0 || own <= 0) {
+            return Math.max(global, own);
+        }
+        return Math.min(global, own);
+    }
+
+    public void remove(String id) {
+        downloads.remove(id);
+    }
+}
@@ -0,0 +1,89 @@
+package com.downloader.service;
+
+import com.downloader.task.checksum.Checksum;
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Pattern;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.springframework.stereotype.Component;
+
+//turns the checksum of a request into "<algorithm>:<hex>", fetching and searching a checksum file when one is given
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChecksumResolver {
+
+    private static final long MAX_CHECKSUM_FILE_SIZE = 1024 * 1024;
+    //"<hex>  name" or "<hex> *name" as written by sha256sum and friends
+    private static final Pattern GNU_LINE = Pattern.compile("^([0-9a-fA-F]+)(?:\\s+\\*?(.+))?$");
+    //"SHA256 (name) = <hex>" as written by BSD tools
+    private static final Pattern BSD_LINE = Pattern.compile("^([A-Za-z0-9-]+)\\s*\\((.+)\\)\\s*=\\s*([0-9a-fA-F]+)$");
+
+    private final OkHttpClient httpClient;
+
+    public String resolve(String checksum, String checksumUrl, String url, String filename) throws IOException {
+        if (checksum != null && !checksum.isBlank()) {
+            return Checksum.parse(checksum).toString();
+        }
+        if (checksumUrl == null || checksumUrl.isBlank()) {
+            return null;
+        }
+        var names = candidateNames(url, filename);
+        var content = fetch(checksumUrl);
+        var entries = content
+            .lines()
+            .map(String::trim)
+            .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+            .toList();
+        for (var line : entries) {
+            var bsd = BSD_LINE.matcher(line);
+            if (bsd.matches() && names.contains(baseName(bsd.group(2)))) {
+                return Checksum.parse("%s:%s".formatted(bsd.group(1), bsd.group(3))).toString();
+            }
+            var gnu = GNU_LINE.matcher(line);
+            if (gnu.matches() && (gnu.group(2) == null ? entries.size() == 1 : names.contains(baseName(gnu.group(2))))) {
+                return Checksum.parse(gnu.group(1)).toString();
+            }
+        }
+        throw new IOException("No checksum for %s found in %s".formatted(filename, checksumUrl));
+    }
+
+    private String fetch(String checksumUrl) throws IOException {
+        var request = new Request.Builder()
+            .get()
+            .url(checksumUrl)
+            .addHeader("User-Agent", "Mozilla/5.0")
+            .build();
+        try (var response = httpClient.newCall(request).execute()) {
+            var body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("Failed to fetch checksum file %s, HTTP response code: %s"
+                    .formatted(checksumUrl, response.code()));
+            }
+            var source = body.source();
+            if (source.request(MAX_CHECKSUM_FILE_SIZE + 1)) {
+                throw new IOException("Checksum file is too large: %s".formatted(checksumUrl));
+            }
+            return source.getBuffer().readUtf8();
+        }
+    }
+
+    //the resolved filename may have been overridden, the name on the server is what checksum files list
+    private Set<String> candidateNames(String url, String filename) {
+        var names = new HashSet<String>();
+        names.add(filename);
+        Optional
+            .ofNullable(HttpUrl.parse(url))
+            .map(HttpUrl::pathSegments)
+            .filter(segments -> !segments.isEmpty())
+            .map(segments -> segments.get(segments.size() - 1))
+            .ifPresent(names::add);
+        return names;
+    }
+
+    private String baseName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+}
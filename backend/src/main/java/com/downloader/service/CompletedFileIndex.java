@@ -0,0 +1,329 @@
+package com.downloader.service;
+
+import com.downloader.config.DownloaderProperties;
+import com.downloader.entity.*;
+import com.downloader.task.checksum.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import static java.nio.file.StandardOpenOption.*;
+
+//content addressed store of completed downloads: every finished file is kept once under the cache dir by its sha-256
+//and indexed by it and by its url with the validators of the version fetched, so a later download of the same content
+//is placed from there instead of fetched again. The least recently reused objects go once maxSize is exceeded
+@Slf4j
+@Component
+public class CompletedFileIndex {
+
+    private static final String INDEX_FILE = "index.json";
+    private static final int READ_CHUNK = 1024 * 1024;
+
+    private final ObjectMapper mapper = JsonMapper
+        .builder()
+        .findAndAddModules()
+        .build();
+
+    //by sha-256 in access order, the eldest is evicted first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    //url and validators of a fetched version to its sha-256
+    private final Map<String, String> byKey = new HashMap<>();
+
+    private final Path dir;
+    private final long maxSize;
+    private final ReuseMode reuse;
+    private final boolean enabled;
+    private long size;
+
+    public CompletedFileIndex(DownloaderProperties properties) {
+        var cache = properties.cache();
+        this.dir = Path.of(cache.dir());
+        this.maxSize = cache.maxSize().toBytes();
+        this.reuse = Objects.requireNonNullElse(cache.reuse(), ReuseMode.COPY);
+        this.enabled = cache.enabled() && load();
+    }
+
+    //a sha-256 checksum names the content outright, otherwise the url has to come with a validator. An object that
+    //was changed or removed behind the index's back is forgotten rather than handed out
+    public synchronized Optional<Path> find(DownloadInfo downloadInfo) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        var sha256 = sha256Of(downloadInfo).or(() -> keyOf(downloadInfo).map(byKey::get));
+        if (sha256.isEmpty() || !entries.containsKey(sha256.get())) {
+            return Optional.empty();
+        }
+        var entry = entries.get(sha256.get());
+        var object = objectPath(entry.sha256());
+        if (!isIntact(entry, object)) {
+            log.info("Dropping cached {}, it changed on disk", object);
+            forget(entry.sha256());
+            save();
+            return Optional.empty();
+        }
+        return Optional.of(object);
+    }
+
+    //hashes the file unless its checksum already was a verified sha-256, callers keep it off the download's thread
+    public void add(DownloadInfo downloadInfo) {
+        if (!enabled) {
+            return;
+        }
+        var file = Path.of(downloadInfo.getFilePath());
+        try {
+            var sha256 = sha256Of(downloadInfo).orElse(null);
+            if (sha256 == null) {
+                sha256 = hash(file);
+            }
+            record(sha256, file, keyOf(downloadInfo));
+        } catch (IOException e) {
+            log.warn("Could not cache {}: {}", file, e.getMessage());
+        }
+    }
+
+    //places the file at target through a temporary sibling, so a failure never leaves a partial file behind
+    public void materialize(Path source, Path target) throws IOException {
+        if (Files.exists(target) && Files.isSameFile(source, target)) {
+            return;
+        }
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        var temporary = target.resolveSibling(target.getFileName() + ".reuse");
+        try {
+            place(source, temporary);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (enabled) {
+            save();
+        }
+    }
+
+    //the file is placed under a temporary name without holding the lock, so a copy does not hold up find(). Only the
+    //rename into the store and the index update happen under it
+    private void record(String sha256, Path file, Optional<String> key) throws IOException {
+        Path placed = null;
+        if (!isStored(sha256)) {
+            var object = objectPath(sha256);
+            Files.createDirectories(object.getParent());
+            placed = object.resolveSibling("%s.%s.tmp".formatted(sha256, UUID.randomUUID()));
+            try {
+                place(file, placed);
+            } catch (IOException e) {
+                Files.deleteIfExists(placed);
+                throw e;
+            }
+        }
+        publish(sha256, file, placed, key);
+    }
+
+    //true when an intact object is stored, one that changed on disk is forgotten
+    private synchronized boolean isStored(String sha256) {
+        var entry = entries.get(sha256);
+        if (entry == null) {
+            return false;
+        }
+        if (isIntact(entry, objectPath(sha256))) {
+            return true;
+        }
+        forget(sha256);
+        return false;
+    }
+
+    //placed is null when the object was already stored, one stored by another thread in the meantime is kept
+    private synchronized void publish(String sha256, Path file, Path placed, Optional<String> key) throws IOException {
+        if (placed != null) {
+            try {
+                if (!isStored(sha256)) {
+                    var object = objectPath(sha256);
+                    Files.move(placed, object, StandardCopyOption.REPLACE_EXISTING);
+                    var entry = new Entry(sha256, Files.size(object), Files.getLastModifiedTime(object).toMillis());
+                    entries.put(sha256, entry);
+                    size += entry.size();
+                    log.info("Cached {} as {}", file, sha256);
+                }
+            } finally {
+                Files.deleteIfExists(placed);
+            }
+        }
+        //evicted while it was being placed
+        if (!entries.containsKey(sha256)) {
+            return;
+        }
+        key.ifPresent(found -> byKey.put(found, sha256));
+        evict(sha256);
+        save();
+    }
+
+    //the object just added is kept even when it alone exceeds maxSize, until the next one comes along
+    private void evict(String keep) {
+        var eldest = entries.values().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            var entry = eldest.next();
+            var sha256 = entry.sha256();
+            if (sha256.equals(keep)) {
+                continue;
+            }
+            eldest.remove();
+            size -= entry.size();
+            byKey.values().removeIf(sha256::equals);
+            deleteObject(sha256);
+            log.info("Evicted cached {}", sha256);
+        }
+    }
+
+    private void forget(String sha256) {
+        var entry = entries.remove(sha256);
+        if (entry != null) {
+            size -= entry.size();
+        }
+        byKey.values().removeIf(sha256::equals);
+        deleteObject(sha256);
+    }
+
+    private void deleteObject(String sha256) {
+        try {
+            Files.deleteIfExists(objectPath(sha256));
+        } catch (IOException e) {
+            log.warn("Could not delete cached {}: {}", sha256, e.getMessage());
+        }
+    }
+
+    //a hardlinked object shares its inode with the downloaded file, editing that file in place shows up here
+    private boolean isIntact(Entry entry, Path object) {
+        try {
+            return Files.size(object) == entry.size()
+                && Files.getLastModifiedTime(object).toMillis() == entry.modified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    //from the configured method down, a hardlink needs the same volume and a reflink a file system that shares extents
+    private void place(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        if (reuse == ReuseMode.HARDLINK && link(source, target)) {
+            return;
+        }
+        if (reuse != ReuseMode.COPY && reflink(source, target)) {
+            return;
+        }
+        Files.deleteIfExists(target);
+        Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    private boolean link(Path source, Path target) {
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("Could not hardlink {} to {}: {}", source, target, e.getMessage());
+            return false;
+        }
+    }
+
+    //java has no clone call, cp does the FICLONE ioctl and fails instead of copying when extents cannot be shared
+    private boolean reflink(Path source, Path target) {
+        try {
+            var process = new ProcessBuilder("cp", "--reflink=always", "--preserve=timestamps",
+                source.toString(), target.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            log.debug("Could not reflink {} to {}: {}", source, target, e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private String hash(Path file) throws IOException {
+        var digest = ChecksumAlgorithm.SHA256.newDigest();
+        try (var channel = FileChannel.open(file, READ)) {
+            var buffer = ByteBuffer.allocate(READ_CHUNK);
+            while (channel.read(buffer) != -1) {
+                digest.update(buffer.flip());
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private Path objectPath(String sha256) {
+        return dir.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    private static Optional<String> sha256Of(DownloadInfo downloadInfo) {
+        return Optional
+            .ofNullable(downloadInfo.getChecksum())
+            .map(Checksum::parse)
+            .filter(checksum -> checksum.algorithm() == ChecksumAlgorithm.SHA256)
+            .map(Checksum::hex);
+    }
+
+    //a weak ETag does not promise the same bytes, the modification date and size stand in for it then
+    private static Optional<String> keyOf(DownloadInfo downloadInfo) {
+        var etag = downloadInfo.getEtag();
+        if (etag != null && !etag.startsWith("W/")) {
+            return Optional.of("%s\netag %s".formatted(downloadInfo.getUrl(), etag));
+        }
+        return Optional
+            .ofNullable(downloadInfo.getLastModified())
+            .filter(lastModified -> downloadInfo.getTotalSize() > 0)
+            .map(lastModified -> "%s\nmodified %s %d".formatted(downloadInfo.getUrl(), lastModified,
+                downloadInfo.getTotalSize()));
+    }
+
+    private boolean load() {
+        try {
+            Files.createDirectories(dir);
+            var index = dir.resolve(INDEX_FILE);
+            if (Files.exists(index)) {
+                var stored = mapper.readValue(index.toFile(), IndexFile.class);
+                stored.entries().forEach(entry -> {
+                    entries.put(entry.sha256(), entry);
+                    size += entry.size();
+                });
+                stored.keys().forEach(byKey::put);
+            }
+            log.info("Loaded {} cached files ({} bytes) from {}", entries.size(), size, dir);
+            return true;
+        } catch (IOException e) {
+            log.warn("Completed files are not reused, {} is not usable: {}", dir, e.getMessage());
+            return false;
+        }
+    }
+
+    //rewritten whole and moved into place, a crash leaves either the old or the new index
+    private void save() {
+        var index = dir.resolve(INDEX_FILE);
+        var temp = dir.resolve(INDEX_FILE + ".tmp");
+        try {
+            mapper.writeValue(temp.toFile(), new IndexFile(List.copyOf(entries.values()), Map.copyOf(byKey)));
+            Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to save cache index: {}", e.getMessage());
+        }
+    }
+
+    record Entry(String sha256, long size, long modified) {
+    }
+
+    //entries from least to most recently used, so that loading restores the eviction order
+    record IndexFile(List<Entry> entries, Map<String, String> keys) {
+    }
+}
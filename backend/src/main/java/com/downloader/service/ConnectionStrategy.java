@@ -0,0 +1,43 @@
+package com.downloader.service;
+
+import com.downloader.config.DownloaderProperties;
+import com.downloader.entity.DownloadInfo;
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.binder.okhttp3.OkHttpConnectionPoolMetrics;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import okhttp3.*;
+import org.springframework.stereotype.Component;
+
+//picks the client a download talks to its host with. Small files are latency bound and run as streams of the host's
+//shared HTTP/2 connection; large ones are bound by the window of a single TCP connection, so they go over HTTP/1.1
+//from a pool of their own where every segment gets a separate connection
+@Component
+public class ConnectionStrategy {
+
+    private final OkHttpClient multiplexed;
+    private final OkHttpClient bulk;
+    private final ConnectionPool bulkPool;
+    private final long multiplexBelow;
+
+    public ConnectionStrategy(OkHttpClient httpClient, DownloaderProperties properties, MeterRegistry registry) {
+        //every active download with all of its connections. Idle ones rarely serve the next download, so they are only
+        //kept long enough to carry a segment retry or a resume over; those in use are never touched
+        var size = properties.scheduler().maxActive() * Math.max(properties.segments().connections(), 1);
+        this.bulkPool = new ConnectionPool(size, 30, TimeUnit.SECONDS);
+        new OkHttpConnectionPoolMetrics(bulkPool, "okhttp.pool", Tags.of("pool", "bulk")).bindTo(registry);
+        this.multiplexed = httpClient;
+        this.bulk = httpClient
+            .newBuilder()
+            .protocols(List.of(Protocol.HTTP_1_1))
+            .connectionPool(bulkPool)
+            .build();
+        this.multiplexBelow = properties.http().multiplexBelow().toBytes();
+    }
+
+    //a download of unknown size may be large and is treated as such
+    public OkHttpClient clientFor(DownloadInfo downloadInfo) {
+        var totalSize = downloadInfo.getTotalSize();
+        return totalSize > 0 && totalSize < multiplexBelow ? multiplexed : bulk;
+    }
+}
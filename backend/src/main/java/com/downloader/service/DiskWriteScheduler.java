@@ -0,0 +1,139 @@
+package com.downloader.service;
+
+import com.downloader.config.DownloaderProperties;
+import com.downloader.entity.DownloadInfo;
+import com.downloader.task.io.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.springframework.stereotype.Component;
+
+//the write side shared by all downloads: part files are preallocated, written through block writers that keep each
+//volume's dirty bytes in check, and a download is only admitted when its volume has room for what is left of it
+@Slf4j
+@Component
+public class DiskWriteScheduler {
+
+    private final Map<FileStore, VolumeBudget> volumes = new ConcurrentHashMap<>();
+    //admitted downloads by id, each one still takes the rest of its size from its volume
+    private final Map<String, Admission> admitted = new HashMap<>();
+
+    private final int blockSize;
+    private final long maxDirty;
+    private final long minFree;
+    private final boolean preallocate;
+    private final DirectBufferPool bufferPool;
+    private final DownloadMetrics metrics;
+
+    public DiskWriteScheduler(DownloaderProperties properties, DirectBufferPool bufferPool, DownloadMetrics metrics) {
+        var disk = properties.disk();
+        this.blockSize = Integer.highestOneBit((int) Math.max(disk.blockSize().toBytes(), 4096));
+        this.maxDirty = disk.maxDirty().toBytes();
+        this.minFree = disk.minFree().toBytes();
+        this.preallocate = properties.io().preallocate();
+        this.bufferPool = bufferPool;
+        this.metrics = metrics;
+        metrics.gauge("dload.disk.dirty", "Bytes written but not yet forced, all volumes", volumes, all -> all
+            .values()
+            .stream()
+            .mapToLong(VolumeBudget::getDirty)
+            .sum());
+    }
+
+    //empty when the download fits, otherwise why it does not. Preallocated files are sparse on most file systems,
+    //so the space the other admitted downloads still need is set aside by hand
+    public synchronized Optional<String> admit(DownloadInfo downloadInfo) {
+        var store = storeOf(Path.of(downloadInfo.getOutputPath()));
+        if (store.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            var promised = admitted
+                .values()
+                .stream()
+                .filter(admission -> admission.store.equals(store.get()))
+                .mapToLong(admission -> remaining(admission.downloadInfo))
+                .sum();
+            var available = store.get().getUsableSpace() - promised - minFree;
+            var needed = remaining(downloadInfo);
+            if (needed > available) {
+                return Optional.of("Not enough free space under %s: %s needed, %s available".formatted(
+                    downloadInfo.getOutputPath(),
+                    FileUtils.byteCountToDisplaySize(needed),
+                    FileUtils.byteCountToDisplaySize(Math.max(available, 0))
+                ));
+            }
+        } catch (IOException e) {
+            log.warn("Could not read free space of {}: {}", downloadInfo.getOutputPath(), e.getMessage());
+        }
+        admitted.put(downloadInfo.getId(), new Admission(downloadInfo, store.get()));
+        return Optional.empty();
+    }
+
+    public synchronized void release(String id) {
+        admitted.remove(id);
+    }
+
+    //a writer positioned at the given offset, the file is grown to its full size first when that is known
+    public BlockWriter open(File file, long position, long totalSize) throws IOException {
+        var raf = new RandomAccessFile(file, "rw");
+        try {
+            if (preallocate && totalSize > raf.length()) {
+                raf.setLength(totalSize);
+            }
+            return new BlockWriter(raf.getChannel(), position, blockSize, bufferPool, volumeOf(file), metrics);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    //a writer for segments that land anywhere in the file, which is therefore always grown to its full size
+    public PositionalWriter openPositional(File file, long totalSize) throws IOException {
+        var raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(totalSize);
+            return new PositionalWriter(raf.getChannel(), volumeOf(file), metrics);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    //offset up to which a part file whose writer never got closed surely holds the accepted bytes, until it is
+    //closed a writer only puts whole blocks into the file
+    public long safeOffset(long accepted) {
+        return accepted / blockSize * blockSize;
+    }
+
+    private VolumeBudget volumeOf(File file) {
+        return storeOf(file.toPath())
+            .map(store -> volumes.computeIfAbsent(store, key -> new VolumeBudget(maxDirty)))
+            .orElseGet(() -> new VolumeBudget(maxDirty));
+    }
+
+    //the nearest existing directory tells the volume, the output path may not be created yet
+    private Optional<FileStore> storeOf(Path path) {
+        for (var current = path.toAbsolutePath(); current != null; current = current.getParent()) {
+            if (Files.exists(current)) {
+                try {
+                    return Optional.of(Files.getFileStore(current));
+                } catch (IOException e) {
+                    return Optional.empty();
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    //unknown sizes cannot be planned for and only need the reserve
+    private static long remaining(DownloadInfo downloadInfo) {
+        return Math.max(downloadInfo.getTotalSize() - downloadInfo.getDownloadedSize(), 0);
+    }
+
+    private record Admission(DownloadInfo downloadInfo, FileStore store) {
+    }
+}
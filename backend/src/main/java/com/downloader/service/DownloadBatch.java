@@ -0,0 +1,8 @@
+package com.downloader.service;
+
+import com.downloader.entity.DownloadInfo;
+import java.util.*;
+
+//downloads changed up to a flush sequence; full marks a batch carrying the whole state rather than changes
+public record DownloadBatch(long sequence, List<DownloadInfo> downloads, Set<String> removed, boolean full) {
+}
@@ -0,0 +1,75 @@
+package com.downloader.service;
+
+import com.downloader.entity.*;
+import java.util.*;
+
+//per connection, remembers what the client was sent and encodes only the fields that changed since
+public class DownloadDeltaEncoder {
+
+    private final Map<String, DownloadInfo> sent = new HashMap<>();
+
+    public DeltaEvent encode(DownloadBatch batch) {
+        if (batch.full()) {
+            sent.clear();
+        }
+        var changes = new ArrayList<Map<String, Object>>(batch.downloads().size());
+        for (var current : batch.downloads()) {
+            var previous = sent.put(current.getId(), current);
+            var delta = diff(previous, current);
+            if (delta != null) {
+                changes.add(delta);
+            }
+        }
+        batch.removed().forEach(sent::remove);
+        return new DeltaEvent(batch.sequence(), changes, batch.removed(), batch.full());
+    }
+
+    private Map<String, Object> diff(DownloadInfo previous, DownloadInfo current) {
+        var delta = new LinkedHashMap<String, Object>();
+        delta.put("id", current.getId());
+        delta.put("version", current.getVersion());
+        var isNew = previous == null;
+        putIfChanged(delta, "filename", isNew ? null : previous.getFilename(), current.getFilename());
+        putIfChanged(delta, "status", isNew ? null : previous.getStatus(), current.getStatus());
+        putIfChanged(delta, "error", isNew ? null : previous.getError(), current.getError());
+        if (isNew || previous.getSpeed() != current.getSpeed()) {
+            delta.put("speed", current.getSpeed());
+        }
+        if (isNew || previous.getProgress() != current.getProgress()) {
+            delta.put("progress", current.getProgress());
+        }
+        if (isNew || previous.getTotalSize() != current.getTotalSize()) {
+            delta.put("totalSize", current.getTotalSize());
+        }
+        if (isNew || previous.getDownloadedSize() != current.getDownloadedSize()) {
+            delta.put("downloadedSize", current.getDownloadedSize());
+        }
+        if (isNew || previous.getTimeRemaining() != current.getTimeRemaining()) {
+            delta.put("timeRemaining", current.getTimeRemaining());
+        }
+        if (isNew || previous.getExtractedSize() != current.getExtractedSize()) {
+            delta.put("extractedSize", current.getExtractedSize());
+        }
+        if (isNew || previous.getExtractedFiles() != current.getExtractedFiles()) {
+            delta.put("extractedFiles", current.getExtractedFiles());
+        }
+        if (isNew || previous.getPriority() != current.getPriority()) {
+            delta.put("priority", current.getPriority());
+        }
+        if (isNew || previous.getSpeedLimit() != current.getSpeedLimit()) {
+            delta.put("speedLimit", current.getSpeedLimit());
+        }
+        //never changes once set
+        if (isNew) {
+            delta.put("createdAt", current.getCreatedAt());
+        }
+        //id and version alone carry no change
+        return delta.size() > 2 ? delta : null;
+    }
+
+    private void putIfChanged(Map<String, Object> delta, String field, Object previous, Object current) {
+        if (!Objects.equals(previous, current)) {
+            delta.put(field, current);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.downloader.service;
+
+import com.downloader.entity.DownloadInfo;
+import com.downloader.task.retry.ErrorClass;
+import io.micrometer.core.instrument.*;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.ToDoubleFunction;
+import org.springframework.stereotype.Component;
+
+//meters are created once up front, the read loop only bumps counters and records primitive durations
+@Component
+public class DownloadMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<String, Gauge> speedGauges = new ConcurrentHashMap<>();
+    private final Map<String, DownloadInfo> tracked = new ConcurrentHashMap<>();
+
+    private final Counter bytes;
+    private final Timer diskWrite;
+    private final Timer timeToFirstByte;
+    private final Timer queueWait;
+    private final Map<String, Counter> connections = new ConcurrentHashMap<>();
+    private final Counter conflatedEvents;
+    private final Counter droppedTicks;
+    private final Map<ErrorClass, Counter> retries = new EnumMap<>(ErrorClass.class);
+
+    public DownloadMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.bytes = Counter
+            .builder("dload.download.bytes")
+            .description("Bytes received over all downloads")
+            .baseUnit("bytes")
+            .register(registry);
+        this.diskWrite = Timer
+            .builder("dload.disk.write")
+            .description("Latency of a single chunk write to the part file")
+            .publishPercentileHistogram()
+            .register(registry);
+        this.timeToFirstByte = Timer
+            .builder("dload.http.ttfb")
+            .description("Time from the start of a call to the first response byte")
+            .publishPercentileHistogram()
+            .register(registry);
+        this.queueWait = Timer
+            .builder("dload.queue.wait")
+            .description("Time a download waited in the queue before being admitted")
+            .register(registry);
+        this.conflatedEvents = Counter
+            .builder("dload.events.conflated")
+            .description("Updates replaced by a newer one before a slow subscriber consumed them")
+            .register(registry);
+        this.droppedTicks = Counter
+            .builder("dload.events.dropped.ticks")
+            .description("Flush ticks dropped because the previous flush was still running")
+            .register(registry);
+        for (var errorClass : ErrorClass.values()) {
+            retries.put(errorClass, Counter
+                .builder("dload.download.retries")
+                .description("Attempts scheduled after a transient failure, by class of failure")
+                .tag("class", errorClass.name().toLowerCase())
+                .register(registry));
+        }
+        Gauge
+            .builder("dload.download.speed.total", tracked, downloads -> downloads
+                .values()
+                .stream()
+                .mapToLong(DownloadInfo::getSpeed)
+                .sum())
+            .description("Combined speed of the running downloads")
+            .baseUnit("bytes")
+            .register(registry);
+    }
+
+    public <T> void gauge(String name, String description, T state, ToDoubleFunction<T> value) {
+        Gauge
+            .builder(name, state, value)
+            .description(description)
+            .register(registry);
+    }
+
+    //per-download speed is only reported while the download runs
+    public void track(DownloadInfo downloadInfo) {
+        var id = downloadInfo.getId();
+        tracked.put(id, downloadInfo);
+        speedGauges.computeIfAbsent(id, key -> Gauge
+            .builder("dload.download.speed", downloadInfo, DownloadInfo::getSpeed)
+            .description("Current speed of a running download")
+            .baseUnit("bytes")
+            .tag("id", id)
+            .register(registry));
+    }
+
+    public void untrack(String id) {
+        tracked.remove(id);
+        var gauge = speedGauges.remove(id);
+        if (gauge != null) {
+            registry.remove(gauge);
+        }
+    }
+
+    public void recordBytes(int count) {
+        bytes.increment(count);
+    }
+
+    public void recordDiskWrite(long nanos) {
+        diskWrite.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordTimeToFirstByte(long nanos) {
+        timeToFirstByte.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordQueueWait(long nanos) {
+        queueWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordConnection(boolean reused, String protocol) {
+        var result = reused ? "reused" : "new";
+        connections
+            .computeIfAbsent(result + " " + protocol, key -> connections(result, protocol))
+            .increment();
+    }
+
+    public void recordConflated(int count) {
+        conflatedEvents.increment(count);
+    }
+
+    public void recordDroppedTick() {
+        droppedTicks.increment();
+    }
+
+    public void recordRetry(ErrorClass errorClass) {
+        retries.get(errorClass).increment();
+    }
+
+    private Counter connections(String result, String protocol) {
+        return Counter
+            .builder("dload.http.connections")
+            .description("Connections acquired by calls, by whether they came from the pool and their protocol")
+            .tag("result", result)
+            .tag("protocol", protocol)
+            .register(registry);
+    }
+}
@@ -0,0 +1,144 @@
+package com.downloader.service;
+
+import com.downloader.config.DownloaderProperties;
+import com.downloader.entity.ProbeResult;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.stereotype.Component;
+
+//one round trip for size, range support, validators and filename: HEAD first, a 0-0 ranged GET when HEAD is refused
+@Slf4j
+@Component
+public class DownloadProbe {
+
+    private static final Pattern CONTENT_RANGE_TOTAL = Pattern.compile("bytes\\s+\\d+-\\d+/(\\d+)");
+    private static final int MAX_CACHED = 10_000;
+
+    private final OkHttpClient httpClient;
+    private final FilenameResolver filenameResolver;
+    private final ExecutorService executor;
+    private final Semaphore asyncPermits;
+    private final long cacheTtlMillis;
+    //by url in access order, the least recently used one is evicted first. Guarded by itself
+    private final LinkedHashMap<String, Cached> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    public DownloadProbe(OkHttpClient httpClient, FilenameResolver filenameResolver, ExecutorService executor,
+                         DownloaderProperties properties) {
+        this.httpClient = httpClient;
+        this.filenameResolver = filenameResolver;
+        this.executor = executor;
+        this.asyncPermits = new Semaphore(Math.max(properties.probe().concurrency(), 1));
+        this.cacheTtlMillis = properties.probe().cacheTtl().toMillis();
+    }
+
+    //background probes, at most probe.concurrency of them in flight
+    public CompletableFuture<ProbeResult> probeAsync(String url) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                asyncPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return probe(url);
+            } finally {
+                asyncPermits.release();
+            }
+        }, executor);
+    }
+
+    public ProbeResult probe(String url) {
+        var now = System.currentTimeMillis();
+        var cached = cached(url, now);
+        if (cached != null) {
+            return cached;
+        }
+        var result = probeWithHead(url);
+        if (result == ProbeResult.UNKNOWN || result.contentLength() < 0) {
+            result = probeWithRange(url);
+        }
+        if (result != ProbeResult.UNKNOWN) {
+            remember(url, new Cached(result, now + cacheTtlMillis));
+        }
+        return result;
+    }
+
+    private ProbeResult probeWithHead(String url) {
+        var request = newRequest(url).head().build();
+        try (var response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                log.debug("HEAD probe of {} returned HTTP {}", url, response.code());
+                return ProbeResult.UNKNOWN;
+            }
+            var contentLength = NumberUtils.toLong(response.header("Content-Length"), -1);
+            var rangeSupported = "bytes".equalsIgnoreCase(response.header("Accept-Ranges"));
+            return toResult(response, contentLength, rangeSupported);
+        } catch (IOException e) {
+            log.warn("HEAD probe of {} failed: {}", url, e.getMessage());
+            return ProbeResult.UNKNOWN;
+        }
+    }
+
+    //the body is at most one byte for a 206, anything larger is not read before the call is closed
+    private ProbeResult probeWithRange(String url) {
+        var request = newRequest(url).get().header("Range", "bytes=0-0").build();
+        try (var response = httpClient.newCall(request).execute()) {
+            if (response.code() == 206) {
+                var matcher = CONTENT_RANGE_TOTAL.matcher(String.valueOf(response.header("Content-Range")));
+                var contentLength = matcher.find() ? NumberUtils.toLong(matcher.group(1), -1) : -1;
+                return toResult(response, contentLength, contentLength > 0);
+            }
+            if (response.isSuccessful()) {
+                return toResult(response, NumberUtils.toLong(response.header("Content-Length"), -1), false);
+            }
+            log.debug("Ranged probe of {} returned HTTP {}", url, response.code());
+            return ProbeResult.UNKNOWN;
+        } catch (IOException e) {
+            log.warn("Ranged probe of {} failed: {}", url, e.getMessage());
+            return ProbeResult.UNKNOWN;
+        }
+    }
+
+    private ProbeResult toResult(Response response, long contentLength, boolean rangeSupported) {
+        return new ProbeResult(
+            contentLength,
+            rangeSupported && contentLength > 0,
+            response.header("ETag"),
+            response.header("Last-Modified"),
+            filenameResolver.parseContentDisposition(response.headers("Content-Disposition"))
+        );
+    }
+
+    private Request.Builder newRequest(String url) {
+        return new Request.Builder()
+            .url(url)
+            .addHeader("User-Agent", "Mozilla/5.0");
+    }
+
+    private ProbeResult cached(String url, long now) {
+        synchronized (cache) {
+            var cached = cache.get(url);
+            return cached != null && cached.expiresAt > now ? cached.result : null;
+        }
+    }
+
+    private void remember(String url, Cached cached) {
+        synchronized (cache) {
+            cache.put(url, cached);
+            var eldest = cache.values().iterator();
+            while (cache.size() > MAX_CACHED && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    private record Cached(ProbeResult result, long expiresAt) {
+    }
+}
@@ -0,0 +1,220 @@
+package com.downloader.service;
+
+import com.downloader.entity.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+import okhttp3.HttpUrl;
+import org.apache.commons.lang3.Strings;
+
+//the downloads by id, with secondary indexes by status, host and creation time for listing. A status change is picked
+//up by reindex, which the service runs for every flushed batch, so the status index and its counts trail by a tick
+public class DownloadRegistry {
+
+    //walking the time index filtered beats sorting the candidates once they are more than 1/SCAN_RATIO of all
+    private static final int SCAN_RATIO = 8;
+
+    private final Map<String, DownloadInfo> byId = new ConcurrentHashMap<>();
+    private final Map<String, DownloadStatus> indexedStatus = new ConcurrentHashMap<>();
+    private final Map<DownloadStatus, Set<String>> byStatus = new EnumMap<>(DownloadStatus.class);
+    private final Map<String, Set<String>> byHost = new ConcurrentHashMap<>();
+    private final NavigableSet<Position> byCreated = new ConcurrentSkipListSet<>();
+
+    public DownloadRegistry() {
+        for (var status : DownloadStatus.values()) {
+            byStatus.put(status, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    public DownloadInfo get(String id) {
+        return byId.get(id);
+    }
+
+    public synchronized void put(String id, DownloadInfo downloadInfo) {
+        remove(id);
+        byId.put(id, downloadInfo);
+        byHost
+            .computeIfAbsent(hostOf(downloadInfo.getUrl()), host -> ConcurrentHashMap.newKeySet())
+            .add(id);
+        byCreated.add(new Position(downloadInfo.getCreatedAt(), id));
+        reindex(id);
+    }
+
+    public synchronized DownloadInfo remove(String id) {
+        var downloadInfo = byId.remove(id);
+        if (downloadInfo == null) {
+            return null;
+        }
+        Optional
+            .ofNullable(indexedStatus.remove(id))
+            .ifPresent(status -> byStatus.get(status).remove(id));
+        byHost.computeIfPresent(hostOf(downloadInfo.getUrl()), (host, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+        byCreated.remove(new Position(downloadInfo.getCreatedAt(), id));
+        return downloadInfo;
+    }
+
+    //moves the download to the status set it is in now
+    public synchronized void reindex(String id) {
+        var downloadInfo = byId.get(id);
+        if (downloadInfo == null) {
+            return;
+        }
+        var status = downloadInfo.getStatus();
+        var previous = status != null ? indexedStatus.put(id, status) : indexedStatus.remove(id);
+        if (previous == status) {
+            return;
+        }
+        if (previous != null) {
+            byStatus.get(previous).remove(id);
+        }
+        if (status != null) {
+            byStatus.get(status).add(id);
+        }
+    }
+
+    //sizes of the status sets, as of the last reindex
+    public Map<DownloadStatus, Integer> counts() {
+        var counts = new EnumMap<DownloadStatus, Integer>(DownloadStatus.class);
+        byStatus.forEach((status, ids) -> counts.put(status, ids.size()));
+        return counts;
+    }
+
+    public DownloadPage query(DownloadQuery query) {
+        var after = Optional
+            .ofNullable(query.cursor())
+            .map(cursor -> Cursor.decode(cursor, query.sort()));
+        var candidates = candidates(query);
+        Stream<DownloadInfo> ordered;
+        if (query.sort() == DownloadSort.CREATED
+            && (candidates.isEmpty() || candidates.get().size() * SCAN_RATIO > byId.size())) {
+            ordered = walkCreated(query.descending(), after);
+        } else {
+            ordered = sort(candidates.orElse(byId.keySet()), query, after);
+        }
+        var page = ordered
+            .filter(downloadInfo -> matches(query, downloadInfo))
+            .limit(query.limit() + 1L)
+            .map(DownloadInfo::snapshot)
+            .toList();
+        if (page.size() <= query.limit()) {
+            return new DownloadPage(page, null);
+        }
+        var items = page.subList(0, query.limit());
+        var last = items.getLast();
+        return new DownloadPage(items, new Cursor(query.sort().keyOf(last), last.getId()).encode(query.sort()));
+    }
+
+    //the smallest index set the query narrows to, empty when no indexed filter is given
+    private Optional<Set<String>> candidates(DownloadQuery query) {
+        var sets = new ArrayList<Set<String>>();
+        if (!query.statuses().isEmpty()) {
+            var ids = new HashSet<String>();
+            query.statuses().forEach(status -> ids.addAll(byStatus.get(status)));
+            sets.add(ids);
+        }
+        if (query.host() != null) {
+            sets.add(byHost.getOrDefault(query.host().toLowerCase(Locale.ROOT), Set.of()));
+        }
+        return sets
+            .stream()
+            .min(Comparator.comparingInt(Set::size));
+    }
+
+    private Stream<DownloadInfo> walkCreated(boolean descending, Optional<Cursor> after) {
+        NavigableSet<Position> positions = descending ? byCreated.descendingSet() : byCreated;
+        if (after.isPresent()) {
+            positions = positions.tailSet(new Position(Long.parseLong(after.get().key()), after.get().id()), false);
+        }
+        return positions
+            .stream()
+            .map(position -> byId.get(position.id()))
+            .filter(Objects::nonNull);
+    }
+
+    //keys are read once per download, a size or name changing during the sort cannot break the ordering. The id
+    //breaks ties, so the cursor's (key, id) names a single position even among equal keys
+    private Stream<DownloadInfo> sort(Set<String> ids, DownloadQuery query, Optional<Cursor> after) {
+        var sort = query.sort();
+        Comparator<Keyed> order = Comparator
+            .comparing(Keyed::key)
+            .thenComparing(Keyed::id);
+        var sorted = ids
+            .stream()
+            .map(byId::get)
+            .filter(Objects::nonNull)
+            .map(downloadInfo -> new Keyed(sort.keyOf(downloadInfo), downloadInfo))
+            .sorted(query.descending() ? order.reversed() : order);
+        if (after.isPresent()) {
+            var cursor = new Keyed(after.get().key(), after.get().id(), null);
+            sorted = sorted.dropWhile(keyed -> {
+                var compared = order.compare(keyed, cursor);
+                return query.descending() ? compared >= 0 : compared <= 0;
+            });
+        }
+        return sorted.map(Keyed::downloadInfo);
+    }
+
+    //the indexes only narrow the candidates, every filter is checked against the current values
+    private boolean matches(DownloadQuery query, DownloadInfo downloadInfo) {
+        return (query.statuses().isEmpty() || query.statuses().contains(downloadInfo.getStatus()))
+            && (query.host() == null || query.host().equalsIgnoreCase(hostOf(downloadInfo.getUrl())))
+            && (query.search() == null || Strings.CI.contains(downloadInfo.getFilename(), query.search()))
+            && (query.createdFrom() == null || downloadInfo.getCreatedAt() >= query.createdFrom())
+            && (query.createdTo() == null || downloadInfo.getCreatedAt() <= query.createdTo());
+    }
+
+    private static String hostOf(String url) {
+        return Optional
+            .ofNullable(url)
+            .map(HttpUrl::parse)
+            .map(HttpUrl::host)
+            .orElse("");
+    }
+
+    private record Keyed(String key, String id, DownloadInfo downloadInfo) {
+
+        Keyed(String key, DownloadInfo downloadInfo) {
+            this(key, downloadInfo.getId(), downloadInfo);
+        }
+    }
+
+    private record Position(long createdAt, String id) implements Comparable<Position> {
+
+        @Override
+        public int compareTo(Position other) {
+            var compared = Long.compare(createdAt, other.createdAt);
+            return compared != 0 ? compared : id.compareTo(other.id);
+        }
+    }
+
+    //"<sort>\n<key>\n<id>" in url-safe base64, a cursor of another sort is rejected
+    private record Cursor(String key, String id) {
+
+        String encode(DownloadSort sort) {
+            var raw = String.join("\n", sort.name(), key, id);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor, DownloadSort sort) {
+            try {
+                var raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                var first = raw.indexOf('\n');
+                var last = raw.lastIndexOf('\n');
+                if (first < 0 || first == last || !raw.substring(0, first).equals(sort.name())) {
+                    throw new IllegalArgumentException("cursor does not belong to sort %s".formatted(sort));
+                }
+                var key = raw.substring(first + 1, last);
+                if (sort == DownloadSort.CREATED) {
+                    Long.parseLong(key);
+                }
+                return new Cursor(key, raw.substring(last + 1));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid cursor: %s".formatted(e.getMessage()), e);
+            }
+        }
+    }
+}
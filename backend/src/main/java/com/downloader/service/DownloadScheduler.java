@@ -0,0 +1,233 @@
+package com.downloader.service;
+
+import com.downloader.config.DownloaderProperties;
+import com.downloader.entity.*;
+import jakarta.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import org.springframework.stereotype.Component;
+
+//admits queued downloads as global and per-host slots free up, hosts with an open circuit wait until it closes and a
+//download whose volume has no room for it is refused up front rather than left to fail once the disk is full. A
+//download paused and resumed quickly is queued again while its previous run may still be winding down, it is only
+//admitted once that run released its slot so that two runs never share a part file or a slot
+@Slf4j
+@Component
+public class DownloadScheduler {
+
+    private final Map<String, Entry> queued = new HashMap<>();
+    private final Map<String, Entry> active = new HashMap<>();
+    private final Map<String, Integer> activePerHost = new HashMap<>();
+
+    private final int maxActive;
+    private final int maxPerHost;
+    private final SchedulingPolicy policy;
+
+    private final DownloadMetrics metrics;
+    private final HostCircuitBreaker breaker;
+    private final DiskWriteScheduler disk;
+
+    private long sequence = 0;
+    private long wakeUpAt = 0;
+
+    public DownloadScheduler(DownloaderProperties properties, DownloadMetrics metrics, HostCircuitBreaker breaker,
+                             DiskWriteScheduler disk) {
+        this.maxActive = Math.max(properties.scheduler().maxActive(), 1);
+        this.maxPerHost = Math.max(properties.scheduler().maxPerHost(), 1);
+        this.policy = Objects.requireNonNullElse(properties.scheduler().policy(), SchedulingPolicy.FIFO);
+        this.metrics = metrics;
+        this.breaker = breaker;
+        this.disk = disk;
+    }
+
+    //the gauges hold on to the scheduler, they are handed it once construction is done
+    @PostConstruct
+    public void registerGauges() {
+        metrics.gauge("dload.queue.depth", "Downloads waiting for a slot", this, DownloadScheduler::queuedCount);
+        metrics.gauge("dload.downloads.active", "Downloads holding a slot", this, DownloadScheduler::activeCount);
+    }
+
+    //the launcher receives a callback it must run once the admitted download stops, a refused download is handed
+    //to the refuser with the reason and dropped from the queue
+    public synchronized void enqueue(DownloadInfo downloadInfo, Consumer<Runnable> launcher, Consumer<String> refuser) {
+        downloadInfo.setStatus(DownloadStatus.QUEUED);
+        var entry = new Entry(downloadInfo, launcher, refuser, hostOf(downloadInfo.getUrl()), sequence++);
+        queued.put(downloadInfo.getId(), entry);
+        dispatch();
+    }
+
+    public synchronized boolean dequeue(String id) {
+        return queued.remove(id) != null;
+    }
+
+    public synchronized boolean setPriority(String id, int priority) {
+        var entry = Optional.ofNullable(queued.get(id)).orElse(active.get(id));
+        if (entry == null) {
+            return false;
+        }
+        entry.downloadInfo.setPriority(priority);
+        dispatch();
+        return true;
+    }
+
+    //moves the given queued downloads to the front, in the given order
+    public synchronized void reorder(List<String> ids) {
+        var first = queued
+            .values()
+            .stream()
+            .mapToLong(entry -> entry.sequence)
+            .min()
+            .orElse(sequence);
+        var position = first - ids.size();
+        for (var id : ids) {
+            var entry = queued.get(id);
+            if (entry != null) {
+                entry.sequence = position;
+            }
+            position++;
+        }
+        dispatch();
+    }
+
+    public synchronized List<DownloadInfo> queue() {
+        return queued
+            .values()
+            .stream()
+            .sorted(comparator())
+            .map(entry -> entry.downloadInfo)
+            .toList();
+    }
+
+    private synchronized int queuedCount() {
+        return queued.size();
+    }
+
+    private synchronized int activeCount() {
+        return active.size();
+    }
+
+    //runs once per admitted entry, a second call for the same one is ignored
+    private synchronized void release(Entry entry) {
+        if (entry.released) {
+            return;
+        }
+        entry.released = true;
+        active.remove(entry.downloadInfo.getId(), entry);
+        disk.release(entry.downloadInfo.getId());
+        activePerHost.computeIfPresent(entry.host, (host, count) -> count > 1 ? count - 1 : null);
+        dispatch();
+    }
+
+    private synchronized void dispatch() {
+        while (active.size() < maxActive) {
+            var next = queued
+                .values()
+                .stream()
+                .filter(entry -> !active.containsKey(entry.downloadInfo.getId()))
+                .filter(entry -> activePerHost.getOrDefault(entry.host, 0) < maxPerHost)
+                .filter(entry -> breaker.allows(entry.host))
+                .min(comparator());
+            if (next.isEmpty()) {
+                wakeUpForOpenCircuits();
+                return;
+            }
+            var entry = next.get();
+            queued.remove(entry.downloadInfo.getId());
+            var refusal = disk.admit(entry.downloadInfo);
+            if (refusal.isPresent()) {
+                log.warn("Refused download {}: {}", entry.downloadInfo.getId(), refusal.get());
+                entry.refuser.accept(refusal.get());
+                continue;
+            }
+            active.put(entry.downloadInfo.getId(), entry);
+            activePerHost.merge(entry.host, 1, Integer::sum);
+            metrics.recordQueueWait(System.nanoTime() - entry.enqueuedAt);
+            log.debug("Admitted download {} ({} active)", entry.downloadInfo.getId(), active.size());
+            entry.launcher.accept(() -> release(entry));
+        }
+    }
+
+    //nothing else frees a slot when a host's circuit closes, so the scheduler looks again at that time
+    private void wakeUpForOpenCircuits() {
+        var now = System.currentTimeMillis();
+        var reopensAt = queued
+            .values()
+            .stream()
+            .mapToLong(entry -> breaker.reopensAt(entry.host))
+            .filter(at -> at > now)
+            .min();
+        if (reopensAt.isEmpty() || wakeUpAt > now && wakeUpAt <= reopensAt.getAsLong()) {
+            return;
+        }
+        wakeUpAt = reopensAt.getAsLong();
+        CompletableFuture
+            .delayedExecutor(wakeUpAt - now, TimeUnit.MILLISECONDS)
+            .execute(this::dispatch);
+    }
+
+    private Comparator<Entry> comparator() {
+        Comparator<Entry> byPriority = Comparator.comparingInt(entry -> -entry.downloadInfo.getPriority());
+        var byPolicy = switch (policy) {
+            case FIFO -> byPriority;
+            case SHORTEST_REMAINING_FIRST -> byPriority.thenComparingLong(Entry::remainingBytes);
+            case SHORTEST_ETA_FIRST -> {
+                var referenceSpeed = averageActiveSpeed();
+                yield byPriority.thenComparingDouble(entry -> entry.estimatedSeconds(referenceSpeed));
+            }
+        };
+        return byPolicy.thenComparingLong(entry -> entry.sequence);
+    }
+
+    //what a download without a speed of its own is expected to get
+    private double averageActiveSpeed() {
+        return active
+            .values()
+            .stream()
+            .mapToLong(entry -> entry.downloadInfo.getSpeed())
+            .filter(speed -> speed > 0)
+            .average()
+            .orElse(1);
+    }
+
+    private String hostOf(String url) {
+        return Optional
+            .ofNullable(HttpUrl.parse(url))
+            .map(HttpUrl::host)
+            .orElse("");
+    }
+
+    private static class Entry {
+        private final DownloadInfo downloadInfo;
+        private final Consumer<Runnable> launcher;
+        private final Consumer<String> refuser;
+        private final String host;
+        private final long enqueuedAt = System.nanoTime();
+        private long sequence;
+        private boolean released;
+
+        private Entry(DownloadInfo downloadInfo, Consumer<Runnable> launcher, Consumer<String> refuser, String host,
+                      long sequence) {
+            this.downloadInfo = downloadInfo;
+            this.launcher = launcher;
+            this.refuser = refuser;
+            this.host = host;
+            this.sequence = sequence;
+        }
+
+        //unknown sizes go last
+        private long remainingBytes() {
+            return downloadInfo.getTotalSize() > 0
+                ? downloadInfo.getTotalSize() - downloadInfo.getDownloadedSize()
+                : Long.MAX_VALUE;
+        }
+
+        //a download that ran before is expected to continue at its last speed
+        private double estimatedSeconds(double referenceSpeed) {
+            var speed = downloadInfo.getSpeed() > 0 ? downloadInfo.getSpeed() : referenceSpeed;
+            return remainingBytes() / speed;
+        }
+    }
+}
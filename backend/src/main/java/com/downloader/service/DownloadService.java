@@ -1,15 +1,25 @@
 package com.downloader.service;
 
+import com.downloader.config.DownloaderProperties;
 import com.downloader.entity.*;
+import com.downloader.store.DownloadStateStore;
 import com.downloader.task.DownloadTask;
 import com.downloader.task.direct.DirectDownloadTask;
-import java.io.File;
+import com.downloader.task.estimate.SpeedEstimator;
+import com.downloader.task.io.DirectBufferPool;
+import com.downloader.task.reactive.ReactiveDownloadTask;
+import com.downloader.task.segmented.SegmentedDownloadTask;
+import java.io.*;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.OkHttpClient;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 
 @Slf4j
@@ -17,44 +27,161 @@ import reactor.core.publisher.Flux;
 @RequiredArgsConstructor
 public class DownloadService {
 
-    private static final Map<String, DownloadInfo> downloads = new ConcurrentHashMap<>();
+    private static final DownloadRegistry downloads = new DownloadRegistry();
     private static final Map<String, DownloadTask> tasks = new ConcurrentHashMap<>();
     private static final Map<String, Future<?>> executions = new ConcurrentHashMap<>();
+    //downloads waiting out a retry backoff, the token tells a pending attempt from one that was superseded
+    private static final Map<String, Object> retries = new ConcurrentHashMap<>();
+    private static final TransferCoalescer coalescer = new TransferCoalescer();
 
     private final ExecutorService executor;
     private final DownloadSink downloadSink;
-    private final OkHttpClient httpClient;
     private final FilenameResolver filenameResolver;
+    private final DownloadProbe downloadProbe;
+    private final DownloaderProperties properties;
+    private final DownloadStateStore stateStore;
+    private final DownloadScheduler scheduler;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final DirectBufferPool bufferPool;
+    private final DownloadMetrics metrics;
+    private final ProgressSampler progressSampler;
+    private final ChecksumResolver checksumResolver;
+    private final RetryEngine retryEngine;
+    private final ConnectionStrategy connectionStrategy;
+    private final WebClient webClient;
+    private final DiskWriteScheduler diskWriteScheduler;
+    private final CompletedFileIndex completedFiles;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void restore() {
+        //the flushed state is journaled, and status changes in it move the downloads between the listing indexes.
+        //The progress of a coalesced transfer is passed on to its followers, they show up in the next batch
+        downloadSink.batches().subscribe(batch -> batch.downloads().forEach(info -> {
+            stateStore.record(info);
+            downloads.reindex(info.getId());
+            Optional
+                .ofNullable(downloads.get(info.getId()))
+                .ifPresent(this::mirrorToFollowers);
+        }));
+        stateStore
+            .load()
+            .forEach(info -> {
+                downloads.put(info.getId(), info);
+                downloadSink.publish(info);
+                bandwidthLimiter.setLimit(info.getId(), info.getSpeedLimit());
+                if (info.getStatus() == DownloadStatus.QUEUED && info.getRetryAt() > 0) {
+                    log.info("Restoring download task waiting for a retry: {}", info.getId());
+                    retryLater(info);
+                } else if (info.getStatus() == DownloadStatus.QUEUED || info.getStatus() == DownloadStatus.DOWNLOADING) {
+                    log.info("Restoring download task: {}", info.getId());
+                    info.setSpeed(0);
+                    admit(info);
+                }
+            });
+    }
 
     public Flux<DownloadInfo> flux() {
         return downloadSink.flux();
     }
 
-    public List<DownloadInfo> list() {
-        return downloads.values().stream().toList();
+    public Flux<DeltaEvent> deltas(long since) {
+        return Flux.defer(() -> {
+            var encoder = new DownloadDeltaEncoder();
+            return downloadSink
+                .batchesSince(since)
+                .map(encoder::encode)
+                .filter(event -> event.snapshot() || !event.isEmpty());
+        });
+    }
+
+    public DownloadPage list(DownloadQuery query) {
+        return downloads.query(query);
+    }
+
+    public Map<DownloadStatus, Integer> counts() {
+        return downloads.counts();
     }
 
+    //returns immediately, metadata is resolved in the background and the outcome is published to the stream
     public DownloadInfo add(DownloadRequest request) {
-        var filename = filenameResolver.resolveFilename(request.url(), request.filename());
-        var downloadInfo = DownloadInfo
-            .builder()
-            .id(UUID.randomUUID().toString())
-            .url(request.url())
-            .filename(filename)
-            .outputPath(request.outputPath())
-            .filePath(request.outputPath() + File.separator + filename)
-            .version(0)
-            .status(DownloadStatus.QUEUED)
-            .build();
+        var downloadInfo = register(request);
+        stateStore.record(downloadInfo);
+        publish(downloadInfo);
+        downloadProbe
+            .probeAsync(request.url())
+            .whenComplete((probe, error) -> onProbed(downloadInfo, request, probe, error));
+        return downloadInfo.snapshot();
+    }
 
-        downloads.put(downloadInfo.getId(), downloadInfo);
+    public List<DownloadInfo> addAll(List<DownloadRequest> requests) {
+        return requests
+            .stream()
+            .map(this::add)
+            .toList();
+    }
 
-        startDownloadTask(downloadInfo);
+    public List<DownloadInfo> queue() {
+        return scheduler.queue();
+    }
 
-        return downloadInfo;
+    public void setPriority(String id, int priority) {
+        Optional
+            .ofNullable(downloads.get(id))
+            .filter(info -> scheduler.setPriority(id, priority))
+            .ifPresent(this::publish);
+    }
+
+    public void reorder(List<String> ids) {
+        scheduler.reorder(ids);
+    }
+
+    public BandwidthLimit getGlobalSpeedLimit() {
+        return new BandwidthLimit(bandwidthLimiter.getGlobalLimit());
+    }
+
+    public void setGlobalSpeedLimit(long bytesPerSecond) {
+        log.info("Global speed limit set to {} B/s", bytesPerSecond);
+        bandwidthLimiter.setGlobalLimit(bytesPerSecond);
+    }
+
+    public void setSpeedLimit(String id, long bytesPerSecond) {
+        Optional
+            .ofNullable(downloads.get(id))
+            .ifPresent(info -> {
+                info.setSpeedLimit(Math.max(bytesPerSecond, 0));
+                bandwidthLimiter.setLimit(id, info.getSpeedLimit());
+                publish(info);
+            });
     }
 
     public void pause(String id) {
+        //a follower only stops waiting, the transfer it follows goes on for the others
+        if (coalescer.unfollow(id)) {
+            Optional
+                .ofNullable(downloads.get(id))
+                .ifPresent(info -> {
+                    log.info("Paused download following another: {}", id);
+                    info.setStatus(DownloadStatus.PAUSED);
+                    info.setSpeed(0);
+                    info.setTimeRemaining(0);
+                    publish(info);
+                });
+            return;
+        }
+        retries.remove(id);
+        //if it's still queued, resolving or waiting for a retry, there's no task yet
+        var waiting = Optional
+            .ofNullable(downloads.get(id))
+            .filter(info -> info.getStatus() == DownloadStatus.QUEUED && !tasks.containsKey(id));
+        if (scheduler.dequeue(id) || waiting.isPresent()) {
+            Optional
+                .ofNullable(downloads.get(id))
+                .ifPresent(info -> {
+                    log.info("Paused queued download: {}", id);
+                    info.setStatus(DownloadStatus.PAUSED);
+                    publish(info);
+                });
+        }
         Optional
             .ofNullable(tasks.get(id))
             .ifPresent(task -> {
@@ -66,16 +193,33 @@ public class DownloadService {
     }
 
     public void resume(String id) {
+        //a follower shows its leader's status, resuming it means resuming the leader
+        var leader = coalescer.followed(id);
+        if (leader.isPresent()) {
+            resume(leader.get());
+            return;
+        }
         Optional
             .ofNullable(downloads.get(id))
             .filter(info -> info.getStatus() == DownloadStatus.PAUSED)
             .ifPresent(info -> {
                 log.info("Resuming download task: {}", id);
-                startDownloadTask(info);
+                enqueue(info);
             });
     }
 
     public void cancel(String id) {
+        //a follower has no part file of its own, the one it may share with its leader is left alone
+        if (coalescer.unfollow(id)) {
+            log.info("Removing download following another: {}", id);
+            downloads.remove(id);
+            bandwidthLimiter.remove(id);
+            stateStore.remove(id);
+            downloadSink.remove(id);
+            return;
+        }
+        scheduler.dequeue(id);
+        retries.remove(id);
         //if it's a running download, there's execution
         Optional
             .ofNullable(executions.get(id))
@@ -91,20 +235,378 @@ public class DownloadService {
         Optional
             .ofNullable(downloads.remove(id))
             .ifPresent(d -> buildDownloadTask(d).cleanup());
+        bandwidthLimiter.remove(id);
+        stateStore.remove(id);
+        downloadSink.remove(id);
+        //the first of the followers takes over the transfer, the rest follow it
+        coalescer.release(id).forEach(this::admit);
     }
 
-    private void startDownloadTask(DownloadInfo downloadInfo) {
+    private DownloadInfo register(DownloadRequest request) {
+        var filename = filenameResolver.resolveFilename(request.url(), request.filename(), null);
+        var downloadInfo = DownloadInfo
+            .builder()
+            .id(UUID.randomUUID().toString())
+            .url(request.url())
+            .filename(filename)
+            .outputPath(request.outputPath())
+            .filePath(request.outputPath() + File.separator + filename)
+            .priority(request.priority())
+            .speedLimit(request.speedLimit())
+            .createdAt(System.currentTimeMillis())
+            .version(0)
+            .status(DownloadStatus.QUEUED)
+            .build();
+
+        downloads.put(downloadInfo.getId(), downloadInfo);
+        bandwidthLimiter.setLimit(downloadInfo.getId(), downloadInfo.getSpeedLimit());
+        return downloadInfo;
+    }
+
+    private void applyProbe(DownloadInfo downloadInfo, DownloadRequest request, ProbeResult probe) {
+        var filename = filenameResolver.resolveFilename(request.url(), request.filename(), probe.filename());
+        downloadInfo.setFilename(filename);
+        downloadInfo.setFilePath(request.outputPath() + File.separator + filename);
+        downloadInfo.setTotalSize(Math.max(probe.contentLength(), 0));
+        downloadInfo.setRangeSupported(probe.rangeSupported());
+        downloadInfo.setEtag(probe.etag());
+        downloadInfo.setLastModified(probe.lastModified());
+    }
+
+    //a checksum that cannot be resolved fails the download before any byte is fetched
+    private boolean applyChecksum(DownloadInfo downloadInfo, DownloadRequest request) {
+        try {
+            downloadInfo.setChecksum(checksumResolver.resolve(
+                request.checksum(), request.checksumUrl(), request.url(), downloadInfo.getFilename()
+            ));
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to resolve checksum of {}: {}", request.url(), e.getMessage());
+            downloadInfo.setStatus(DownloadStatus.FAILED);
+            downloadInfo.setError(e.getMessage());
+            return false;
+        }
+    }
+
+    //AUTO goes by the resolved filename, an archive whose format cannot be told fails like a bad checksum
+    private boolean applyExtract(DownloadInfo downloadInfo, DownloadRequest request) {
+        if (request.extract() != ArchiveFormat.AUTO) {
+            downloadInfo.setExtract(request.extract());
+            return true;
+        }
+        var format = ArchiveFormat.of(downloadInfo.getFilename());
+        if (format.isEmpty()) {
+            log.error("Cannot tell the archive format of {}", downloadInfo.getFilename());
+            downloadInfo.setStatus(DownloadStatus.FAILED);
+            downloadInfo.setError("Cannot tell the archive format of %s".formatted(downloadInfo.getFilename()));
+            return false;
+        }
+        downloadInfo.setExtract(format.get());
+        return true;
+    }
+
+    //a mirror has to serve the same bytes: the same length with range support, and the primary's ETag unless a
+    //checksum verifies the result anyway. Anything else is left out rather than mixed into the file
+    private void applyMirrors(DownloadInfo downloadInfo, DownloadRequest request) {
+        var probes = request
+            .mirrors()
+            .stream()
+            .filter(url -> !url.equals(request.url()))
+            .distinct()
+            .collect(Collectors.toMap(
+                url -> url,
+                url -> downloadProbe
+                    .probeAsync(url)
+                    .exceptionally(e -> ProbeResult.UNKNOWN),
+                (first, second) -> first,
+                LinkedHashMap::new
+            ));
+        var mirrors = probes
+            .entrySet()
+            .stream()
+            .map(entry -> Map.entry(entry.getKey(), entry.getValue().join()))
+            .filter(entry -> isMirrorOf(downloadInfo, entry.getKey(), entry.getValue()))
+            .map(entry -> new Mirror(entry.getKey(), entry.getValue().etag(), entry.getValue().lastModified()))
+            .toList();
+        downloadInfo.setMirrors(mirrors.isEmpty() ? null : mirrors);
+    }
+
+    private boolean isMirrorOf(DownloadInfo downloadInfo, String url, ProbeResult probe) {
+        if (!probe.rangeSupported() || probe.contentLength() != downloadInfo.getTotalSize()) {
+            log.warn("Ignoring mirror {} of {}: size {} or range support does not match",
+                url, downloadInfo.getFilename(), probe.contentLength());
+            return false;
+        }
+        if (downloadInfo.getChecksum() == null && (probe.etag() == null || !probe.etag().equals(downloadInfo.getEtag()))) {
+            log.warn("Ignoring mirror {} of {}: ETag {} does not match and there is no checksum",
+                url, downloadInfo.getFilename(), probe.etag());
+            return false;
+        }
+        return true;
+    }
+
+    private void onProbed(DownloadInfo downloadInfo, DownloadRequest request, ProbeResult probe, Throwable error) {
+        //cancelled while resolving
+        if (downloads.get(downloadInfo.getId()) != downloadInfo) {
+            return;
+        }
+        if (error != null) {
+            log.error("Failed to resolve {}: {}", request.url(), error.getMessage());
+            downloadInfo.setStatus(DownloadStatus.FAILED);
+            downloadInfo.setError(Optional.ofNullable(error.getCause()).orElse(error).getMessage());
+            publish(downloadInfo);
+            return;
+        }
+        applyProbe(downloadInfo, request, probe);
+        if (!applyChecksum(downloadInfo, request) || !applyExtract(downloadInfo, request)) {
+            publish(downloadInfo);
+            return;
+        }
+        applyMirrors(downloadInfo, request);
+        //paused while resolving, stays out of the queue until resumed
+        if (downloadInfo.getStatus() == DownloadStatus.QUEUED) {
+            admit(downloadInfo);
+        } else {
+            publish(downloadInfo);
+        }
+    }
+
+    //a finished copy of the same content is reused and a transfer of it already under way is joined, anything else
+    //is queued and leads whatever joins it later. Downloads that are extracted do it while their own bytes arrive,
+    //they are always fetched
+    private void admit(DownloadInfo downloadInfo) {
+        if (downloadInfo.getExtract() != null) {
+            enqueue(downloadInfo);
+            return;
+        }
+        if (reuseCompleted(downloadInfo) || follow(downloadInfo)) {
+            return;
+        }
+        enqueue(downloadInfo);
+        coalescer.lead(TransferCoalescer.keyOf(downloadInfo), downloadInfo.getId());
+    }
+
+    private boolean reuseCompleted(DownloadInfo downloadInfo) {
+        var cached = completedFiles.find(downloadInfo);
+        if (cached.isEmpty()) {
+            return false;
+        }
+        try {
+            completedFiles.materialize(cached.get(), Path.of(downloadInfo.getFilePath()));
+        } catch (IOException e) {
+            log.warn("Could not reuse {} for {}: {}", cached.get(), downloadInfo.getFilename(), e.getMessage());
+            return false;
+        }
+        log.info("Reused completed file for {}", downloadInfo.getFilename());
+        complete(downloadInfo, cached.get().toFile().length());
+        return true;
+    }
+
+    private boolean follow(DownloadInfo downloadInfo) {
+        var leader = coalescer
+            .leaderOf(TransferCoalescer.keyOf(downloadInfo))
+            .map(downloads::get)
+            .filter(info -> info != downloadInfo)
+            .filter(info -> info.getStatus() == DownloadStatus.QUEUED || info.getStatus() == DownloadStatus.DOWNLOADING);
+        if (leader.isEmpty()) {
+            return false;
+        }
+        log.info("Download {} follows {} of the same file", downloadInfo.getId(), leader.get().getId());
+        coalescer.follow(leader.get().getId(), downloadInfo);
+        mirror(leader.get(), downloadInfo);
+        return true;
+    }
+
+    //the outcome is settled once the leader stops, until then followers show how far it got
+    private void mirrorToFollowers(DownloadInfo leader) {
+        if (leader.getStatus() == DownloadStatus.COMPLETED || leader.getStatus() == DownloadStatus.FAILED) {
+            return;
+        }
+        coalescer
+            .followers(leader.getId())
+            .forEach(follower -> mirror(leader, follower));
+    }
+
+    private void mirror(DownloadInfo leader, DownloadInfo follower) {
+        follower.setStatus(leader.getStatus());
+        follower.setTotalSize(leader.getTotalSize());
+        follower.setDownloadedSize(leader.getDownloadedSize());
+        follower.setProgress(leader.getProgress());
+        follower.setSpeed(leader.getSpeed());
+        follower.setTimeRemaining(leader.getTimeRemaining());
+        follower.setError(leader.getError());
+        publish(follower);
+    }
+
+    //a completed leader's file is placed at every follower's path and indexed for later downloads, a failed one
+    //fails its followers with the same error. Paused or waiting for a retry, they keep following it
+    private void settle(DownloadInfo downloadInfo) {
+        switch (downloadInfo.getStatus()) {
+            case COMPLETED -> {
+                var source = Path.of(downloadInfo.getFilePath());
+                coalescer
+                    .release(downloadInfo.getId())
+                    .forEach(follower -> completeFollower(source, downloadInfo.getTotalSize(), follower));
+                executor.execute(() -> completedFiles.add(downloadInfo));
+            }
+            case FAILED -> coalescer
+                .release(downloadInfo.getId())
+                .forEach(follower -> {
+                    follower.setStatus(DownloadStatus.FAILED);
+                    follower.setSpeed(0);
+                    follower.setProgress(0);
+                    follower.setTimeRemaining(0);
+                    follower.setError(downloadInfo.getError());
+                    publish(follower);
+                });
+            default -> {
+            }
+        }
+    }
+
+    //fetched on its own when the file cannot be placed
+    private void completeFollower(Path source, long size, DownloadInfo follower) {
+        try {
+            completedFiles.materialize(source, Path.of(follower.getFilePath()));
+            complete(follower, size);
+        } catch (IOException e) {
+            log.warn("Could not place {} for {}: {}", source, follower.getFilename(), e.getMessage());
+            admit(follower);
+        }
+    }
+
+    private void complete(DownloadInfo downloadInfo, long size) {
+        downloadInfo.setStatus(DownloadStatus.COMPLETED);
+        downloadInfo.setTotalSize(size);
+        downloadInfo.setDownloadedSize(size);
+        downloadInfo.setProgress(100);
+        downloadInfo.setSpeed(0);
+        downloadInfo.setTimeRemaining(0);
+        downloadInfo.setError(null);
+        publish(downloadInfo);
+    }
+
+    private void enqueue(DownloadInfo downloadInfo) {
+        scheduler.enqueue(
+            downloadInfo,
+            release -> startDownloadTask(downloadInfo, release),
+            reason -> refuse(downloadInfo, reason)
+        );
+        if (downloadInfo.getStatus() == DownloadStatus.QUEUED) {
+            publish(downloadInfo);
+        }
+    }
+
+    private void startDownloadTask(DownloadInfo downloadInfo, Runnable release) {
+        var id = downloadInfo.getId();
+        downloadInfo.setRetryAt(0);
+        downloadInfo.setError(null);
         var downloadTask = buildDownloadTask(downloadInfo);
-        tasks.put(downloadInfo.getId(), downloadTask);
-        executions.put(downloadInfo.getId(), executor.submit(downloadTask));
+        var execution = new FutureTask<>(() -> {
+            metrics.track(downloadInfo);
+            progressSampler.register(downloadTask.getProgressTracker());
+            try {
+                downloadTask.run();
+            } finally {
+                progressSampler.unregister(downloadTask.getProgressTracker());
+                metrics.untrack(id);
+                if (tasks.remove(id, downloadTask)) {
+                    executions.remove(id);
+                }
+                release.run();
+                if (downloadInfo.getStatus() == DownloadStatus.QUEUED && downloadInfo.getRetryAt() > 0) {
+                    retryLater(downloadInfo);
+                }
+                settle(downloadInfo);
+            }
+        }, null);
+        tasks.put(id, downloadTask);
+        executions.put(id, execution);
+        executor.execute(execution);
+    }
+
+    //left paused with the reason rather than failed, so that it can be resumed once there is room
+    private void refuse(DownloadInfo downloadInfo, String reason) {
+        downloadInfo.setStatus(DownloadStatus.PAUSED);
+        downloadInfo.setSpeed(0);
+        downloadInfo.setTimeRemaining(0);
+        downloadInfo.setError(reason);
+        publish(downloadInfo);
+    }
+
+    //stays QUEUED outside the scheduler until the backoff has passed, a pause or cancel meanwhile drops the attempt
+    private void retryLater(DownloadInfo downloadInfo) {
+        var id = downloadInfo.getId();
+        var token = new Object();
+        retries.put(id, token);
+        var delay = Math.max(downloadInfo.getRetryAt() - System.currentTimeMillis(), 0);
+        CompletableFuture
+            .delayedExecutor(delay, TimeUnit.MILLISECONDS, executor)
+            .execute(() -> {
+                if (retries.remove(id, token) && downloads.get(id) == downloadInfo) {
+                    log.info("Retrying download task: {}", id);
+                    enqueue(downloadInfo);
+                }
+            });
+    }
+
+    private void publish(DownloadInfo downloadInfo) {
+        downloadInfo.setVersion(downloadInfo.getVersion() + 1);
+        downloadSink.publish(downloadInfo);
     }
 
     private DownloadTask buildDownloadTask(DownloadInfo downloadInfo) {
+        if (isSegmentable(downloadInfo)) {
+            return SegmentedDownloadTask
+                .builder()
+                .downloadInfo(downloadInfo)
+                .downloadSink(downloadSink)
+                .bandwidthLimiter(bandwidthLimiter)
+                .metrics(metrics)
+                .speedEstimator(SpeedEstimator.of(properties.progress()))
+                .retryEngine(retryEngine)
+                .httpClient(connectionStrategy.clientFor(downloadInfo))
+                .executor(executor)
+                .diskWriteScheduler(diskWriteScheduler)
+                .connections(properties.segments().connections())
+                .minSegmentSize(properties.segments().minSize().toBytes())
+                .minSplitSize(properties.segments().minSplitSize().toBytes())
+                .blockSize(properties.segments().blockSize().toBytes())
+                .maxSourceFailures(properties.mirrors().maxFailures())
+                .slowSourceRatio(properties.mirrors().slowRatio())
+                .build();
+        }
+        if (properties.io().engine() == DownloadEngine.REACTIVE) {
+            return ReactiveDownloadTask
+                .builder()
+                .downloadInfo(downloadInfo)
+                .downloadSink(downloadSink)
+                .bandwidthLimiter(bandwidthLimiter)
+                .metrics(metrics)
+                .speedEstimator(SpeedEstimator.of(properties.progress()))
+                .retryEngine(retryEngine)
+                .webClient(webClient)
+                .build();
+        }
         return DirectDownloadTask
             .builder()
             .downloadInfo(downloadInfo)
             .downloadSink(downloadSink)
-            .httpClient(httpClient)
+            .bandwidthLimiter(bandwidthLimiter)
+            .metrics(metrics)
+            .speedEstimator(SpeedEstimator.of(properties.progress()))
+            .retryEngine(retryEngine)
+            .httpClient(connectionStrategy.clientFor(downloadInfo))
+            .ioMode(properties.io().mode())
+            .bufferPool(bufferPool)
+            .diskWriteScheduler(diskWriteScheduler)
             .build();
     }
+
+    private boolean isSegmentable(DownloadInfo downloadInfo) {
+        var segments = properties.segments();
+        return downloadInfo.isRangeSupported()
+            && segments.connections() > 1
+            && downloadInfo.getTotalSize() >= segments.minSize().toBytes();
+    }
 }
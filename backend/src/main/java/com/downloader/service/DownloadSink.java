@@ -1,61 +1,204 @@
 package com.downloader.service;
 
+import com.downloader.config.DownloaderProperties;
 import com.downloader.entity.DownloadInfo;
+import jakarta.annotation.*;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import lombok.extern.slf4j.Slf4j;
-import org.reactivestreams.Subscription;
 import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
 import reactor.core.publisher.*;
 
+//conflates published downloads to the latest version per id and flushes them to every subscriber on a fixed tick,
+//a slow subscriber keeps accumulating the newest state instead of holding back the others
 @Slf4j
 @Component
 public class DownloadSink {
 
-    private final Map<String, Subscription> activeConsumers = new ConcurrentHashMap<>();
-    private static final Sinks.Many<DownloadInfo> sink = Sinks
-        .many()
-        .multicast()
-        .directAllOrNothing();
+    private static final int MAX_TOMBSTONES = 10_000;
 
+    private final Map<String, DownloadInfo> dirty = new ConcurrentHashMap<>();
+    private final Set<String> removedIds = ConcurrentHashMap.newKeySet();
+    private final Map<String, Subscriber> activeConsumers = new ConcurrentHashMap<>();
+    private final Duration tick;
+    private Disposable ticker;
+
+    //guarded by this, the state as of the last flush
+    private final Map<String, Versioned> current = new HashMap<>();
+    private final LinkedHashMap<String, Long> tombstones = new LinkedHashMap<>();
+    private long sequence = 0;
+    private long tombstoneHorizon = 0;
+
+    private final DownloadMetrics metrics;
+
+    public DownloadSink(DownloaderProperties properties, DownloadMetrics metrics) {
+        this.metrics = metrics;
+        this.tick = properties.events().tick();
+        metrics.gauge("dload.sse.subscribers", "Connected stream subscribers", activeConsumers, Map::size);
+    }
+
+    //the ticker calls back into the sink, it only starts once the sink is fully constructed
+    @PostConstruct
+    public void start() {
+        ticker = Flux
+            .interval(tick, tick)
+            .onBackpressureDrop(i -> metrics.recordDroppedTick())
+            .subscribe(i -> flush());
+    }
+
+    //the download is snapshotted on the next tick, publishing is only a map put
     public void publish(DownloadInfo evt) {
-        var result = sink.tryEmitNext(evt);
+        dirty.put(evt.getId(), evt);
+    }
 
-        if (result.isFailure()) {
-            log.warn("Failed to emit event for download {}: {}", evt.getId(), result);
+    public void remove(String id) {
+        dirty.remove(id);
+        removedIds.add(id);
+    }
 
-            // Retry once if it was a transient failure
-            if (result == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
-                sink.emitNext(evt, Sinks.EmitFailureHandler.FAIL_FAST);
-            }
+    public Flux<DownloadInfo> flux() {
+        return batches().concatMapIterable(DownloadBatch::downloads, 1);
+    }
+
+    public Flux<DownloadBatch> batches() {
+        return subscribe(null);
+    }
+
+    //starts with everything changed after the given sequence, or the full state when it is unknown or too old
+    public Flux<DownloadBatch> batchesSince(long since) {
+        return subscribe(since);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (ticker != null) {
+            ticker.dispose();
         }
     }
 
-    public Flux<DownloadInfo> flux() {
+    private Flux<DownloadBatch> subscribe(Long since) {
         var clientId = UUID.randomUUID().toString().substring(0, 8);
-        return sink
-            .asFlux()
-            .onErrorContinue((error, item) -> {
-                log.debug("Error processing event for client {}, continuing stream: {}", clientId, error.getMessage());
-            })
-            .doOnSubscribe(subscription -> {
-                activeConsumers.put(clientId, subscription);
-                log.debug("New SSE consumer connected: {} (total active: {})", clientId, activeConsumers.size());
-            })
-            .doOnNext(event -> {
-                log.trace("Sending event to consumers {}: download={}", clientId, event.getId());
-            })
-            .doOnCancel(() -> {
+        return Flux.create(sink -> {
+            var subscriber = new Subscriber(sink, metrics);
+            synchronized (this) {
+                if (since != null) {
+                    subscriber.offer(initialBatch(since));
+                }
+                activeConsumers.put(clientId, subscriber);
+            }
+            log.debug("New SSE consumer connected: {} (total active: {})", clientId, activeConsumers.size());
+            sink.onRequest(n -> subscriber.drain());
+            sink.onDispose(() -> {
                 activeConsumers.remove(clientId);
                 log.debug("SSE consumer disconnected: {} (remaining: {})", clientId, activeConsumers.size());
-            })
-            .doOnTerminate(() -> {
-                activeConsumers.remove(clientId);
-                log.debug("SSE consumer terminated: {} (remaining: {})", clientId, activeConsumers.size());
-            })
-            .doOnError(error -> {
-                activeConsumers.remove(clientId);
-                log.error("SSE consumer error: {} (remaining: {}): {}", clientId, activeConsumers.size(), error.getMessage());
             });
+        });
+    }
+
+    private DownloadBatch initialBatch(long since) {
+        var full = since <= 0 || since < tombstoneHorizon || since > sequence;
+        var downloads = current
+            .values()
+            .stream()
+            .filter(versioned -> full || versioned.sequence > since)
+            .map(Versioned::info)
+            .toList();
+        var removed = new HashSet<String>();
+        if (!full) {
+            tombstones.forEach((id, removedAt) -> {
+                if (removedAt > since) {
+                    removed.add(id);
+                }
+            });
+        }
+        return new DownloadBatch(sequence, downloads, removed, full);
+    }
+
+    //package-private so the fan-out can be driven without waiting on the ticker
+    synchronized void flush() {
+        if (dirty.isEmpty() && removedIds.isEmpty()) {
+            return;
+        }
+        var next = ++sequence;
+        var batch = new ArrayList<DownloadInfo>(dirty.size());
+        for (var id : dirty.keySet()) {
+            Optional
+                .ofNullable(dirty.remove(id))
+                .map(DownloadInfo::snapshot)
+                .ifPresent(snapshot -> {
+                    batch.add(snapshot);
+                    current.put(id, new Versioned(snapshot, next));
+                });
+        }
+        var removed = new HashSet<String>();
+        for (var id : removedIds) {
+            if (removedIds.remove(id) && current.remove(id) != null) {
+                removed.add(id);
+                tombstones.put(id, next);
+            }
+        }
+        pruneTombstones();
+
+        log.trace("Flushing {} downloads to {} consumers", batch.size(), activeConsumers.size());
+        var downloadBatch = new DownloadBatch(next, batch, removed, false);
+        activeConsumers.values().forEach(subscriber -> subscriber.offer(downloadBatch));
+    }
+
+    private void pruneTombstones() {
+        var iterator = tombstones.entrySet().iterator();
+        while (tombstones.size() > MAX_TOMBSTONES && iterator.hasNext()) {
+            tombstoneHorizon = iterator.next().getValue();
+            iterator.remove();
+        }
+    }
+
+    private record Versioned(DownloadInfo info, long sequence) {
+    }
+
+    private static class Subscriber {
+
+        private final FluxSink<DownloadBatch> sink;
+        private final DownloadMetrics metrics;
+        private final Map<String, DownloadInfo> latest = new LinkedHashMap<>();
+        private final Set<String> removed = new HashSet<>();
+        private long sequence;
+        private boolean full;
+
+        private Subscriber(FluxSink<DownloadBatch> sink, DownloadMetrics metrics) {
+            this.sink = sink;
+            this.metrics = metrics;
+        }
+
+        private synchronized void offer(DownloadBatch batch) {
+            var conflated = 0;
+            for (var info : batch.downloads()) {
+                if (latest.put(info.getId(), info) != null) {
+                    conflated++;
+                }
+            }
+            if (conflated > 0) {
+                metrics.recordConflated(conflated);
+            }
+            batch.removed().forEach(id -> {
+                latest.remove(id);
+                removed.add(id);
+            });
+            sequence = batch.sequence();
+            full |= batch.full();
+            drain();
+        }
+
+        private synchronized void drain() {
+            if ((latest.isEmpty() && removed.isEmpty() && !full) || sink.requestedFromDownstream() <= 0 || sink.isCancelled()) {
+                return;
+            }
+            var next = new DownloadBatch(sequence, List.copyOf(latest.values()), Set.copyOf(removed), full);
+            latest.clear();
+            removed.clear();
+            full = false;
+            sink.next(next);
+        }
     }
 }
@@ -1,13 +1,10 @@
 package com.downloader.service;
 
-import java.io.IOException;
 import java.net.*;
 import java.nio.charset.*;
 import java.util.*;
 import java.util.regex.Pattern;
-import lombok.*;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.*;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
@@ -15,37 +12,21 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class FilenameResolver {
 
     private static final Pattern FILENAME_STAR = Pattern.compile("(?i)filename\\*=(?:([^']+)'[^']*')?([^;]+)");
     private static final Pattern FILENAME_QUOTED = Pattern.compile("(?i)filename=\"?([^\";]+)\"?");
 
-    private final OkHttpClient okHttpClient;
-
-    public String resolveFilename(String url, String overrideFilename) {
+    public String resolveFilename(String url, String overrideFilename, String dispositionFilename) {
         return Optional
             .ofNullable(overrideFilename)
-            .or(() -> resolveFromRequest(url))
+            .or(() -> Optional.ofNullable(dispositionFilename))
             .or(() -> parseFromUrl(url))
             .map(this::sanitizeFilename)
             .orElse("file-%s.html".formatted(UUID.randomUUID().toString()));
     }
 
-    private Optional<String> resolveFromRequest(String url) {
-        var request = new Request.Builder().url(url).get().build();
-        try {
-            try (var response = okHttpClient.newCall(request).execute()) {
-                var filename = extractFileNameFromHeaders(response.headers("Content-Disposition"));
-                return Optional.ofNullable(filename);
-            }
-        } catch (IOException e) {
-            log.error(e.getMessage());
-            return Optional.empty();
-        }
-    }
-
-    private String extractFileNameFromHeaders(List<String> filenameHeaders) {
+    public String parseContentDisposition(List<String> filenameHeaders) {
         for (var header : filenameHeaders) {
             String filename = Optional
                 .ofNullable(parseEncodedFilename(header))
@@ -59,9 +40,8 @@ public class FilenameResolver {
     }
 
     private Optional<String> parseFromUrl(String url) {
-        var path = UriComponentsBuilder.fromUriString(url).build().getPath();
-        return Optional
-            .ofNullable(StringUtils.trimToNull(FilenameUtils.getName(path)))
+        return parsePath(url)
+            .map(path -> StringUtils.trimToNull(FilenameUtils.getName(path)))
             .map(name -> {
                 try {
                     return URLDecoder.decode(name, StandardCharsets.UTF_8);
@@ -72,6 +52,16 @@ public class FilenameResolver {
             .filter(filename -> !FilenameUtils.getExtension(filename).isEmpty());
     }
 
+    //malformed urls are reported by the probe, here they only mean there's no name to take
+    private Optional<String> parsePath(String url) {
+        try {
+            return Optional.ofNullable(UriComponentsBuilder.fromUriString(url).build().getPath());
+        } catch (Exception e) {
+            log.debug("Cannot parse path of {}: {}", url, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
     //Content-Disposition: attachment; filename*=UTF-8''%E4%BE%8B%E5%AD%90.txt
     private String parseEncodedFilename(String header) {
         var matcher = FILENAME_STAR.matcher(header);
@@ -0,0 +1,85 @@
+package com.downloader.service;
+
+import com.downloader.config.DownloaderProperties;
+import jakarta.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+//counts calls to a host that failed in a row, past the threshold the host is open and the scheduler admits no
+//download for it until openFor has passed. The next call then decides: a success closes it, a failure reopens it
+@Slf4j
+@Component
+public class HostCircuitBreaker {
+
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+    private final int failureThreshold;
+    private final long openForMillis;
+    private final DownloadMetrics metrics;
+    private final LongSupplier clock;
+
+    @Autowired
+    public HostCircuitBreaker(DownloaderProperties properties, DownloadMetrics metrics) {
+        this(properties, metrics, System::currentTimeMillis);
+    }
+
+    //clock in milliseconds
+    HostCircuitBreaker(DownloaderProperties properties, DownloadMetrics metrics, LongSupplier clock) {
+        this.failureThreshold = Math.max(properties.retry().breaker().failureThreshold(), 1);
+        this.openForMillis = properties.retry().breaker().openFor().toMillis();
+        this.metrics = metrics;
+        this.clock = clock;
+    }
+
+    //the gauge holds on to the breaker, it is handed over once construction is done
+    @PostConstruct
+    public void registerGauges() {
+        metrics.gauge("dload.breaker.open", "Hosts currently refused new downloads", this, HostCircuitBreaker::openCount);
+    }
+
+    public boolean allows(String host) {
+        return reopensAt(host) <= clock.getAsLong();
+    }
+
+    //when the host accepts downloads again, in the past for a closed one
+    public long reopensAt(String host) {
+        var state = hosts.get(host);
+        return state != null ? state.openUntil : 0;
+    }
+
+    public void onSuccess(String host) {
+        if (hosts.remove(host) != null) {
+            log.info("Circuit for {} closed", host);
+        }
+    }
+
+    public void onFailure(String host) {
+        var now = clock.getAsLong();
+        hosts.compute(host, (key, state) -> {
+            var next = state != null ? state : new HostState();
+            next.failures++;
+            if (next.failures >= failureThreshold && next.openUntil <= now) {
+                next.openUntil = now + openForMillis;
+                log.warn("Circuit for {} open for {} ms after {} failures", host, openForMillis, next.failures);
+            }
+            return next;
+        });
+    }
+
+    int openCount() {
+        var now = clock.getAsLong();
+        return (int) hosts
+            .values()
+            .stream()
+            .filter(state -> state.openUntil > now)
+            .count();
+    }
+
+    private static class HostState {
+        private int failures;
+        private volatile long openUntil;
+    }
+}
@@ -0,0 +1,52 @@
+package com.downloader.service;
+
+import com.downloader.config.DownloaderProperties;
+import com.downloader.task.ProgressTracker;
+import jakarta.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+//one thread derives speed, progress and eta of every running download at a fixed cadence
+@Slf4j
+@Component
+public class ProgressSampler {
+
+    private final Set<ProgressTracker> trackers = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("progress-sampler").daemon().factory()
+    );
+
+    public ProgressSampler(DownloaderProperties properties) {
+        var interval = properties.progress().interval().toMillis();
+        sampler.scheduleAtFixedRate(this::sampleAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void register(ProgressTracker tracker) {
+        trackers.add(tracker);
+    }
+
+    //the last bytes read before the task stopped are picked up here
+    public void unregister(ProgressTracker tracker) {
+        if (trackers.remove(tracker)) {
+            tracker.sample();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        sampler.shutdownNow();
+    }
+
+    private void sampleAll() {
+        var now = System.currentTimeMillis();
+        for (var tracker : trackers) {
+            try {
+                tracker.sample(now);
+            } catch (Exception e) {
+                log.error("Failed to sample progress", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.downloader.service;
+
+import com.downloader.config.DownloaderProperties;
+import com.downloader.entity.DownloadInfo;
+import com.downloader.task.retry.*;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+//decides whether a failed download gets another attempt and how long it waits for it. Attempts count per download
+//and start over once an attempt moved the download forward, so a long transfer is not failed by a few scattered
+//errors hours apart
+@Slf4j
+@Component
+public class RetryEngine {
+
+    private final DownloaderProperties.Retry retry;
+    private final DownloadMetrics metrics;
+
+    public RetryEngine(DownloaderProperties properties, DownloadMetrics metrics) {
+        this.retry = properties.retry();
+        this.metrics = metrics;
+    }
+
+    public Optional<Duration> nextDelay(DownloadInfo downloadInfo, Exception error, boolean progressed) {
+        var errorClass = ErrorClass.of(error);
+        if (errorClass.isEmpty()) {
+            return Optional.empty();
+        }
+        var policy = retry.policy(errorClass.get());
+        if (progressed) {
+            downloadInfo.setAttempts(0);
+        }
+        var attempt = downloadInfo.getAttempts() + 1;
+        if (policy == null || attempt > policy.maxAttempts()) {
+            log.warn("Giving up on {} after {} attempts: {}", downloadInfo.getFilename(), attempt - 1, error.getMessage());
+            return Optional.empty();
+        }
+        downloadInfo.setAttempts(attempt);
+        metrics.recordRetry(errorClass.get());
+        var delay = backoff(policy, attempt);
+        //the server's own estimate wins when it asks for longer
+        if (error instanceof HttpStatusException status && status.getRetryAfter().compareTo(delay) > 0) {
+            delay = status.getRetryAfter();
+        }
+        return Optional.of(delay);
+    }
+
+    //equal jitter: half of the exponential delay is fixed, the other half random, so that downloads failing
+    //together do not come back together
+    private Duration backoff(DownloaderProperties.RetryPolicy policy, int attempt) {
+        var exponential = policy.initialDelay().toMillis() * Math.pow(Math.max(policy.multiplier(), 1), attempt - 1);
+        var capped = (long) Math.min(exponential, policy.maxDelay().toMillis());
+        var half = capped / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(capped - half + 1));
+    }
+}
@@ -0,0 +1,72 @@
+package com.downloader.service;
+
+import com.downloader.entity.DownloadInfo;
+import java.util.*;
+
+//downloads of the same url, version and checksum added while one of them is in flight do not fetch it again: the
+//first one leads the transfer and the others follow it until it settles
+class TransferCoalescer {
+
+    //coalescing key to the leading download's id
+    private final Map<String, String> leaders = new HashMap<>();
+    //leader id to the downloads following it, in the order they joined
+    private final Map<String, List<DownloadInfo>> followers = new HashMap<>();
+    //follower id to the id of the download it follows
+    private final Map<String, String> following = new HashMap<>();
+
+    //the key also carries the expected checksum, a follower has to accept whatever the leader verified
+    static String keyOf(DownloadInfo downloadInfo) {
+        return String.join("\n",
+            downloadInfo.getUrl(),
+            Objects.requireNonNullElse(downloadInfo.getEtag(), ""),
+            Objects.requireNonNullElse(downloadInfo.getChecksum(), ""));
+    }
+
+    synchronized Optional<String> leaderOf(String key) {
+        return Optional.ofNullable(leaders.get(key));
+    }
+
+    //replaces a leader that no longer runs, its followers stay with it
+    synchronized void lead(String key, String leaderId) {
+        leaders.put(key, leaderId);
+    }
+
+    synchronized void follow(String leaderId, DownloadInfo follower) {
+        followers
+            .computeIfAbsent(leaderId, id -> new ArrayList<>())
+            .add(follower);
+        following.put(follower.getId(), leaderId);
+    }
+
+    synchronized Optional<String> followed(String followerId) {
+        return Optional.ofNullable(following.get(followerId));
+    }
+
+    //false when the download follows nothing
+    synchronized boolean unfollow(String followerId) {
+        var leaderId = following.remove(followerId);
+        if (leaderId == null) {
+            return false;
+        }
+        var list = followers.get(leaderId);
+        list.removeIf(follower -> follower.getId().equals(followerId));
+        if (list.isEmpty()) {
+            followers.remove(leaderId);
+        }
+        return true;
+    }
+
+    synchronized List<DownloadInfo> followers(String leaderId) {
+        return List.copyOf(followers.getOrDefault(leaderId, List.of()));
+    }
+
+    //the leader is done with, its followers are handed back to be settled
+    synchronized List<DownloadInfo> release(String leaderId) {
+        leaders.values().removeIf(leaderId::equals);
+        var released = Optional
+            .ofNullable(followers.remove(leaderId))
+            .orElse(List.of());
+        released.forEach(follower -> following.remove(follower.getId()));
+        return released;
+    }
+}
@@ -0,0 +1,185 @@
+package com.downloader.store;
+
+import com.downloader.config.DownloaderProperties;
+import com.downloader.entity.DownloadInfo;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.*;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.annotation.PreDestroy;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import static com.downloader.config.AppConstants.CONFIG_PATH;
+import static java.nio.file.StandardOpenOption.*;
+
+//append-only journal of download state transitions, compacted into a snapshot once it grows
+@Slf4j
+@Component
+public class DownloadStateStore {
+
+    private static final String JOURNAL_FILE = "downloads.journal";
+    private static final String SNAPSHOT_FILE = "downloads.snapshot.json";
+
+    //persist every field, including the ones hidden from the REST/SSE payloads
+    private final ObjectMapper mapper = JsonMapper
+        .builder()
+        .disable(MapperFeature.USE_ANNOTATIONS)
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+        .findAndAddModules()
+        .build();
+
+    private final Map<String, JournalEntry> pending = new ConcurrentHashMap<>();
+    private final Map<String, DownloadInfo> state = new HashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("state-journal").daemon().factory()
+    );
+
+    private final Path journalPath;
+    private final Path snapshotPath;
+    private final int compactAfter;
+
+    private FileChannel journal;
+    private int journalEntries;
+
+    @Autowired
+    public DownloadStateStore(DownloaderProperties properties) {
+        this(properties, Path.of(CONFIG_PATH));
+    }
+
+    DownloadStateStore(DownloaderProperties properties, Path dir) {
+        this.journalPath = dir.resolve(JOURNAL_FILE);
+        this.snapshotPath = dir.resolve(SNAPSHOT_FILE);
+        this.compactAfter = properties.state().compactAfter();
+        var interval = properties.state().flushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized List<DownloadInfo> load() {
+        try {
+            Files.createDirectories(journalPath.getParent());
+            readSnapshot();
+            replayJournal();
+            journal = FileChannel.open(journalPath, CREATE, WRITE, APPEND);
+            log.info("Loaded {} downloads from {}", state.size(), journalPath.getParent());
+        } catch (IOException e) {
+            log.warn("Download state is not persisted, {} is not usable: {}", journalPath.getParent(), e.getMessage());
+        }
+        return state.values().stream().map(info -> info.toBuilder().build()).toList();
+    }
+
+    public void record(DownloadInfo downloadInfo) {
+        pending.put(downloadInfo.getId(), new JournalEntry(downloadInfo.getId(), downloadInfo.snapshot()));
+    }
+
+    public void remove(String id) {
+        pending.put(id, new JournalEntry(id, null));
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        flusher.shutdown();
+        flushQuietly();
+        try {
+            if (journal != null) {
+                journal.close();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close download journal: {}", e.getMessage());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Failed to flush download journal: {}", e.getMessage());
+        }
+    }
+
+    //all transitions collected since the last flush share a single fsync
+    private synchronized void flush() throws IOException {
+        if (journal == null || pending.isEmpty()) {
+            return;
+        }
+        var out = new ByteArrayOutputStream();
+        for (var id : List.copyOf(pending.keySet())) {
+            var entry = pending.remove(id);
+            if (entry == null) {
+                continue;
+            }
+            out.write(mapper.writeValueAsBytes(entry));
+            out.write('\n');
+            apply(entry);
+            journalEntries++;
+        }
+        var buffer = ByteBuffer.wrap(out.toByteArray());
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+        journal.force(false);
+
+        if (journalEntries >= compactAfter) {
+            compact();
+        }
+    }
+
+    private void compact() throws IOException {
+        var temp = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (var channel = FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(mapper.writeValueAsBytes(state.values())));
+            channel.force(true);
+        }
+        Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.truncate(0);
+        journal.force(true);
+        log.debug("Compacted {} journal entries into snapshot of {} downloads", journalEntries, state.size());
+        journalEntries = 0;
+    }
+
+    private void readSnapshot() throws IOException {
+        if (Files.exists(snapshotPath)) {
+            mapper
+                .readValue(snapshotPath.toFile(), new TypeReference<List<DownloadInfo>>() {})
+                .forEach(info -> state.put(info.getId(), info));
+        }
+    }
+
+    //a crash can leave a torn last line, everything before it is still valid
+    private void replayJournal() throws IOException {
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        try (var reader = Files.newBufferedReader(journalPath)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    apply(mapper.readValue(line, JournalEntry.class));
+                    journalEntries++;
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable journal entry: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void apply(JournalEntry entry) {
+        if (entry.download() == null) {
+            state.remove(entry.id());
+        } else {
+            state.put(entry.id(), entry.download());
+        }
+    }
+
+    record JournalEntry(String id, DownloadInfo download) {
+    }
+}
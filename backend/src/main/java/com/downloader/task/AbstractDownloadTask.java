@@ -0,0 +1,233 @@
+package com.downloader.task;
+
+import com.downloader.entity.*;
+import com.downloader.service.*;
+import com.downloader.task.checksum.*;
+import com.downloader.task.estimate.*;
+import com.downloader.task.extract.StreamingExtractor;
+import java.io.*;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.apache.commons.io.FileUtils;
+
+import static com.downloader.config.AppConstants.*;
+
+@Slf4j
+public abstract class AbstractDownloadTask implements DownloadTask {
+
+    protected volatile boolean paused = false;
+
+    protected final DownloadInfo downloadInfo;
+    protected final DownloadSink downloadSink;
+    protected final BandwidthLimiter bandwidthLimiter;
+    protected final DownloadMetrics metrics;
+    protected final RetryEngine retryEngine;
+    protected final ProgressTracker progressTracker;
+
+    private static final long DEFAULT_FAST_TIME_CONSTANT_MS = 2000;
+    private static final long DEFAULT_SLOW_TIME_CONSTANT_MS = 10000;
+
+    protected AbstractDownloadTask(DownloadInfo downloadInfo, DownloadSink downloadSink, BandwidthLimiter bandwidthLimiter,
+                                   DownloadMetrics metrics, SpeedEstimator speedEstimator, RetryEngine retryEngine) {
+        this.downloadInfo = downloadInfo;
+        this.downloadSink = downloadSink;
+        this.bandwidthLimiter = bandwidthLimiter;
+        this.metrics = metrics;
+        this.retryEngine = retryEngine;
+        //built from the parameters alone, the tracker must not see the task before subclasses are initialized
+        this.progressTracker = new ProgressTracker(
+            downloadInfo,
+            () -> emitNextVersion(downloadInfo, downloadSink),
+            Objects.requireNonNullElseGet(
+                speedEstimator,
+                () -> new EwmaSpeedEstimator(DEFAULT_FAST_TIME_CONSTANT_MS, DEFAULT_SLOW_TIME_CONSTANT_MS)
+            ),
+            () -> bandwidthLimiter.getEffectiveLimit(downloadInfo.getId())
+        );
+    }
+
+    @Override
+    public void pause() {
+        paused = true;
+        downloadInfo.setStatus(DownloadStatus.PAUSED);
+        emitNextVersion();
+    }
+
+    @Override
+    public void cleanup() {
+        deleteFileIfExists();
+    }
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    //null when the download has no expected checksum
+    protected PrefixDigest createDigest() {
+        return Optional
+            .ofNullable(downloadInfo.getChecksum())
+            .map(Checksum::parse)
+            .map(PrefixDigest::new)
+            .orElse(null);
+    }
+
+    //null when the download is not extracted, otherwise one that already replayed the first size bytes of the file
+    protected StreamingExtractor startExtractor(File file, long size) throws IOException {
+        if (downloadInfo.getExtract() == null) {
+            return null;
+        }
+        var extractor = StreamingExtractor.start(downloadInfo, this::emitNextVersion);
+        try {
+            extractor.catchUp(file, size);
+        } catch (IOException e) {
+            extractor.close();
+            throw e;
+        }
+        return extractor;
+    }
+
+    //tasks whose bytes do not arrive in order extract the finished file in one pass
+    protected void extractCompleted(File file) throws IOException {
+        try (var extractor = startExtractor(file, file.length())) {
+            if (extractor != null) {
+                extractor.finish();
+            }
+        }
+    }
+
+    //hashes what an earlier attempt already wrote, the digest state itself cannot be persisted
+    protected void digestExisting(PrefixDigest digest, File file, long size) throws IOException {
+        if (digest == null || size <= 0) {
+            return;
+        }
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            digest.catchUp(channel, size);
+        }
+    }
+
+    protected void verifyChecksum(PrefixDigest digest, File file) throws IOException {
+        if (digest == null) {
+            return;
+        }
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            digest.verify(channel, channel.size());
+        }
+        log.info("Checksum verified: {}", downloadInfo.getFilename());
+    }
+
+    //If-Range only takes a strong etag, a weak one falls back to the modification date. A server that sees
+    //another version of the file answers 200 with the whole body instead of the range
+    protected void addIfRange(Request.Builder builder) {
+        addIfRange(builder, downloadInfo.getEtag(), downloadInfo.getLastModified());
+    }
+
+    protected void addIfRange(Request.Builder builder, String etag, String lastModified) {
+        Optional
+            .ofNullable(ifRange(etag, lastModified))
+            .ifPresent(value -> builder.header("If-Range", value));
+    }
+
+    //null when there is no validator to send
+    protected String ifRange(String etag, String lastModified) {
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    //servers that ignore If-Range still answer 206, the validators sent along tell whether it is the same file
+    protected boolean isSameEntity(Response response) {
+        return isSameEntity(response, downloadInfo.getEtag(), downloadInfo.getLastModified());
+    }
+
+    protected boolean isSameEntity(Response response, String etag, String lastModified) {
+        return isSameEntity(response.header("ETag"), response.header("Last-Modified"), etag, lastModified);
+    }
+
+    protected boolean isSameEntity(String responseEtag, String responseLastModified, String etag, String lastModified) {
+        if (responseEtag != null && etag != null) {
+            return responseEtag.equals(etag);
+        }
+        return responseLastModified == null
+            || lastModified == null
+            || responseLastModified.equals(lastModified);
+    }
+
+    //the validators of the version whose bytes are being written, later ranges are requested against them
+    protected void rememberValidators(String etag, String lastModified) {
+        downloadInfo.setEtag(etag);
+        downloadInfo.setLastModified(lastModified);
+    }
+
+    //a transient failure keeps what was written and puts the download back in the queue, the service starts it
+    //again at retryAt and it resumes from the part file like a paused one
+    protected boolean scheduleRetry(Exception e) {
+        if (retryEngine == null) {
+            return false;
+        }
+        progressTracker.sample();
+        var delay = retryEngine.nextDelay(downloadInfo, e, progressTracker.hasReceived());
+        if (delay.isEmpty()) {
+            return false;
+        }
+        log.warn("Retrying {} in {} ms (attempt {}): {}",
+            downloadInfo.getFilename(), delay.get().toMillis(), downloadInfo.getAttempts(), e.getMessage());
+        downloadInfo.setStatus(DownloadStatus.QUEUED);
+        downloadInfo.setSpeed(0);
+        downloadInfo.setTimeRemaining(0);
+        downloadInfo.setRetryAt(System.currentTimeMillis() + delay.get().toMillis());
+        downloadInfo.setError("Retrying in %ds: %s".formatted(delay.get().toSeconds(), e.getMessage()));
+        emitNextVersion();
+        return true;
+    }
+
+    //a read timeout is an InterruptedIOException too, but a failure rather than a cancel
+    protected boolean isCancellation(Exception e) {
+        return Thread.currentThread().isInterrupted()
+            || e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)
+            || String.valueOf(e.getMessage()).contains("interrupt");
+    }
+
+    protected File buildPartFile() {
+        return new File(FILEPART_FORMAT.formatted(downloadInfo.getFilePath()));
+    }
+
+    protected void setErrorDetails(Exception e) {
+        downloadInfo.setStatus(DownloadStatus.FAILED);
+        downloadInfo.setSpeed(0);
+        downloadInfo.setProgress(0);
+        downloadInfo.setTimeRemaining(0);
+        downloadInfo.setError(e.getMessage());
+    }
+
+    protected void emitNextVersion() {
+        emitNextVersion(downloadInfo, downloadSink);
+    }
+
+    private static void emitNextVersion(DownloadInfo downloadInfo, DownloadSink downloadSink) {
+        synchronized (downloadInfo) {
+            downloadInfo.setVersion(downloadInfo.getVersion() + 1);
+            downloadSink.publish(downloadInfo);
+        }
+    }
+
+    protected void deleteFileIfExists() {
+        deleteQuietly(buildPartFile());
+        deleteQuietly(new File(EXTRACTING_FORMAT.formatted(downloadInfo.getFilePath())));
+    }
+
+    protected void deleteQuietly(File file) {
+        try {
+            if (FileUtils.deleteQuietly(file)) {
+                log.info("Deleted file: {}", file.toPath());
+            }
+        } catch (Exception e) {
+            log.error("Failed to delete file: {}", file.toPath(), e);
+        }
+    }
+}
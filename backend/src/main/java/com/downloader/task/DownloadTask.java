@@ -4,4 +4,6 @@ public interface DownloadTask extends Runnable {
     void pause();
 
     void cleanup();
+
+    ProgressTracker getProgressTracker();
 }
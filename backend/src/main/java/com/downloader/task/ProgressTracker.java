@@ -0,0 +1,122 @@
+package com.downloader.task;
+
+import com.downloader.entity.*;
+import com.downloader.task.estimate.SpeedEstimator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+//readers only add to a counter, speed, progress and eta are derived when the sampler visits the tracker
+public class ProgressTracker {
+
+    private final DownloadInfo downloadInfo;
+    private final Runnable emitter;
+    private final SpeedEstimator speedEstimator;
+    private final LongSupplier speedCap;
+    private volatile LongSupplier tailSeconds = () -> 0;
+
+    private final LongAdder received = new LongAdder();
+    private volatile long baseSize;
+
+    //guarded by this, only touched while sampling
+    private long lastSampledSize;
+
+    public ProgressTracker(DownloadInfo downloadInfo, Runnable emitter, SpeedEstimator speedEstimator) {
+        this(downloadInfo, emitter, speedEstimator, () -> 0);
+    }
+
+    //speedCap is the effective bandwidth limit in bytes per second, 0 for none
+    public ProgressTracker(DownloadInfo downloadInfo, Runnable emitter, SpeedEstimator speedEstimator,
+                           LongSupplier speedCap) {
+        this.downloadInfo = downloadInfo;
+        this.emitter = emitter;
+        this.speedEstimator = speedEstimator;
+        this.speedCap = speedCap;
+        this.baseSize = downloadInfo.getDownloadedSize();
+        this.lastSampledSize = baseSize;
+    }
+
+    //lower bound of the eta that the overall speed does not show, set once the task knows it
+    public void setTailSeconds(LongSupplier tailSeconds) {
+        this.tailSeconds = tailSeconds;
+    }
+
+    public synchronized void reset(long downloadedSize) {
+        received.reset();
+        speedEstimator.reset();
+        baseSize = downloadedSize;
+        lastSampledSize = downloadedSize;
+        synchronized (downloadInfo) {
+            downloadInfo.setDownloadedSize(downloadedSize);
+            updateProgress(downloadedSize);
+        }
+    }
+
+    //the per-chunk cost of the read loop, segment workers of one task add concurrently
+    public void update(long bytesRead) {
+        received.add(bytesRead);
+    }
+
+    //whether any byte arrived since the last reset
+    public boolean hasReceived() {
+        return received.sum() > 0;
+    }
+
+    public long getDownloadedSize() {
+        return baseSize + received.sum();
+    }
+
+    public void sample() {
+        sample(System.currentTimeMillis());
+    }
+
+    //a failed or finished download keeps the numbers it ended with
+    public synchronized void sample(long currentTime) {
+        var status = downloadInfo.getStatus();
+        if (status != DownloadStatus.DOWNLOADING && status != DownloadStatus.PAUSED) {
+            return;
+        }
+        var currentSize = getDownloadedSize();
+        var changed = currentSize != lastSampledSize;
+        synchronized (downloadInfo) {
+            downloadInfo.setDownloadedSize(currentSize);
+            updateProgress(currentSize);
+            changed |= updateDownloadSpeedAndTimeRemaining(currentTime, currentSize);
+        }
+        lastSampledSize = currentSize;
+        if (changed) {
+            emitter.run();
+        }
+    }
+
+    private void updateProgress(long currentSize) {
+        if (downloadInfo.getTotalSize() == 0) {
+            downloadInfo.setProgress(0);
+        } else {
+            var percent = (double) currentSize / downloadInfo.getTotalSize() * 100;
+            downloadInfo.setProgress(Math.round(percent * 10) / 10.0);
+        }
+    }
+
+    private boolean updateDownloadSpeedAndTimeRemaining(long currentTime, long currentSize) {
+        var previousSpeed = downloadInfo.getSpeed();
+        speedEstimator.record(currentTime, currentSize);
+        downloadInfo.setSpeed(speedEstimator.getBytesPerSecond());
+        updateEstimatedTime(currentSize);
+        return previousSpeed != downloadInfo.getSpeed();
+    }
+
+    //the estimate cannot outrun the bandwidth cap, and segmented tasks cannot finish before their slowest
+    //connection that is too small to be split any further
+    private void updateEstimatedTime(long currentSize) {
+        var speed = downloadInfo.getSpeed();
+        var cap = speedCap.getAsLong();
+        if (cap > 0) {
+            speed = Math.min(speed, cap);
+        }
+        if (downloadInfo.getTotalSize() > 0 && speed > 0) {
+            long remainingBytes = downloadInfo.getTotalSize() - currentSize;
+            long timeRemainingSeconds = Math.max(remainingBytes / speed, tailSeconds.getAsLong());
+            downloadInfo.setTimeRemaining(timeRemainingSeconds);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.downloader.task.checksum;
+
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+public record Checksum(ChecksumAlgorithm algorithm, String hex) {
+
+    private static final Pattern HEX = Pattern.compile("[0-9a-fA-F]+");
+
+    //"sha256:<hex>", "sha256=<hex>" or a bare hex digest whose length tells the algorithm
+    public static Checksum parse(String value) {
+        var trimmed = value.trim();
+        var separator = trimmed.indexOf(':') >= 0 ? trimmed.indexOf(':') : trimmed.indexOf('=');
+        var hex = separator >= 0 ? trimmed.substring(separator + 1).trim() : trimmed;
+        if (!HEX.matcher(hex).matches()) {
+            throw new IllegalArgumentException("Invalid checksum: %s".formatted(value));
+        }
+        var algorithm = separator >= 0
+            ? ChecksumAlgorithm.byName(trimmed.substring(0, separator).trim())
+            : ChecksumAlgorithm.byHexLength(hex.length());
+        return algorithm
+            .map(found -> new Checksum(found, hex.toLowerCase(Locale.ROOT)))
+            .orElseThrow(() -> new IllegalArgumentException("Unsupported checksum: %s".formatted(value)));
+    }
+
+    public boolean matches(byte[] digest) {
+        return hex.equals(HexFormat.of().formatHex(digest));
+    }
+
+    @Override
+    public String toString() {
+        return "%s:%s".formatted(algorithm.getLabel(), hex);
+    }
+}
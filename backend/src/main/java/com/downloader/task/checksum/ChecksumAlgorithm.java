@@ -0,0 +1,46 @@
+package com.downloader.task.checksum;
+
+import java.security.*;
+import java.util.*;
+
+public enum ChecksumAlgorithm {
+    SHA256("sha256", "SHA-256", 64), SHA1("sha1", "SHA-1", 40), MD5("md5", "MD5", 32);
+
+    private final String label;
+    private final String jcaName;
+    private final int hexLength;
+
+    ChecksumAlgorithm(String label, String jcaName, int hexLength) {
+        this.label = label;
+        this.jcaName = jcaName;
+        this.hexLength = hexLength;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(jcaName);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //accepts sha256, sha-256, SHA256 and so on
+    public static Optional<ChecksumAlgorithm> byName(String name) {
+        var normalized = name.replace("-", "").toLowerCase(Locale.ROOT);
+        return Arrays
+            .stream(values())
+            .filter(algorithm -> algorithm.label.equals(normalized))
+            .findFirst();
+    }
+
+    public static Optional<ChecksumAlgorithm> byHexLength(int length) {
+        return Arrays
+            .stream(values())
+            .filter(algorithm -> algorithm.hexLength == length)
+            .findFirst();
+    }
+}
@@ -0,0 +1,13 @@
+package com.downloader.task.checksum;
+
+import java.io.*;
+
+public class ChecksumMismatchException extends IOException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public ChecksumMismatchException(String message) {
+        super(message);
+    }
+}
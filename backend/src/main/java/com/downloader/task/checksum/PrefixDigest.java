@@ -0,0 +1,84 @@
+package com.downloader.task.checksum;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+//digest of the file from its start, bytes written right at the digested offset are hashed as they pass by,
+//anything written ahead of it (resumed data, other segments) is read back once the gap before it is filled
+public class PrefixDigest {
+
+    private static final int CATCH_UP_CHUNK = 1024 * 1024;
+
+    private final Checksum expected;
+    private final MessageDigest digest;
+    private ByteBuffer readBuffer;
+    private long offset;
+
+    public PrefixDigest(Checksum expected) {
+        this.expected = expected;
+        this.digest = expected.algorithm().newDigest();
+    }
+
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    public synchronized void update(long position, byte[] bytes, int off, int len) {
+        var skip = offset - position;
+        if (skip < 0 || skip >= len) {
+            return;
+        }
+        digest.update(bytes, off + (int) skip, len - (int) skip);
+        offset = position + len;
+    }
+
+    //consumes the remaining bytes of the buffer
+    public synchronized void update(long position, ByteBuffer bytes) {
+        var len = bytes.remaining();
+        var skip = offset - position;
+        if (skip < 0 || skip >= len) {
+            return;
+        }
+        bytes.position(bytes.position() + (int) skip);
+        digest.update(bytes);
+        offset = position + len;
+    }
+
+    //reads the file from the digested offset up to the limit, the lock is let go between chunks
+    public void catchUp(FileChannel channel, long limit) throws IOException {
+        while (true) {
+            synchronized (this) {
+                if (offset >= limit) {
+                    return;
+                }
+                if (readBuffer == null) {
+                    readBuffer = ByteBuffer.allocate(CATCH_UP_CHUNK);
+                }
+                readBuffer.clear().limit((int) Math.min(CATCH_UP_CHUNK, limit - offset));
+                var read = channel.read(readBuffer, offset);
+                if (read <= 0) {
+                    throw new IOException("Unexpected end of file at %d while verifying".formatted(offset));
+                }
+                readBuffer.flip();
+                digest.update(readBuffer);
+                offset += read;
+            }
+        }
+    }
+
+    //digests the rest of the file and compares, the digest cannot be updated afterwards
+    public void verify(FileChannel channel, long size) throws IOException {
+        catchUp(channel, size);
+        synchronized (this) {
+            var actual = digest.digest();
+            if (!expected.matches(actual)) {
+                throw new ChecksumMismatchException("Checksum mismatch: expected %s %s but was %s".formatted(
+                    expected.algorithm().getLabel(), expected.hex(), HexFormat.of().formatHex(actual)
+                ));
+            }
+        }
+    }
+}
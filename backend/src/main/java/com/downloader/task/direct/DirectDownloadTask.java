@@ -1,61 +1,43 @@
 package com.downloader.task.direct;
 
 import com.downloader.entity.*;
-import com.downloader.service.DownloadSink;
-import com.downloader.task.DownloadTask;
+import com.downloader.service.*;
+import com.downloader.task.AbstractDownloadTask;
+import com.downloader.task.checksum.PrefixDigest;
+import com.downloader.task.estimate.SpeedEstimator;
+import com.downloader.task.extract.StreamingExtractor;
+import com.downloader.task.io.*;
+import com.downloader.task.range.ContentRange;
+import com.downloader.task.retry.HttpStatusException;
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Objects;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
-import okio.Okio;
 import org.apache.commons.io.FileUtils;
 
-import static com.downloader.config.AppConstants.FILEPART_FORMAT;
-
 @Slf4j
-public class DirectDownloadTask implements DownloadTask {
+public class DirectDownloadTask extends AbstractDownloadTask {
 
     private static final int BUFFER_SIZE = 8192;
-    private static final int MAX_SPEED_SAMPLES = 10;
-    private static final long PROGRESS_UPDATE_INTERVAL_MS = 400;
-    private static final long SPEED_CALCULATION_INTERVAL_MS = 1000;
-
-    private volatile boolean paused = false;
 
-    private final DownloadInfo downloadInfo;
     private final OkHttpClient httpClient;
-    private final DownloadSink downloadSink;
-
-    private final AtomicLong lastProgressUpdateTime;
-    private final AtomicLong lastSpeedCalculationTime;
-    private final AtomicLong lastDownloadedSize;
-    private final AtomicLong speedSum;
-    private final AtomicLong speedSampleCount;
+    private final IoMode ioMode;
+    private final DirectBufferPool bufferPool;
+    private final DiskWriteScheduler diskWriteScheduler;
 
     @Builder
-    public DirectDownloadTask(DownloadInfo downloadInfo, OkHttpClient httpClient, DownloadSink downloadSink) {
-        this.downloadInfo = downloadInfo;
+    public DirectDownloadTask(DownloadInfo downloadInfo, OkHttpClient httpClient, DownloadSink downloadSink,
+                              BandwidthLimiter bandwidthLimiter, DownloadMetrics metrics, SpeedEstimator speedEstimator,
+                              RetryEngine retryEngine, IoMode ioMode, DirectBufferPool bufferPool,
+                              DiskWriteScheduler diskWriteScheduler) {
+        super(downloadInfo, downloadSink, bandwidthLimiter, metrics, speedEstimator, retryEngine);
         this.httpClient = httpClient;
-        this.downloadSink = downloadSink;
-        this.lastProgressUpdateTime = new AtomicLong(System.currentTimeMillis());
-        this.lastSpeedCalculationTime = new AtomicLong(System.currentTimeMillis());
-        this.lastDownloadedSize = new AtomicLong(downloadInfo.getDownloadedSize());
-        this.speedSum = new AtomicLong(0);
-        this.speedSampleCount = new AtomicLong(0);
-    }
-
-    @Override
-    public void pause() {
-        paused = true;
-        downloadInfo.setStatus(DownloadStatus.PAUSED);
-        emitNextVersion();
-    }
-
-    @Override
-    public void cleanup() {
-        deleteFileIfExists();
+        this.ioMode = Objects.requireNonNullElse(ioMode, IoMode.STREAM);
+        this.bufferPool = bufferPool;
+        this.diskWriteScheduler = diskWriteScheduler;
     }
 
     @Override
@@ -65,121 +47,156 @@ public class DirectDownloadTask implements DownloadTask {
             log.info("Download started: {}", downloadInfo.getFilename());
             var downloadFile = buildPartFile();
             FileUtils.touch(downloadFile);
-            var finalOutputFile = new File(downloadInfo.getFilePath());
-            long existingFileSize = downloadFile.length();
-            downloadInfo.setDownloadedSize(existingFileSize);
-            lastDownloadedSize.set(downloadInfo.getDownloadedSize());
-
+            long existingFileSize = resumeOffset(downloadFile);
             try (var response = httpClient.newCall(buildGetRequest(existingFileSize)).execute()) {
-                if (!response.isSuccessful()) {
-                    throw new IOException("Server returned HTTP response code: %s".formatted(response.code()));
-                }
-                var body = response.body();
-                if (body == null || body.contentLength() <= 0) {
-                    throw new IOException("No content is returned from server: %s".formatted(downloadInfo.getFilename()));
+                if (existingFileSize == 0 || !response.isSuccessful() || resumesAt(response, existingFileSize)) {
+                    transfer(response, downloadFile, existingFileSize);
+                    return;
                 }
-                long contentLength = body.contentLength();
-                downloadInfo.setTotalSize(existingFileSize + contentLength);
-                emitNextVersion();
-
-                try (var sink = Okio.buffer(Okio.appendingSink(downloadFile)); var inputStream = body.byteStream()) {
-                    var buffer = new byte[BUFFER_SIZE];
-                    int bytesRead;
-                    while ((bytesRead = inputStream.read(buffer)) != -1) {
-                        if (paused) {
-                            sink.flush();
-                            log.info("Download paused: {}", downloadInfo.getFilename());
-                            return;
-                        }
-                        if (Thread.currentThread().isInterrupted()) {
-                            sink.flush();
-                            log.info("Download cancelled: {}", downloadInfo.getFilename());
-                            return;
-                        }
-                        sink.write(buffer, 0, bytesRead);
-
-                        downloadInfo.setDownloadedSize(downloadInfo.getDownloadedSize() + bytesRead);
-
-                        updateProgress();
-                        updateDownloadSpeedAndTimeRemaining();
-                        emitProgressWithInterval();
-                    }
-                    sink.flush();
-                    Files.move(downloadFile.toPath(), finalOutputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    downloadInfo.setStatus(DownloadStatus.COMPLETED);
-                    emitNextVersion();
-                    log.info("Download completed: {}", downloadInfo.getFilename());
+                log.info("Resume of {} not accepted (HTTP {}), starting over", downloadInfo.getFilename(), response.code());
+                truncate(downloadFile);
+                //a 200 already carries the whole file
+                if (response.code() == 200) {
+                    transfer(response, downloadFile, 0);
+                    return;
                 }
             }
+            //a 206 of another version is of no use
+            try (var response = httpClient.newCall(buildGetRequest(0)).execute()) {
+                transfer(response, downloadFile, 0);
+            }
 
         } catch (Exception e) {
             log.error(e.getMessage());
-            if (!(e instanceof InterruptedIOException) && !e.getMessage().contains("interrupt")) {
-                setErrorDetails(e);
-                emitNextVersion();
+            if (isCancellation(e)) {
+                deleteFileIfExists();
+                return;
+            }
+            if (scheduleRetry(e)) {
+                return;
             }
+            setErrorDetails(e);
+            emitNextVersion();
             deleteFileIfExists();
         }
     }
 
-    private void updateProgress() {
-        if (downloadInfo.getTotalSize() == 0) {
-            downloadInfo.setProgress(0);
-        } else {
-            var percent = (double) downloadInfo.getDownloadedSize() / downloadInfo.getTotalSize() * 100;
-            downloadInfo.setProgress(Math.round(percent * 10) / 10.0);
+    private void transfer(Response response, File downloadFile, long existingFileSize) throws IOException {
+        progressTracker.reset(existingFileSize);
+        var digest = createDigest();
+        if (!response.isSuccessful()) {
+            throw HttpStatusException.of(response);
         }
-    }
+        var body = response.body();
+        if (body == null || body.contentLength() <= 0) {
+            throw new IOException("No content is returned from server: %s".formatted(downloadInfo.getFilename()));
+        }
+        long contentLength = body.contentLength();
+        if (existingFileSize == 0) {
+            rememberValidators(response.header("ETag"), response.header("Last-Modified"));
+        }
+        downloadInfo.setTotalSize(existingFileSize + contentLength);
+        emitNextVersion();
 
-    private void emitProgressWithInterval() {
-        var currentTime = System.currentTimeMillis();
-        if (currentTime - lastProgressUpdateTime.get() >= PROGRESS_UPDATE_INTERVAL_MS) {
-            emitNextVersion();
-            lastProgressUpdateTime.set(currentTime);
+        digestExisting(digest, downloadFile, existingFileSize);
+        try (var extractor = startExtractor(downloadFile, existingFileSize)) {
+            var completed = ioMode == IoMode.CHANNEL
+                ? copyWithChannel(body, downloadFile, existingFileSize, digest, extractor)
+                : copyWithStream(body, downloadFile, existingFileSize, digest, extractor);
+            if (!completed) {
+                return;
+            }
+            progressTracker.sample();
+            verifyChecksum(digest, downloadFile);
+            if (extractor != null) {
+                extractor.finish();
+            }
         }
+        Files.move(downloadFile.toPath(), Path.of(downloadInfo.getFilePath()), StandardCopyOption.REPLACE_EXISTING);
+        downloadInfo.setStatus(DownloadStatus.COMPLETED);
+        emitNextVersion();
+        log.info("Download completed: {}", downloadInfo.getFilename());
     }
 
-    private void updateDownloadSpeedAndTimeRemaining() {
-        var currentTime = System.currentTimeMillis();
-        var timeDelta = currentTime - lastSpeedCalculationTime.get();
-        if (timeDelta >= SPEED_CALCULATION_INTERVAL_MS) {
-            var currentSize = downloadInfo.getDownloadedSize();
-            var lastSize = lastDownloadedSize.get();
+    //the writer also flushes what it holds when the copy fails, a retry resumes from every byte that was counted
+    private boolean copyWithStream(ResponseBody body, File downloadFile, long position, PrefixDigest digest,
+                                   StreamingExtractor extractor) throws IOException {
+        try (var writer = diskWriteScheduler.open(downloadFile, position, downloadInfo.getTotalSize());
+             var inputStream = body.byteStream()) {
+            var buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                bandwidthLimiter.acquire(downloadInfo.getId(), bytesRead);
+                if (paused) {
+                    log.info("Download paused: {}", downloadInfo.getFilename());
+                    return false;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    log.info("Download cancelled: {}", downloadInfo.getFilename());
+                    return false;
+                }
+                writer.write(buffer, 0, bytesRead);
+                if (digest != null) {
+                    digest.update(position, buffer, 0, bytesRead);
+                }
+                if (extractor != null) {
+                    extractor.feed(buffer, 0, bytesRead);
+                }
+                position += bytesRead;
 
-            //calculate speed
-            long bytesDelta = currentSize - lastSize;
-            long speedBytesPerSecond = (bytesDelta * 1000) / timeDelta;
-            //calculate average speed and update
-            updateSpeedWithRollingAverage(speedBytesPerSecond);
+                metrics.recordBytes(bytesRead);
+                progressTracker.update(bytesRead);
+            }
+            return true;
+        }
+    }
 
-            // Calculate estimated time remaining
-            updateEstimatedTime(downloadInfo.getSpeed(), currentSize);
+    private boolean copyWithChannel(ResponseBody body, File downloadFile, long existingFileSize, PrefixDigest digest,
+                                    StreamingExtractor extractor) throws IOException {
+        try (var writer = diskWriteScheduler.open(downloadFile, existingFileSize, downloadInfo.getTotalSize());
+             var source = body.source()) {
+            var completed = new ChannelCopier(bufferPool, digest, extractor).copy(
+                source,
+                writer,
+                () -> paused || Thread.currentThread().isInterrupted(),
+                bytes -> {
+                    bandwidthLimiter.acquire(downloadInfo.getId(), bytes);
+                    metrics.recordBytes(bytes);
+                    progressTracker.update(bytes);
+                }
+            );
+            if (!completed) {
+                log.info("Download {}: {}", paused ? "paused" : "cancelled", downloadInfo.getFilename());
+            }
+            return completed;
+        }
+    }
 
-            lastDownloadedSize.set(currentSize);
-            lastSpeedCalculationTime.set(currentTime);
+    //a closed writer leaves the part file as long as its data, one that never got closed (a crash) leaves it
+    //preallocated and with the last partial block missing, only whole blocks below the journaled size are safe then
+    private long resumeOffset(File downloadFile) {
+        var length = downloadFile.length();
+        if (length > downloadInfo.getDownloadedSize()) {
+            return diskWriteScheduler.safeOffset(downloadInfo.getDownloadedSize());
         }
+        return length;
     }
 
-    private void updateEstimatedTime(long speedBytesPerSecond, long currentSize) {
-        if (downloadInfo.getTotalSize() > 0 && speedBytesPerSecond > 0) {
-            long remainingBytes = downloadInfo.getTotalSize() - currentSize;
-            long timeRemainingSeconds = remainingBytes / speedBytesPerSecond;
-            downloadInfo.setTimeRemaining(timeRemainingSeconds);
+    //only a 206 of the same version starting exactly at the offset continues the part file, a 200 means
+    //the server ignored the range or the file changed and appending it would corrupt the result
+    private boolean resumesAt(Response response, long offset) {
+        if (response.code() != 206 || !isSameEntity(response)) {
+            return false;
         }
+        return ContentRange
+            .parse(response.header("Content-Range"))
+            .map(range -> range.first() == offset)
+            .orElse(true);
     }
 
-    private void updateSpeedWithRollingAverage(long currentSpeedBytesPerSecond) {
-        if (speedSampleCount.get() < MAX_SPEED_SAMPLES) {
-            long averageSpeed = speedSum.addAndGet(currentSpeedBytesPerSecond) / speedSampleCount.incrementAndGet();
-            downloadInfo.setSpeed(averageSpeed);
-        } else {
-            long currentSum = speedSum.get();
-            long oldAverage = currentSum / MAX_SPEED_SAMPLES;
-            long newSum = currentSum - oldAverage + currentSpeedBytesPerSecond;
-            speedSum.set(newSum);
-
-            long rollingAverage = newSum / MAX_SPEED_SAMPLES;
-            downloadInfo.setSpeed(rollingAverage);
+    private void truncate(File downloadFile) throws IOException {
+        try (var channel = FileChannel.open(downloadFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(0);
         }
     }
 
@@ -191,41 +208,9 @@ public class DirectDownloadTask implements DownloadTask {
 
         if (existingFileSize > 0) {
             builder.addHeader("Range", "bytes=%d-".formatted(existingFileSize));
+            addIfRange(builder);
         }
 
         return builder.build();
     }
-
-    @SneakyThrows
-    private File buildPartFile() {
-        return new File(FILEPART_FORMAT.formatted(downloadInfo.getFilePath()));
-    }
-
-    private void setErrorDetails(Exception e) {
-        downloadInfo.setStatus(DownloadStatus.FAILED);
-        downloadInfo.setSpeed(0);
-        downloadInfo.setProgress(0);
-        downloadInfo.setTimeRemaining(0);
-        downloadInfo.setError(e.getMessage());
-    }
-
-    private void emitNextVersion() {
-        downloadInfo.setVersion(downloadInfo.getVersion() + 1);
-        downloadSink.publish(snapshot());
-    }
-
-    private DownloadInfo snapshot() {
-        return downloadInfo.toBuilder().build();
-    }
-
-    private void deleteFileIfExists() {
-        var partfile = buildPartFile();
-        try {
-            if (FileUtils.deleteQuietly(partfile)) {
-                log.info("Deleted file: {}", partfile.toPath());
-            }
-        } catch (Exception e) {
-            log.error("Failed to delete file: {}", partfile.toPath(), e);
-        }
-    }
 }
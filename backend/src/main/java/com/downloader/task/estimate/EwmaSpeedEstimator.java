@@ -0,0 +1,72 @@
+package com.downloader.task.estimate;
+
+import java.util.Arrays;
+
+//time-weighted moving averages at several time constants, the slowest one is reported unless a faster one has
+//moved away from it by more than the threshold, then throughput changed and the fastest diverging one is followed
+public class EwmaSpeedEstimator implements SpeedEstimator {
+
+    private static final double DIVERGENCE_THRESHOLD = 0.3;
+
+    private final long[] timeConstantsMillis;
+    private final double[] averages;
+
+    private boolean primed;
+    private boolean seeded;
+    private long lastTime;
+    private long lastSize;
+
+    //time constants from the fastest to the slowest
+    public EwmaSpeedEstimator(long... timeConstantsMillis) {
+        if (timeConstantsMillis.length == 0) {
+            throw new IllegalArgumentException("At least one time constant is required");
+        }
+        this.timeConstantsMillis = Arrays
+            .stream(timeConstantsMillis)
+            .map(timeConstant -> Math.max(timeConstant, 1))
+            .sorted()
+            .toArray();
+        this.averages = new double[timeConstantsMillis.length];
+    }
+
+    @Override
+    public synchronized void record(long timeMillis, long downloadedSize) {
+        if (!primed) {
+            primed = true;
+            lastTime = timeMillis;
+            lastSize = downloadedSize;
+            return;
+        }
+        var elapsed = timeMillis - lastTime;
+        if (elapsed <= 0) {
+            return;
+        }
+        var rate = (downloadedSize - lastSize) * 1000.0 / elapsed;
+        for (int i = 0; i < averages.length; i++) {
+            //the first measured rate seeds every average instead of climbing up from zero
+            var alpha = seeded ? 1 - Math.exp(-(double) elapsed / timeConstantsMillis[i]) : 1;
+            averages[i] += alpha * (rate - averages[i]);
+        }
+        seeded = true;
+        lastTime = timeMillis;
+        lastSize = downloadedSize;
+    }
+
+    @Override
+    public synchronized long getBytesPerSecond() {
+        var slowest = averages[averages.length - 1];
+        for (int i = 0; i < averages.length - 1; i++) {
+            if (Math.abs(averages[i] - slowest) > slowest * DIVERGENCE_THRESHOLD) {
+                return Math.round(averages[i]);
+            }
+        }
+        return Math.round(slowest);
+    }
+
+    @Override
+    public synchronized void reset() {
+        primed = false;
+        seeded = false;
+        Arrays.fill(averages, 0);
+    }
+}
@@ -0,0 +1,24 @@
+package com.downloader.task.estimate;
+
+import com.downloader.config.DownloaderProperties;
+import com.downloader.entity.SpeedEstimatorType;
+import java.util.Objects;
+
+//turns (time, downloaded size) samples into a speed, fed by the progress sampler only
+public interface SpeedEstimator {
+
+    void record(long timeMillis, long downloadedSize);
+
+    long getBytesPerSecond();
+
+    //forgets the history, the next sample is the new origin
+    void reset();
+
+    static SpeedEstimator of(DownloaderProperties.Progress progress) {
+        var window = progress.window().toMillis();
+        return switch (Objects.requireNonNullElse(progress.estimator(), SpeedEstimatorType.EWMA)) {
+            case EWMA -> new EwmaSpeedEstimator(window / 5, window);
+            case WINDOW -> new WindowSpeedEstimator(window, progress.interval().toMillis());
+        };
+    }
+}
@@ -0,0 +1,43 @@
+package com.downloader.task.estimate;
+
+//bytes moved between the oldest and the newest sample of a ring buffer covering the window
+public class WindowSpeedEstimator implements SpeedEstimator {
+
+    private final long[] times;
+    private final long[] sizes;
+
+    private int head;
+    private int count;
+
+    public WindowSpeedEstimator(long windowMillis, long sampleIntervalMillis) {
+        var capacity = (int) Math.ceil((double) Math.max(windowMillis, 1) / Math.max(sampleIntervalMillis, 1)) + 1;
+        this.times = new long[Math.max(capacity, 2)];
+        this.sizes = new long[times.length];
+    }
+
+    @Override
+    public synchronized void record(long timeMillis, long downloadedSize) {
+        head = (head + 1) % times.length;
+        times[head] = timeMillis;
+        sizes[head] = downloadedSize;
+        count = Math.min(count + 1, times.length);
+    }
+
+    @Override
+    public synchronized long getBytesPerSecond() {
+        if (count < 2) {
+            return 0;
+        }
+        var oldest = (head - count + 1 + times.length) % times.length;
+        var elapsed = times[head] - times[oldest];
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return (sizes[head] - sizes[oldest]) * 1000 / elapsed;
+    }
+
+    @Override
+    public synchronized void reset() {
+        count = 0;
+    }
+}
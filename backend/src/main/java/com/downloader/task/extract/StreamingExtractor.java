@@ -0,0 +1,339 @@
+package com.downloader.task.extract;
+
+import com.downloader.entity.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.*;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.*;
+import org.apache.commons.compress.archivers.tar.*;
+import org.apache.commons.compress.archivers.zip.*;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.FileUtils;
+
+import static com.downloader.config.AppConstants.EXTRACTING_FORMAT;
+
+//unpacks the archive of a download from its bytes as they are written, on a virtual thread fed through a fixed set
+//of buffers so that a slow extraction holds back the download instead of piling up memory. Entries go to a staging
+//directory next to the file that is moved into place once the download completed and verified, under a name of its
+//own when the target is taken. The decompressor state cannot be persisted, a resumed download starts a new extractor
+//that replays the part file
+@Slf4j
+public class StreamingExtractor implements AutoCloseable {
+
+    private static final int CHUNKS = 16;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int READ_CHUNK = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 500;
+    private static final Chunk END = new Chunk(new byte[0], 0);
+
+    private final DownloadInfo downloadInfo;
+    private final ArchiveFormat format;
+    private final Path staging;
+    private final Path target;
+    private final Runnable onProgress;
+    //buffers go round from the feeding side to the worker and back, nothing is allocated per chunk
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(CHUNKS);
+    private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(CHUNKS + 1);
+
+    private Thread worker;
+    private volatile Exception failure;
+    private boolean finished;
+
+    //only touched by the feeding side, small writes are gathered into whole buffers
+    private byte[] filling;
+    private int fillingLength;
+
+    //only touched by the worker
+    private long extractedSize;
+    private int extractedFiles;
+    private long lastProgress;
+
+    private StreamingExtractor(DownloadInfo downloadInfo, Runnable onProgress) {
+        this.downloadInfo = downloadInfo;
+        this.format = downloadInfo.getExtract();
+        this.staging = Path.of(EXTRACTING_FORMAT.formatted(downloadInfo.getFilePath())).toAbsolutePath().normalize();
+        this.target = Path.of(downloadInfo.getOutputPath(), format.baseName(downloadInfo.getFilename()));
+        this.onProgress = onProgress;
+        for (int i = 0; i < CHUNKS; i++) {
+            free.add(new byte[CHUNK_SIZE]);
+        }
+    }
+
+    //whatever an earlier attempt extracted is discarded, onProgress is called from the worker now and then
+    public static StreamingExtractor start(DownloadInfo downloadInfo, Runnable onProgress)
+        throws IOException {
+        var extractor = new StreamingExtractor(downloadInfo, onProgress);
+        FileUtils.deleteDirectory(extractor.staging.toFile());
+        Files.createDirectories(extractor.staging);
+        extractor.report();
+        extractor.worker = Thread
+            .ofVirtual()
+            .name("extract-" + downloadInfo.getId())
+            .start(extractor::extract);
+        return extractor;
+    }
+
+    public void feed(byte[] bytes, int off, int len) throws IOException {
+        while (len > 0) {
+            var count = Math.min(len, fillable());
+            System.arraycopy(bytes, off, filling, fillingLength, count);
+            filled(count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    //leaves the buffer's position where it was
+    public void feed(ByteBuffer buffer) throws IOException {
+        var source = buffer.duplicate();
+        while (source.hasRemaining()) {
+            var count = Math.min(source.remaining(), fillable());
+            source.get(filling, fillingLength, count);
+            filled(count);
+        }
+    }
+
+    //replays the first size bytes of the file, what an earlier attempt already wrote or the whole finished download
+    public void catchUp(File file, long size) throws IOException {
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            var buffer = ByteBuffer.allocate(READ_CHUNK);
+            long position = 0;
+            while (position < size) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), size - position));
+                var read = channel.read(buffer, position);
+                if (read <= 0) {
+                    throw new IOException("Unexpected end of %s at %d while extracting".formatted(file, position));
+                }
+                feed(buffer.flip());
+                position += read;
+            }
+        }
+    }
+
+    //waits for the rest of the archive to be extracted, then moves the files into place. An existing directory is
+    //never replaced or merged into, the files go to "<name> (1)", "<name> (2)" and so on instead
+    public void finish() throws IOException {
+        if (fillingLength > 0) {
+            handOver();
+        }
+        filled.add(END);
+        awaitWorker();
+        checkFailure();
+        var placed = target;
+        for (int copy = 1; ; copy++) {
+            try {
+                Files.move(staging, placed);
+                break;
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                placed = target.resolveSibling("%s (%d)".formatted(target.getFileName(), copy));
+            }
+        }
+        finished = true;
+        log.info("Extracted {} files of {} to {}", extractedFiles, downloadInfo.getFilename(), placed);
+    }
+
+    //a paused, cancelled or failed download drops its partial extraction, a resumed one starts it over anyway
+    @Override
+    public void close() {
+        if (finished) {
+            return;
+        }
+        worker.interrupt();
+        awaitWorker();
+        FileUtils.deleteQuietly(staging.toFile());
+    }
+
+    //room left in the buffer being filled, waits for the worker to give one back when there is none
+    private int fillable() throws IOException {
+        checkFailure();
+        if (filling == null) {
+            try {
+                while ((filling = free.poll(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS)) == null) {
+                    checkFailure();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Extraction of %s interrupted".formatted(downloadInfo.getFilename()));
+            }
+            fillingLength = 0;
+        }
+        return filling.length - fillingLength;
+    }
+
+    private void filled(int count) {
+        fillingLength += count;
+        if (fillingLength == filling.length) {
+            handOver();
+        }
+    }
+
+    //there are never more buffers than the queue holds, handing one over does not block
+    private void handOver() {
+        filled.add(new Chunk(filling, fillingLength));
+        filling = null;
+        fillingLength = 0;
+    }
+
+    //the worker's error is not chained, a broken archive is not a transient failure however it ended
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Extraction of %s failed: %s".formatted(downloadInfo.getFilename(), failure.getMessage()));
+        }
+    }
+
+    //joins even when the calling thread was interrupted, a cancel must not delete files the worker still writes
+    private void awaitWorker() {
+        var interrupted = false;
+        while (worker.isAlive()) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void extract() {
+        var input = new ChunkInputStream();
+        try (var archive = open(input)) {
+            ArchiveEntry entry;
+            while ((entry = archive.getNextEntry()) != null) {
+                extract(archive, entry);
+            }
+            //what follows the last entry, the zip central directory or the tar padding, is read and dropped
+            input.drain();
+            report();
+        } catch (Exception e) {
+            failure = e;
+        }
+    }
+
+    private ArchiveInputStream<? extends ArchiveEntry> open(InputStream input) throws IOException {
+        return switch (format) {
+            case TAR_GZ -> new TarArchiveInputStream(new GzipCompressorInputStream(input, true));
+            //stored entries followed by a data descriptor can only be read while streaming when this is allowed
+            case ZIP -> new ZipArchiveInputStream(input, StandardCharsets.UTF_8.name(), true, true);
+            case AUTO -> throw new IllegalStateException("Archive format of %s is not resolved".formatted(
+                downloadInfo.getFilename()));
+        };
+    }
+
+    //entries may only land inside the staging directory, links and special files are skipped rather than created. The
+    //unix mode of a zip entry is only in the central directory at the end, a zip symlink read while streaming is not
+    //recognised and becomes a regular file holding the link's target
+    private void extract(ArchiveInputStream<? extends ArchiveEntry> archive, ArchiveEntry entry) throws IOException {
+        var path = staging.resolve(entry.getName()).normalize();
+        if (!path.startsWith(staging)) {
+            throw new IOException("Entry %s points outside of the extraction directory".formatted(entry.getName()));
+        }
+        if (entry.isDirectory()) {
+            Files.createDirectories(path);
+            return;
+        }
+        if (entry instanceof TarArchiveEntry tar && !isRegular(tar)
+            || entry instanceof ZipArchiveEntry zip && zip.isUnixSymlink()) {
+            log.debug("Skipping {} of {}, not a regular file", entry.getName(), downloadInfo.getFilename());
+            return;
+        }
+        if (!archive.canReadEntryData(entry)) {
+            throw new IOException("Entry %s cannot be extracted while streaming".formatted(entry.getName()));
+        }
+        Files.createDirectories(path.getParent());
+        Files.copy(archive, path, StandardCopyOption.REPLACE_EXISTING);
+        if (entry.getLastModifiedDate() != null) {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(entry.getLastModifiedDate().getTime()));
+        }
+        extractedFiles++;
+    }
+
+    //isFile() holds for every tar entry that is not a directory, links and devices included
+    private static boolean isRegular(TarArchiveEntry entry) {
+        return entry.isFile()
+            && !entry.isSymbolicLink()
+            && !entry.isLink()
+            && !entry.isCharacterDevice()
+            && !entry.isBlockDevice()
+            && !entry.isFIFO();
+    }
+
+    private void consumed(int count) {
+        extractedSize += count;
+        var now = System.currentTimeMillis();
+        if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+            lastProgress = now;
+            report();
+            onProgress.run();
+        }
+    }
+
+    private void report() {
+        synchronized (downloadInfo) {
+            downloadInfo.setExtractedSize(extractedSize);
+            downloadInfo.setExtractedFiles(extractedFiles);
+        }
+    }
+
+    private record Chunk(byte[] bytes, int length) {
+    }
+
+    //the fed chunks as one stream, the archive readers pull from it on the worker
+    private class ChunkInputStream extends InputStream {
+
+        private Chunk current = END;
+        private int position;
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+            var one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == current.length()) {
+                if (ended) {
+                    return -1;
+                }
+                if (current != END) {
+                    free.add(current.bytes());
+                }
+                current = take();
+                position = 0;
+                ended = current == END;
+            }
+            var count = Math.min(len, current.length() - position);
+            System.arraycopy(current.bytes(), position, bytes, off, count);
+            position += count;
+            consumed(count);
+            return count;
+        }
+
+        private void drain() throws IOException {
+            var skipped = new byte[8192];
+            while (read(skipped, 0, skipped.length) != -1) {
+                //nothing to keep
+            }
+        }
+
+        private Chunk take() throws IOException {
+            try {
+                return filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Extraction stopped");
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.downloader.task.io;
+
+import com.downloader.service.DownloadMetrics;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+//coalesces the writes of one file into blocks aligned to file offsets, so interleaved downloads on a volume issue few
+//large writes instead of many small ones. Whole blocks in the caller's buffer go to the file without a copy
+public class BlockWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final DirectBufferPool bufferPool;
+    private final VolumeBudget volume;
+    private final DownloadMetrics metrics;
+    private final int blockSize;
+    private final ByteBuffer block;
+
+    //accepted bytes end at position, the ones below flushed are in the file
+    private long position;
+    private long flushed;
+    private long unforced;
+
+    public BlockWriter(FileChannel channel, long position, int blockSize, DirectBufferPool bufferPool,
+                       VolumeBudget volume, DownloadMetrics metrics) {
+        this.channel = channel;
+        this.bufferPool = bufferPool;
+        this.volume = volume;
+        this.metrics = metrics;
+        this.position = position;
+        this.flushed = position;
+        this.block = bufferPool.acquire(blockSize);
+        this.blockSize = block.capacity();
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        write(ByteBuffer.wrap(bytes, off, len));
+    }
+
+    //consumes the buffer
+    public void write(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            if (block.position() == 0 && position % blockSize == 0 && source.remaining() >= blockSize) {
+                var whole = source.remaining() / blockSize * blockSize;
+                writeOut(source.slice(source.position(), whole));
+                source.position(source.position() + whole);
+                position += whole;
+                continue;
+            }
+            var boundary = (position / blockSize + 1) * blockSize;
+            var count = (int) Math.min(boundary - position, source.remaining());
+            block.put(block.position(), source, source.position(), count);
+            block.position(block.position() + count);
+            source.position(source.position() + count);
+            position += count;
+            if (position == boundary) {
+                flush();
+            }
+        }
+    }
+
+    public void flush() throws IOException {
+        if (block.position() > 0) {
+            writeOut(block.flip());
+            block.clear();
+        }
+    }
+
+    //whatever was accepted is written and forced, and the file is cut back to it so that a preallocated part file
+    //still tells the resume offset by its length
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            flush();
+            force();
+            if (channel.size() > flushed) {
+                channel.truncate(flushed);
+            }
+        } finally {
+            volume.forced(unforced);
+            bufferPool.release(block);
+        }
+    }
+
+    private void writeOut(ByteBuffer buffer) throws IOException {
+        var started = System.nanoTime();
+        var count = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            flushed += channel.write(buffer, flushed);
+        }
+        metrics.recordDiskWrite(System.nanoTime() - started);
+        unforced += count;
+        if (volume.written(count)) {
+            force();
+        }
+    }
+
+    private void force() throws IOException {
+        if (unforced == 0) {
+            return;
+        }
+        channel.force(false);
+        volume.forced(unforced);
+        unforced = 0;
+    }
+}
@@ -0,0 +1,87 @@
+package com.downloader.task.io;
+
+import com.downloader.task.checksum.PrefixDigest;
+import com.downloader.task.extract.StreamingExtractor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.*;
+import okio.BufferedSource;
+
+//copies a response body into a block writer through pooled direct buffers, the buffer grows while fills complete
+//quickly and shrinks when they are slow so progress and pause checks stay responsive at any speed
+public class ChannelCopier {
+
+    private static final long FAST_FILL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long SLOW_FILL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final DirectBufferPool bufferPool;
+    private final PrefixDigest digest;
+    private final StreamingExtractor extractor;
+
+    //the digest and the extractor are optional, written chunks are fed to them straight from the buffer
+    public ChannelCopier(DirectBufferPool bufferPool, PrefixDigest digest, StreamingExtractor extractor) {
+        this.bufferPool = bufferPool;
+        this.digest = digest;
+        this.extractor = extractor;
+    }
+
+    //returns false when stopped before the end of the body
+    public boolean copy(BufferedSource source, BlockWriter writer, BooleanSupplier stopped,
+                        IntConsumer onChunk) throws IOException {
+        var size = bufferPool.getMinSize();
+        var buffer = bufferPool.acquire(size);
+        try {
+            while (true) {
+                if (stopped.getAsBoolean()) {
+                    return false;
+                }
+                var started = System.nanoTime();
+                var eof = fill(source, buffer, started);
+                buffer.flip();
+                var chunk = buffer.remaining();
+                var chunkPosition = writer.getPosition();
+                writer.write(buffer);
+                if (digest != null) {
+                    digest.update(chunkPosition, buffer.rewind());
+                }
+                if (extractor != null) {
+                    extractor.feed(buffer.rewind());
+                }
+                if (chunk > 0) {
+                    onChunk.accept(chunk);
+                }
+                if (eof) {
+                    return true;
+                }
+
+                var elapsed = System.nanoTime() - started;
+                var next = elapsed < FAST_FILL_NANOS && buffer.capacity() == chunk
+                    ? Math.min(size << 1, bufferPool.getMaxSize())
+                    : elapsed > SLOW_FILL_NANOS ? Math.max(size >> 1, bufferPool.getMinSize()) : size;
+                if (next != size) {
+                    bufferPool.release(buffer);
+                    size = next;
+                    buffer = bufferPool.acquire(size);
+                } else {
+                    buffer.clear();
+                }
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    //reads until the buffer is full, the body ends or the fill takes too long
+    private boolean fill(BufferedSource source, ByteBuffer buffer, long started) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer) == -1) {
+                return true;
+            }
+            if (System.nanoTime() - started > SLOW_FILL_NANOS) {
+                return false;
+            }
+        }
+        return false;
+    }
+}
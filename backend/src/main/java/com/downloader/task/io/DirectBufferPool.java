@@ -0,0 +1,64 @@
+package com.downloader.task.io;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+
+//direct buffers in power-of-two size classes, reused across downloads to keep them off the heap and out of the GC
+public class DirectBufferPool {
+
+    private static final int MAX_POOLED_PER_CLASS = 32;
+
+    private final int minSize;
+    private final int maxSize;
+    private final List<Queue<ByteBuffer>> classes;
+
+    public DirectBufferPool(int minSize, int maxSize) {
+        this.minSize = Integer.highestOneBit(Math.max(minSize, 4096));
+        this.maxSize = Math.max(Integer.highestOneBit(maxSize), this.minSize);
+        var count = Integer.numberOfTrailingZeros(this.maxSize) - Integer.numberOfTrailingZeros(this.minSize) + 1;
+        this.classes = Stream
+            .<Queue<ByteBuffer>>generate(ConcurrentLinkedQueue::new)
+            .limit(count)
+            .toList();
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public ByteBuffer acquire(int size) {
+        var index = classIndex(size);
+        var buffer = classes.get(index).poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(minSize << index);
+        }
+        return buffer.clear();
+    }
+
+    public void release(ByteBuffer buffer) {
+        var index = classIndex(buffer.capacity());
+        if ((minSize << index) == buffer.capacity() && classes.get(index).size() < MAX_POOLED_PER_CLASS) {
+            classes.get(index).offer(buffer);
+        }
+    }
+
+    //buffers waiting to be reused, across all size classes
+    int pooled() {
+        return classes
+            .stream()
+            .mapToInt(Queue::size)
+            .sum();
+    }
+
+    private int classIndex(int size) {
+        var clamped = Math.clamp(size, minSize, maxSize);
+        var rounded = Integer.highestOneBit(clamped);
+        return Integer.numberOfTrailingZeros(rounded) - Integer.numberOfTrailingZeros(minSize);
+    }
+}
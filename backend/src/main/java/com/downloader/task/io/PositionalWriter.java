@@ -0,0 +1,59 @@
+package com.downloader.task.io;
+
+import com.downloader.service.DownloadMetrics;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+//writes of one file at any offset, as the workers of a segmented download issue them concurrently. They are not
+//coalesced, but each one is charged to the volume's budget and the file is forced once the volume goes over it
+public class PositionalWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final VolumeBudget volume;
+    private final DownloadMetrics metrics;
+    private final AtomicLong unforced = new AtomicLong();
+
+    public PositionalWriter(FileChannel channel, VolumeBudget volume, DownloadMetrics metrics) {
+        this.channel = channel;
+        this.volume = volume;
+        this.metrics = metrics;
+    }
+
+    //for reading back what was written, writes go through the writer so that they are charged
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    //consumes the buffer
+    public void write(ByteBuffer buffer, long position) throws IOException {
+        var started = System.nanoTime();
+        var count = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        metrics.recordDiskWrite(System.nanoTime() - started);
+        unforced.addAndGet(count);
+        if (volume.written(count)) {
+            force();
+        }
+    }
+
+    //bytes another worker writes meanwhile may be forced as well, they stay charged until the next force
+    public void force() throws IOException {
+        var count = unforced.getAndSet(0);
+        try {
+            channel.force(false);
+        } finally {
+            volume.forced(count);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            force();
+        }
+    }
+}
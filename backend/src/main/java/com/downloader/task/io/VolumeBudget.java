@@ -0,0 +1,27 @@
+package com.downloader.task.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//bytes written to one volume that the page cache may still hold, writers force their file once it goes over the limit
+public class VolumeBudget {
+
+    private final long maxDirty;
+    private final AtomicLong dirty = new AtomicLong();
+
+    public VolumeBudget(long maxDirty) {
+        this.maxDirty = maxDirty;
+    }
+
+    //true when the writer should force what it has written
+    boolean written(long bytes) {
+        return dirty.addAndGet(bytes) > maxDirty && maxDirty > 0;
+    }
+
+    void forced(long bytes) {
+        dirty.addAndGet(-bytes);
+    }
+
+    public long getDirty() {
+        return dirty.get();
+    }
+}
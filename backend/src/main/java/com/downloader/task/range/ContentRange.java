@@ -0,0 +1,22 @@
+package com.downloader.task.range;
+
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+//parsed "bytes <first>-<last>/<total>" header, total is -1 when the server sent "*"
+public record ContentRange(long first, long last, long total) {
+
+    private static final Pattern PATTERN = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+
+    public static Optional<ContentRange> parse(String header) {
+        if (header == null) {
+            return Optional.empty();
+        }
+        var matcher = PATTERN.matcher(header.trim());
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        var total = matcher.group(3).equals("*") ? -1 : Long.parseLong(matcher.group(3));
+        return Optional.of(new ContentRange(Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)), total));
+    }
+}
@@ -0,0 +1,91 @@
+package com.downloader.task.range;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+//unclaimed ranges are served first, after that an idle worker steals the second half of the range
+//expected to finish last judging by the throughput its connection has delivered so far
+public class RangeScheduler {
+
+    private final List<Segment> segments;
+    private final long minSplitSize;
+    private final LongSupplier clock;
+
+    public RangeScheduler(List<Segment> segments, long minSplitSize) {
+        this(segments, minSplitSize, System::nanoTime);
+    }
+
+    public RangeScheduler(List<Segment> segments, long minSplitSize, LongSupplier clock) {
+        this.segments = new ArrayList<>(segments);
+        this.minSplitSize = Math.max(minSplitSize, 1);
+        this.clock = clock;
+    }
+
+    public synchronized Optional<Segment> next() {
+        var now = clock.getAsLong();
+        return segments
+            .stream()
+            .filter(segment -> !segment.isClaimed() && !segment.isComplete())
+            .findFirst()
+            .or(() -> steal(now))
+            .map(segment -> {
+                segment.claim(now);
+                return segment;
+            });
+    }
+
+    public synchronized void release(Segment segment) {
+        segment.release();
+    }
+
+    public synchronized List<Segment> segments() {
+        return List.copyOf(segments);
+    }
+
+    public synchronized boolean isComplete() {
+        return segments.stream().allMatch(Segment::isComplete);
+    }
+
+    //seconds the slowest running segment still needs when it is too small to be split onto another connection,
+    //the download cannot finish earlier however fast the others are
+    public synchronized long unsplittableSecondsRemaining() {
+        var now = clock.getAsLong();
+        return Math.round(segments
+            .stream()
+            .filter(segment -> segment.isClaimed() && !segment.isComplete() && segment.remaining() < minSplitSize * 2)
+            .filter(segment -> segment.throughput(now) > 0)
+            .mapToDouble(segment -> segment.remaining() / segment.throughput(now))
+            .max()
+            .orElse(0));
+    }
+
+    private Optional<Segment> steal(long now) {
+        var averageThroughput = averageThroughput(now);
+
+        return segments
+            .stream()
+            .filter(segment -> segment.isClaimed() && segment.remaining() >= minSplitSize * 2)
+            .max(Comparator.comparingDouble(segment -> estimatedSecondsRemaining(segment, now, averageThroughput)))
+            .map(victim -> victim.splitTail(minSplitSize))
+            .map(tail -> {
+                segments.add(tail);
+                return tail;
+            });
+    }
+
+    private double averageThroughput(long now) {
+        return segments
+            .stream()
+            .filter(Segment::isClaimed)
+            .mapToDouble(segment -> segment.throughput(now))
+            .filter(throughput -> throughput > 0)
+            .average()
+            .orElse(1);
+    }
+
+    //connections that have not delivered a measurable sample yet are assumed to run at the average
+    private double estimatedSecondsRemaining(Segment segment, long now, double averageThroughput) {
+        var throughput = segment.throughput(now);
+        return segment.remaining() / (throughput > 0 ? throughput : averageThroughput);
+    }
+}
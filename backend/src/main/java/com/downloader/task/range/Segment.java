@@ -0,0 +1,82 @@
+package com.downloader.task.range;
+
+import lombok.Getter;
+
+//byte range [start, end) written sequentially by one worker, the end shrinks when its tail is stolen
+@Getter
+public class Segment {
+
+    private final long start;
+    private volatile long end;
+    private volatile long position;
+
+    private long reserved;
+    private boolean claimed;
+    private long claimedAt;
+    private long claimedPosition;
+
+    public Segment(long start, long end, long position) {
+        this.start = start;
+        this.end = end;
+        this.position = position;
+        this.reserved = position;
+    }
+
+    //detached copy of the current offsets
+    public Segment snapshot() {
+        return new Segment(start, end, position);
+    }
+
+    public long remaining() {
+        return Math.max(end - position, 0);
+    }
+
+    public boolean isComplete() {
+        return position >= end;
+    }
+
+    public synchronized int reserve(int bytes) {
+        var allowed = (int) Math.min(bytes, end - position);
+        reserved = position + Math.max(allowed, 0);
+        return allowed;
+    }
+
+    public synchronized void advance(long bytes) {
+        position += bytes;
+        reserved = position;
+    }
+
+    synchronized void claim(long now) {
+        claimed = true;
+        claimedAt = now;
+        claimedPosition = position;
+    }
+
+    synchronized void release() {
+        claimed = false;
+    }
+
+    synchronized boolean isClaimed() {
+        return claimed;
+    }
+
+    //bytes per second observed since the current worker claimed the segment
+    synchronized double throughput(long now) {
+        var elapsedNanos = now - claimedAt;
+        if (!claimed || elapsedNanos <= 0) {
+            return 0;
+        }
+        return (position - claimedPosition) * 1e9 / elapsedNanos;
+    }
+
+    synchronized Segment splitTail(long minSplitSize) {
+        var from = Math.max(position, reserved);
+        var splitAt = from + (end - from) / 2;
+        if (end - splitAt < minSplitSize) {
+            return null;
+        }
+        var tail = new Segment(splitAt, end, splitAt);
+        end = splitAt;
+        return tail;
+    }
+}
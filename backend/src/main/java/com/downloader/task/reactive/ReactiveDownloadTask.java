@@ -0,0 +1,290 @@
+package com.downloader.task.reactive;
+
+import com.downloader.entity.*;
+import com.downloader.service.*;
+import com.downloader.task.AbstractDownloadTask;
+import com.downloader.task.checksum.PrefixDigest;
+import com.downloader.task.estimate.SpeedEstimator;
+import com.downloader.task.extract.StreamingExtractor;
+import com.downloader.task.range.ContentRange;
+import com.downloader.task.retry.HttpStatusException;
+import io.netty.handler.timeout.ReadTimeoutException;
+import java.io.*;
+import java.net.SocketTimeoutException;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.springframework.core.io.buffer.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.*;
+import reactor.core.Exceptions;
+import reactor.core.publisher.*;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.PrematureCloseException;
+
+//single stream download on the WebClient: body buffers go to the part file through an AsynchronousFileChannel and
+//the next one is only requested once the previous write completed, so a slow disk holds back the socket read instead
+//of piling up memory. Progress, metrics, the digest and the extractor follow the written buffers
+@Slf4j
+public class ReactiveDownloadTask extends AbstractDownloadTask {
+
+    private final WebClient webClient;
+    private final Sinks.Empty<Void> stop = Sinks.empty();
+    private volatile boolean writing;
+    private volatile PrefixDigest digest;
+    private volatile StreamingExtractor extractor;
+
+    @Builder
+    public ReactiveDownloadTask(DownloadInfo downloadInfo, WebClient webClient, DownloadSink downloadSink,
+                                BandwidthLimiter bandwidthLimiter, DownloadMetrics metrics, SpeedEstimator speedEstimator,
+                                RetryEngine retryEngine) {
+        super(downloadInfo, downloadSink, bandwidthLimiter, metrics, speedEstimator, retryEngine);
+        this.webClient = webClient;
+    }
+
+    @Override
+    public void pause() {
+        super.pause();
+        stop.tryEmitEmpty();
+    }
+
+    //blocks the calling thread until the transfer ends, the service runs every task on a virtual thread of its own.
+    //Only the socket reads and file writes are non-blocking
+    @Override
+    public void run() {
+        downloadInfo.setStatus(DownloadStatus.DOWNLOADING);
+        try {
+            log.info("Download started: {}", downloadInfo.getFilename());
+            var downloadFile = buildPartFile();
+            FileUtils.touch(downloadFile);
+            var finalOutputFile = new File(downloadInfo.getFilePath());
+            boolean completed;
+            try (var channel = AsynchronousFileChannel.open(downloadFile.toPath(), StandardOpenOption.WRITE)) {
+                completed = Boolean.TRUE.equals(transfer(channel, downloadFile, downloadFile.length()).block());
+            } finally {
+                //a write still in flight when the transfer stopped must not leave bytes beyond the counted ones
+                if (writing) {
+                    truncate(downloadFile, progressTracker.getDownloadedSize());
+                }
+            }
+            if (!completed) {
+                log.info("Download {}: {}", paused ? "paused" : "cancelled", downloadInfo.getFilename());
+                return;
+            }
+            progressTracker.sample();
+            verifyChecksum(digest, downloadFile);
+            if (extractor != null) {
+                extractor.finish();
+            }
+            Files.move(downloadFile.toPath(), finalOutputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            downloadInfo.setStatus(DownloadStatus.COMPLETED);
+            emitNextVersion();
+            log.info("Download completed: {}", downloadInfo.getFilename());
+
+        } catch (Exception e) {
+            var cause = unwrap(e);
+            log.error(cause.getMessage());
+            if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (isCancellation(cause)) {
+                deleteFileIfExists();
+                return;
+            }
+            if (scheduleRetry(cause)) {
+                return;
+            }
+            setErrorDetails(cause);
+            emitNextVersion();
+            deleteFileIfExists();
+        } finally {
+            if (extractor != null) {
+                extractor.close();
+            }
+        }
+    }
+
+    //emits whether the whole body was written, false when it stopped for a pause
+    private Mono<Boolean> transfer(AsynchronousFileChannel channel, File downloadFile, long offset) {
+        return webClient
+            .get()
+            .uri(downloadInfo.getUrl())
+            .headers(headers -> addRange(headers, offset))
+            .exchangeToMono(response -> {
+                if (!response.statusCode().is2xxSuccessful()) {
+                    var retryAfter = response.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+                    return response
+                        .releaseBody()
+                        .then(Mono.error(HttpStatusException.of(response.statusCode().value(), retryAfter)));
+                }
+                if (offset > 0 && !resumesAt(response, offset)) {
+                    log.info("Resume of {} not accepted (HTTP {}), starting over",
+                        downloadInfo.getFilename(), response.statusCode().value());
+                    //a 206 of another version is of no use, a 200 already carries the whole file
+                    if (response.statusCode().value() != 200) {
+                        return response
+                            .releaseBody()
+                            .then(Mono.defer(() -> transfer(channel, downloadFile, 0)));
+                    }
+                    return write(response, channel, downloadFile, 0);
+                }
+                return write(response, channel, downloadFile, offset);
+            });
+    }
+
+    private Mono<Boolean> write(ClientResponse response, AsynchronousFileChannel channel, File downloadFile,
+                                long offset) {
+        var contentLength = response.headers().contentLength().orElse(-1);
+        if (contentLength <= 0) {
+            return response
+                .releaseBody()
+                .then(Mono.error(new IOException("No content is returned from server: %s".formatted(downloadInfo.getFilename()))));
+        }
+        try {
+            if (offset == 0) {
+                channel.truncate(0);
+                rememberValidators(header(response, HttpHeaders.ETAG), header(response, HttpHeaders.LAST_MODIFIED));
+            }
+            progressTracker.reset(offset);
+            writing = true;
+            downloadInfo.setTotalSize(offset + contentLength);
+            emitNextVersion();
+            digest = createDigest();
+            digestExisting(digest, downloadFile, offset);
+            extractor = startExtractor(downloadFile, offset);
+        } catch (IOException e) {
+            return response.releaseBody().then(Mono.error(e));
+        }
+        var position = new AtomicLong(offset);
+        var body = response
+            .bodyToFlux(DataBuffer.class)
+            .takeUntilOther(stop.asMono())
+            .concatMap(this::throttle);
+        return DataBufferUtils
+            .write(body, channel, offset)
+            .concatMap(this::extract)
+            .doOnNext(buffer -> {
+                try {
+                    written(buffer, position);
+                } finally {
+                    DataBufferUtils.release(buffer);
+                }
+            })
+            .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+            .onErrorMap(this::toIoException)
+            .then(Mono.defer(() -> {
+                if (paused) {
+                    return Mono.just(false);
+                }
+                return position.get() < downloadInfo.getTotalSize()
+                    ? Mono.error(new EOFException("Connection closed at %d of %d bytes".formatted(position.get(), downloadInfo.getTotalSize())))
+                    : Mono.just(true);
+            }));
+    }
+
+    //the bandwidth share is taken without blocking, the buffer is held back for as long as the limiter asks
+    private Mono<DataBuffer> throttle(DataBuffer buffer) {
+        var wait = bandwidthLimiter.reserve(downloadInfo.getId(), buffer.readableByteCount());
+        return wait > 0
+            ? Mono.just(buffer).delayElement(Duration.ofNanos(wait))
+            : Mono.just(buffer);
+    }
+
+    //the extractor blocks while its worker is behind, it is fed off the file channel's threads and the next buffer
+    //is only written once it took this one
+    private Mono<DataBuffer> extract(DataBuffer buffer) {
+        var extractor = this.extractor;
+        if (extractor == null) {
+            return Mono.just(buffer);
+        }
+        return Mono
+            .fromCallable(() -> {
+                try (var iterator = buffer.readableByteBuffers()) {
+                    while (iterator.hasNext()) {
+                        extractor.feed(iterator.next());
+                    }
+                }
+                return buffer;
+            })
+            .doOnError(e -> DataBufferUtils.release(buffer))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private void written(DataBuffer buffer, AtomicLong position) {
+        var digest = this.digest;
+        var bytes = buffer.readableByteCount();
+        if (digest != null) {
+            try (var iterator = buffer.readableByteBuffers()) {
+                var at = position.get();
+                while (iterator.hasNext()) {
+                    var byteBuffer = iterator.next();
+                    var length = byteBuffer.remaining();
+                    digest.update(at, byteBuffer);
+                    at += length;
+                }
+            }
+        }
+        position.addAndGet(bytes);
+        metrics.recordBytes(bytes);
+        progressTracker.update(bytes);
+    }
+
+    //only a 206 of the same version starting exactly at the offset continues the part file
+    private boolean resumesAt(ClientResponse response, long offset) {
+        if (response.statusCode().value() != 206
+            || !isSameEntity(header(response, HttpHeaders.ETAG), header(response, HttpHeaders.LAST_MODIFIED),
+                downloadInfo.getEtag(), downloadInfo.getLastModified())) {
+            return false;
+        }
+        return ContentRange
+            .parse(header(response, HttpHeaders.CONTENT_RANGE))
+            .map(range -> range.first() == offset)
+            .orElse(true);
+    }
+
+    private void addRange(HttpHeaders headers, long offset) {
+        if (offset <= 0) {
+            return;
+        }
+        headers.set(HttpHeaders.RANGE, "bytes=%d-".formatted(offset));
+        var ifRange = ifRange(downloadInfo.getEtag(), downloadInfo.getLastModified());
+        if (ifRange != null) {
+            headers.set(HttpHeaders.IF_RANGE, ifRange);
+        }
+    }
+
+    private static String header(ClientResponse response, String name) {
+        return response.headers().asHttpHeaders().getFirst(name);
+    }
+
+    //netty's own exceptions mapped to the ones the retry engine classifies
+    private Throwable toIoException(Throwable e) {
+        if (e instanceof ReadTimeoutException) {
+            return new SocketTimeoutException("Read timed out");
+        }
+        if (e instanceof PrematureCloseException) {
+            return new EOFException(e.getMessage());
+        }
+        return e;
+    }
+
+    private static Exception unwrap(Exception e) {
+        var cause = Exceptions.unwrap(e);
+        if (cause instanceof WebClientRequestException && cause.getCause() instanceof Exception inner) {
+            cause = inner;
+        }
+        return cause instanceof Exception exception ? exception : e;
+    }
+
+    private void truncate(File downloadFile, long size) throws IOException {
+        try (var channel = FileChannel.open(downloadFile.toPath(), StandardOpenOption.WRITE)) {
+            if (channel.size() > size) {
+                channel.truncate(size);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.downloader.task.retry;
+
+import java.io.EOFException;
+import java.net.*;
+import java.util.Optional;
+
+//transient failures that are worth another attempt, anything not listed fails the download right away
+public enum ErrorClass {
+    RESET, TIMEOUT, SERVER_ERROR, RATE_LIMITED;
+
+    public static Optional<ErrorClass> of(Throwable error) {
+        for (var cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpStatusException status) {
+                return ofStatus(status.getCode());
+            }
+            if (cause instanceof SocketTimeoutException) {
+                return Optional.of(TIMEOUT);
+            }
+            //refused and reset connections as well as bodies cut short ("unexpected end of stream")
+            if (cause instanceof SocketException || cause instanceof EOFException || cause instanceof ProtocolException) {
+                return Optional.of(RESET);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<ErrorClass> ofStatus(int code) {
+        if (code == 429) {
+            return Optional.of(RATE_LIMITED);
+        }
+        if (code == 408) {
+            return Optional.of(TIMEOUT);
+        }
+        return code >= 500 ? Optional.of(SERVER_ERROR) : Optional.empty();
+    }
+}
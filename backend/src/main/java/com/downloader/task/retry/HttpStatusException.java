@@ -0,0 +1,51 @@
+package com.downloader.task.retry;
+
+import java.io.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import lombok.Getter;
+import okhttp3.Response;
+import org.apache.commons.lang3.math.NumberUtils;
+
+//an unsuccessful response, with the delay a 429 or 503 asked for in Retry-After (zero when none was sent)
+@Getter
+public class HttpStatusException extends IOException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final int code;
+    private final Duration retryAfter;
+
+    public HttpStatusException(int code, Duration retryAfter) {
+        super("Server returned HTTP response code: %s".formatted(code));
+        this.code = code;
+        this.retryAfter = retryAfter;
+    }
+
+    public static HttpStatusException of(Response response) {
+        return of(response.code(), response.header("Retry-After"));
+    }
+
+    public static HttpStatusException of(int code, String retryAfter) {
+        return new HttpStatusException(code, parseRetryAfter(retryAfter));
+    }
+
+    //either delay-seconds or an HTTP-date
+    static Duration parseRetryAfter(String header) {
+        if (header == null || header.isBlank()) {
+            return Duration.ZERO;
+        }
+        var value = header.trim();
+        if (NumberUtils.isDigits(value)) {
+            return Duration.ofSeconds(Long.parseLong(value));
+        }
+        try {
+            var at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            var delay = Duration.between(Instant.now(), at);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeException e) {
+            return Duration.ZERO;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.downloader.task.segmented;
+
+import com.downloader.task.checksum.ChecksumAlgorithm;
+import com.downloader.task.range.Segment;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+//sha-256 of every fixed size block of the part file that is fully on disk, a resumed download checks its blocks
+//against them and fetches the ones that no longer match again instead of trusting or discarding the whole file
+class BlockHashes {
+
+    private static final int READ_CHUNK = 1024 * 1024;
+
+    private final long blockSize;
+    private final long totalSize;
+    private final byte[][] hashes;
+    //blocks being written from their first byte in order are hashed as the bytes pass by
+    private final Map<Integer, BlockDigest> streaming = new ConcurrentHashMap<>();
+
+    BlockHashes(long blockSize, long totalSize) {
+        this.blockSize = Math.max(blockSize, 1);
+        this.totalSize = totalSize;
+        this.hashes = new byte[(int) ((totalSize + this.blockSize - 1) / this.blockSize)][];
+    }
+
+    void update(long position, byte[] bytes, int off, int len) {
+        var end = position + len;
+        for (var index = (int) (position / blockSize); index < hashes.length && blockStart(index) < end; index++) {
+            var blockStart = blockStart(index);
+            var from = Math.max(position, blockStart);
+            var to = Math.min(end, blockEnd(index));
+            var digest = from == blockStart
+                ? streaming.computeIfAbsent(index, i -> new BlockDigest(blockStart))
+                : streaming.get(index);
+            if (digest != null) {
+                digest.update(from, bytes, off + (int) (from - position), (int) (to - from));
+            }
+        }
+    }
+
+    //hashes every block the given segment state shows as written, the data must already be forced to disk
+    synchronized void complete(FileChannel channel, List<Segment> segments) throws IOException {
+        for (int index = 0; index < hashes.length; index++) {
+            if (hashes[index] != null || !isWritten(segments, blockStart(index), blockEnd(index))) {
+                continue;
+            }
+            var start = blockStart(index);
+            var digest = Optional
+                .ofNullable(streaming.remove(index))
+                .orElseGet(() -> new BlockDigest(start));
+            hashes[index] = digest.finish(channel, blockEnd(index));
+        }
+    }
+
+    //checks the recorded blocks in parallel through memory mapped reads, mismatching ones are forgotten and returned
+    synchronized List<Integer> verify(FileChannel channel) {
+        var invalid = IntStream
+            .range(0, hashes.length)
+            .parallel()
+            .filter(index -> hashes[index] != null && !matches(channel, index))
+            .boxed()
+            .toList();
+        invalid.forEach(index -> hashes[index] = null);
+        return invalid;
+    }
+
+    //hash of a block fetched once more, for comparing it with the disk and recording it when it is written
+    static byte[] hash(byte[] bytes) {
+        return ChecksumAlgorithm.SHA256.newDigest().digest(bytes);
+    }
+
+    //the block as it is on disk now, whatever was recorded for it
+    byte[] hashOnDisk(FileChannel channel, int index) throws IOException {
+        var digest = ChecksumAlgorithm.SHA256.newDigest();
+        var start = blockStart(index);
+        digest.update(channel.map(FileChannel.MapMode.READ_ONLY, start, blockEnd(index) - start));
+        return digest.digest();
+    }
+
+    synchronized void record(int index, byte[] hash) {
+        hashes[index] = hash;
+    }
+
+    int count() {
+        return hashes.length;
+    }
+
+    long blockStart(int index) {
+        return index * blockSize;
+    }
+
+    long blockEnd(int index) {
+        return Math.min(blockStart(index) + blockSize, totalSize);
+    }
+
+    //"<blockSize>" then "<index> <hex>" for every hashed block
+    synchronized List<String> describe() {
+        var lines = new ArrayList<String>();
+        lines.add(Long.toString(blockSize));
+        for (int index = 0; index < hashes.length; index++) {
+            if (hashes[index] != null) {
+                lines.add("%d %s".formatted(index, HexFormat.of().formatHex(hashes[index])));
+            }
+        }
+        return lines;
+    }
+
+    //hashes recorded with another block size are of no use and dropped
+    static BlockHashes load(List<String> lines, long blockSize, long totalSize) {
+        var blocks = new BlockHashes(blockSize, totalSize);
+        if (lines.isEmpty() || Long.parseLong(lines.getFirst().trim()) != blocks.blockSize) {
+            return blocks;
+        }
+        lines
+            .stream()
+            .skip(1)
+            .filter(line -> !line.isBlank())
+            .map(line -> line.trim().split(" "))
+            .forEach(parts -> blocks.hashes[Integer.parseInt(parts[0])] = HexFormat.of().parseHex(parts[1]));
+        return blocks;
+    }
+
+    //true when no segment still has unwritten bytes inside the range
+    private static boolean isWritten(List<Segment> segments, long from, long to) {
+        return segments
+            .stream()
+            .filter(segment -> segment.getStart() < to && segment.getEnd() > from)
+            .allMatch(segment -> segment.getPosition() >= Math.min(segment.getEnd(), to));
+    }
+
+    private boolean matches(FileChannel channel, int index) {
+        try {
+            return MessageDigest.isEqual(hashOnDisk(channel, index), hashes[index]);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static class BlockDigest {
+
+        private final MessageDigest digest = ChecksumAlgorithm.SHA256.newDigest();
+        private long offset;
+
+        private BlockDigest(long offset) {
+            this.offset = offset;
+        }
+
+        private synchronized void update(long position, byte[] bytes, int off, int len) {
+            if (position == offset) {
+                digest.update(bytes, off, len);
+                offset += len;
+            }
+        }
+
+        //reads back whatever was not seen in order
+        private synchronized byte[] finish(FileChannel channel, long end) throws IOException {
+            var buffer = ByteBuffer.allocate((int) Math.min(READ_CHUNK, Math.max(end - offset, 0)));
+            while (offset < end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - offset));
+                var read = channel.read(buffer, offset);
+                if (read <= 0) {
+                    throw new IOException("Unexpected end of file at %d while hashing".formatted(offset));
+                }
+                buffer.flip();
+                digest.update(buffer);
+                offset += read;
+            }
+            return digest.digest();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.downloader.task.segmented;
+
+import java.io.*;
+import lombok.Getter;
+
+//the server answered a range with another version of the file, the written segments cannot be combined with it
+@Getter
+class RemoteFileChangedException extends IOException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final long contentLength;
+    private final String etag;
+    private final String lastModified;
+
+    RemoteFileChangedException(String message, long contentLength, String etag, String lastModified) {
+        super(message);
+        this.contentLength = contentLength;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+}
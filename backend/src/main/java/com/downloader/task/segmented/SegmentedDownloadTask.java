@@ -0,0 +1,586 @@
+package com.downloader.task.segmented;
+
+import com.downloader.entity.*;
+import com.downloader.service.*;
+import com.downloader.task.AbstractDownloadTask;
+import com.downloader.task.checksum.*;
+import com.downloader.task.estimate.SpeedEstimator;
+import com.downloader.task.io.PositionalWriter;
+import com.downloader.task.range.*;
+import com.downloader.task.retry.HttpStatusException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+
+@Slf4j
+public class SegmentedDownloadTask extends AbstractDownloadTask {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String SEGMENTS_FORMAT = "%s.segments";
+    private static final String BLOCKS_FORMAT = "%s.blocks";
+    private static final long CHECKPOINT_INTERVAL_MS = 5000;
+
+    private final OkHttpClient httpClient;
+    private final ExecutorService executor;
+    private final DiskWriteScheduler diskWriteScheduler;
+    private final int connections;
+    private final long minSegmentSize;
+    private final long minSplitSize;
+    private final long blockSize;
+    private final int maxSourceFailures;
+    private final double slowSourceRatio;
+
+    private volatile PrefixDigest digest;
+    private volatile BlockHashes blocks;
+    private volatile SourcePool sources;
+    private volatile PositionalWriter writer;
+    private boolean restarted;
+
+    @Builder
+    public SegmentedDownloadTask(DownloadInfo downloadInfo, OkHttpClient httpClient, DownloadSink downloadSink,
+                                 BandwidthLimiter bandwidthLimiter, DownloadMetrics metrics,
+                                 SpeedEstimator speedEstimator, RetryEngine retryEngine, ExecutorService executor,
+                                 DiskWriteScheduler diskWriteScheduler, int connections,
+                                 long minSegmentSize, long minSplitSize, long blockSize, int maxSourceFailures,
+                                 double slowSourceRatio) {
+        super(downloadInfo, downloadSink, bandwidthLimiter, metrics, speedEstimator, retryEngine);
+        this.httpClient = httpClient;
+        this.executor = executor;
+        this.diskWriteScheduler = diskWriteScheduler;
+        this.connections = connections;
+        this.minSegmentSize = minSegmentSize;
+        this.minSplitSize = minSplitSize;
+        this.blockSize = blockSize;
+        this.maxSourceFailures = maxSourceFailures;
+        this.slowSourceRatio = slowSourceRatio;
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        deleteQuietly(buildSegmentsFile());
+        deleteQuietly(buildBlocksFile());
+    }
+
+    @Override
+    public void run() {
+        downloadInfo.setStatus(DownloadStatus.DOWNLOADING);
+        var workers = new ArrayList<Future<?>>();
+        try {
+            var partFile = buildPartFile();
+            var loaded = loadSegments(partFile);
+            var segments = loaded.orElseGet(this::splitSegments);
+            blocks = loaded.isPresent() ? loadBlocks() : new BlockHashes(blockSize, downloadInfo.getTotalSize());
+            digest = createDigest();
+            sources = new SourcePool(downloadInfo, maxSourceFailures, slowSourceRatio, minSplitSize);
+            try (var partWriter = diskWriteScheduler.openPositional(partFile, downloadInfo.getTotalSize())) {
+                writer = partWriter;
+                var channel = partWriter.getChannel();
+                if (loaded.isPresent()) {
+                    segments = refetchInvalidBlocks(channel, segments);
+                }
+                log.info("Download started: {} ({} segments)", downloadInfo.getFilename(), segments.size());
+                progressTracker.reset(downloadedBytes(segments));
+                emitNextVersion();
+
+                var scheduler = new RangeScheduler(segments, minSplitSize);
+                progressTracker.setTailSeconds(scheduler::unsplittableSecondsRemaining);
+                for (int i = 0; i < Math.max(connections, 1); i++) {
+                    workers.add(executor.submit(() -> {
+                        runWorker(scheduler);
+                        return null;
+                    }));
+                }
+                try {
+                    for (var worker : workers) {
+                        awaitWithCheckpoints(worker, channel, scheduler);
+                    }
+                } catch (ExecutionException e) {
+                    //what the other workers wrote so far is kept for a retry
+                    workers.forEach(worker -> worker.cancel(true));
+                    checkpointQuietly(channel, scheduler);
+                    throw e;
+                }
+                if (!scheduler.isComplete()) {
+                    checkpoint(channel, scheduler);
+                    log.info("Download paused: {}", downloadInfo.getFilename());
+                    return;
+                }
+                partWriter.force();
+                if (digest != null) {
+                    if (!verifyOrRepair(channel, scheduler)) {
+                        log.info("Download paused: {}", downloadInfo.getFilename());
+                        return;
+                    }
+                    log.info("Checksum verified: {}", downloadInfo.getFilename());
+                }
+            }
+
+            progressTracker.sample();
+            extractCompleted(partFile);
+            deleteQuietly(buildSegmentsFile());
+            deleteQuietly(buildBlocksFile());
+            Files.move(partFile.toPath(), Path.of(downloadInfo.getFilePath()), StandardCopyOption.REPLACE_EXISTING);
+            downloadInfo.setStatus(DownloadStatus.COMPLETED);
+            emitNextVersion();
+            log.info("Download completed: {}", downloadInfo.getFilename());
+
+        } catch (InterruptedException e) {
+            workers.forEach(worker -> worker.cancel(true));
+            Thread.currentThread().interrupt();
+            log.info("Download cancelled: {}", downloadInfo.getFilename());
+        } catch (Exception e) {
+            workers.forEach(worker -> worker.cancel(true));
+            var cause = e instanceof ExecutionException && e.getCause() instanceof Exception ex ? ex : e;
+            if (cause instanceof RemoteFileChangedException changed && canRestart(changed)) {
+                restart(changed);
+                return;
+            }
+            log.error(cause.getMessage());
+            if (!(cause instanceof RemoteFileChangedException) && scheduleRetry(cause)) {
+                return;
+            }
+            setErrorDetails(cause);
+            emitNextVersion();
+            //the part file and its block hashes stay, adding the download again resumes and repairs it
+            if (!(cause instanceof ChecksumMismatchException)) {
+                cleanup();
+            }
+        }
+    }
+
+    //the block hashes only record the bytes as they were received, so a mismatch is narrowed down in two steps:
+    //blocks that changed on disk since are fetched again, and when that is not enough every block is fetched once
+    //more and only the ones that differ from the disk are written. False when paused in between
+    private boolean verifyOrRepair(FileChannel channel, RangeScheduler scheduler) throws Exception {
+        try {
+            digest.verify(channel, downloadInfo.getTotalSize());
+            return true;
+        } catch (ChecksumMismatchException e) {
+            log.warn("{} of {}, looking for corrupt blocks", e.getMessage(), downloadInfo.getFilename());
+            checkpoint(channel, scheduler);
+            var changed = blocks.verify(channel);
+            if (!changed.isEmpty()) {
+                log.warn("{} blocks of {} changed on disk, fetching them again", changed.size(),
+                    downloadInfo.getFilename());
+                refetchBlocks(channel, changed);
+                if (paused || matchesChecksum(channel)) {
+                    return !paused;
+                }
+            }
+            log.warn("Comparing every block of {} with the sources", downloadInfo.getFilename());
+            var rewritten = refetchBlocks(channel, IntStream.range(0, blocks.count()).boxed().toList());
+            if (paused) {
+                return false;
+            }
+            //the sources agree with the disk, it is the expected checksum that does not fit them
+            if (rewritten == 0) {
+                throw e;
+            }
+            digest = createDigest();
+            digest.verify(channel, downloadInfo.getTotalSize());
+            return true;
+        }
+    }
+
+    private boolean matchesChecksum(FileChannel channel) throws IOException {
+        digest = createDigest();
+        try {
+            digest.verify(channel, downloadInfo.getTotalSize());
+            return true;
+        } catch (ChecksumMismatchException e) {
+            return false;
+        }
+    }
+
+    //fetches the blocks on the workers and writes those that differ from the disk, returns how many were written
+    private int refetchBlocks(FileChannel channel, List<Integer> indexes) throws Exception {
+        var pending = new ConcurrentLinkedQueue<>(indexes);
+        var rewritten = new AtomicInteger();
+        var workers = new ArrayList<Future<?>>();
+        try {
+            for (int i = 0; i < Math.clamp(indexes.size(), 1, Math.max(connections, 1)); i++) {
+                workers.add(executor.submit(() -> {
+                    refetchWorker(channel, pending, rewritten);
+                    return null;
+                }));
+            }
+            for (var worker : workers) {
+                worker.get();
+            }
+        } finally {
+            workers.forEach(worker -> worker.cancel(true));
+        }
+        writer.force();
+        saveLines(buildBlocksFile(), blocks.describe());
+        log.info("Rewrote {} of {} fetched blocks of {}", rewritten.get(), indexes.size(), downloadInfo.getFilename());
+        return rewritten.get();
+    }
+
+    private void refetchWorker(FileChannel channel, Queue<Integer> pending, AtomicInteger rewritten)
+        throws IOException {
+        Integer index;
+        while (!paused && !Thread.currentThread().isInterrupted() && (index = pending.poll()) != null) {
+            var source = sources
+                .pick()
+                .orElseThrow(() -> new IOException("No source left for %s".formatted(downloadInfo.getFilename())));
+            try {
+                var bytes = fetchBlock(index, source);
+                source.succeeded();
+                var hash = BlockHashes.hash(bytes);
+                if (!MessageDigest.isEqual(hash, blocks.hashOnDisk(channel, index))) {
+                    writer.write(ByteBuffer.wrap(bytes), blocks.blockStart(index));
+                    rewritten.incrementAndGet();
+                }
+                blocks.record(index, hash);
+            } catch (RemoteFileChangedException e) {
+                if (source.isPrimary() || !sources.hasAlternatives(source)) {
+                    throw e;
+                }
+                sources.drop(source, e.getMessage());
+                pending.add(index);
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted() || !sources.fail(source, e)) {
+                    throw e;
+                }
+                pending.add(index);
+            }
+        }
+    }
+
+    private byte[] fetchBlock(int index, SourcePool.Source source) throws IOException {
+        var start = blocks.blockStart(index);
+        var block = new Segment(start, blocks.blockEnd(index), start);
+        try (var response = httpClient.newCall(buildRangeRequest(block, source)).execute();
+             var inputStream = rangeBody(response, block, source).byteStream()) {
+            var bytes = new byte[(int) block.remaining()];
+            var read = 0;
+            while (read < bytes.length) {
+                var count = inputStream.read(bytes, read, bytes.length - read);
+                if (count == -1) {
+                    throw new EOFException("Connection closed before block %d-%d completed"
+                        .formatted(start, block.getEnd() - 1));
+                }
+                bandwidthLimiter.acquire(downloadInfo.getId(), count);
+                metrics.recordBytes(count);
+                read += count;
+            }
+            return bytes;
+        }
+    }
+
+    //the written segments belong to the old version, everything is fetched again once against the new one
+    private void restart(RemoteFileChangedException changed) {
+        log.warn("{}, starting over", changed.getMessage());
+        restarted = true;
+        cleanup();
+        downloadInfo.setTotalSize(changed.getContentLength());
+        rememberValidators(changed.getEtag(), changed.getLastModified());
+        run();
+    }
+
+    //a version without a known length cannot be split, and a second change in a row is reported as a failure
+    private boolean canRestart(RemoteFileChangedException changed) {
+        return !restarted && !paused && changed.getContentLength() > 0;
+    }
+
+    //segment offsets are only recorded once the bytes behind them are on disk, so a crash resumes from there
+    private void awaitWithCheckpoints(Future<?> worker, FileChannel channel, RangeScheduler scheduler) throws Exception {
+        while (true) {
+            try {
+                worker.get(CHECKPOINT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                checkpoint(channel, scheduler);
+            }
+        }
+    }
+
+    //blocks are hashed from the same forced state the offsets describe
+    private void checkpoint(FileChannel channel, RangeScheduler scheduler) throws IOException {
+        var segments = scheduler
+            .segments()
+            .stream()
+            .map(Segment::snapshot)
+            .toList();
+        writer.force();
+        saveSegments(describeSegments(segments));
+        blocks.complete(channel, segments);
+        saveLines(buildBlocksFile(), blocks.describe());
+        //keeps the digest close behind the writers so little is left to read at the end
+        if (digest != null) {
+            digest.catchUp(channel, contiguousBytes(segments));
+        }
+    }
+
+    private void checkpointQuietly(FileChannel channel, RangeScheduler scheduler) {
+        try {
+            checkpoint(channel, scheduler);
+        } catch (IOException e) {
+            log.warn("Failed to record the state of {}: {}", downloadInfo.getFilename(), e.getMessage());
+        }
+    }
+
+    //blocks that no longer match their hash are carved out of the segments so that only they are fetched again
+    private List<Segment> refetchInvalidBlocks(FileChannel channel, List<Segment> segments) {
+        var invalid = blocks.verify(channel);
+        if (invalid.isEmpty()) {
+            return segments;
+        }
+        log.warn("Fetching {} corrupt blocks of {} again", invalid.size(), downloadInfo.getFilename());
+        var repaired = segments;
+        for (var index : invalid) {
+            repaired = unwrite(repaired, blocks.blockStart(index), blocks.blockEnd(index));
+        }
+        return repaired;
+    }
+
+    //marks a written range as missing, segments around it keep their written parts
+    private List<Segment> unwrite(List<Segment> segments, long from, long to) {
+        var result = new ArrayList<Segment>();
+        for (var segment : segments) {
+            var start = segment.getStart();
+            var end = segment.getEnd();
+            if (start >= to || end <= from) {
+                result.add(segment);
+                continue;
+            }
+            var cutFrom = Math.max(start, from);
+            var cutTo = Math.min(end, to);
+            if (start < cutFrom) {
+                result.add(new Segment(start, cutFrom, Math.min(segment.getPosition(), cutFrom)));
+            }
+            result.add(new Segment(cutFrom, cutTo, cutFrom));
+            if (cutTo < end) {
+                result.add(new Segment(cutTo, end, Math.max(segment.getPosition(), cutTo)));
+            }
+        }
+        return result;
+    }
+
+    private void runWorker(RangeScheduler scheduler) throws IOException {
+        while (!paused && !Thread.currentThread().isInterrupted()) {
+            var next = scheduler.next();
+            if (next.isEmpty()) {
+                return;
+            }
+            var segment = next.get();
+            var source = sources
+                .pick()
+                .orElseThrow(() -> new IOException("No source left for %s".formatted(downloadInfo.getFilename())));
+            try {
+                fetchSegment(segment, source);
+                source.succeeded();
+            } catch (RemoteFileChangedException e) {
+                //a mirror with other content is of no use, a change of the primary url restarts the download
+                if (source.isPrimary() || !sources.hasAlternatives(source)) {
+                    throw e;
+                }
+                sources.drop(source, e.getMessage());
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted() || !sources.fail(source, e)) {
+                    throw e;
+                }
+                log.warn("Range {}-{} from {} failed, handing it to another source: {}",
+                    segment.getPosition(), segment.getEnd() - 1, source.url(), e.getMessage());
+            } finally {
+                scheduler.release(segment);
+            }
+        }
+    }
+
+    private void fetchSegment(Segment segment, SourcePool.Source source) throws IOException {
+        try (var response = httpClient.newCall(buildRangeRequest(segment, source)).execute();
+             var inputStream = rangeBody(response, segment, source).byteStream()) {
+            var buffer = new byte[BUFFER_SIZE];
+            while (!segment.isComplete()) {
+                if (paused || Thread.currentThread().isInterrupted() || source.isDropped()) {
+                    return;
+                }
+                var allowed = segment.reserve(buffer.length);
+                if (allowed <= 0) {
+                    return;
+                }
+                var readStarted = System.nanoTime();
+                int bytesRead = inputStream.read(buffer, 0, allowed);
+                if (bytesRead == -1) {
+                    throw new EOFException("Connection closed before range %d-%d completed"
+                        .formatted(segment.getStart(), segment.getEnd() - 1));
+                }
+                source.record(bytesRead, System.nanoTime() - readStarted);
+                bandwidthLimiter.acquire(downloadInfo.getId(), bytesRead);
+                writer.write(ByteBuffer.wrap(buffer, 0, bytesRead), segment.getPosition());
+                blocks.update(segment.getPosition(), buffer, 0, bytesRead);
+                if (digest != null) {
+                    digest.update(segment.getPosition(), buffer, 0, bytesRead);
+                }
+                segment.advance(bytesRead);
+                metrics.recordBytes(bytesRead);
+                progressTracker.update(bytesRead);
+                if (sources.isSlow(source)) {
+                    sources.drop(source, "%.0f B/s per connection".formatted(source.throughput()));
+                }
+            }
+        }
+    }
+
+    //the body of a 206 for the range from the segment's position, anything else is thrown as the matching failure
+    private ResponseBody rangeBody(Response response, Segment segment, SourcePool.Source source) throws IOException {
+        if (response.code() == 200
+            || response.code() == 206 && !isSameEntity(response, source.etag(), source.lastModified())) {
+            throw new RemoteFileChangedException(
+                "%s sent another version of %s".formatted(source.url(), downloadInfo.getFilename()),
+                fullLength(response),
+                response.header("ETag"),
+                response.header("Last-Modified")
+            );
+        }
+        if (!response.isSuccessful()) {
+            throw HttpStatusException.of(response);
+        }
+        if (response.code() != 206) {
+            throw new IOException("Server did not honour range %d-%d, HTTP response code: %s"
+                .formatted(segment.getPosition(), segment.getEnd() - 1, response.code()));
+        }
+        var range = ContentRange.parse(response.header("Content-Range"));
+        if (range.isPresent() && range.get().first() != segment.getPosition()) {
+            throw new IOException("Server returned range %d-%d instead of %d-%d"
+                .formatted(range.get().first(), range.get().last(), segment.getPosition(), segment.getEnd() - 1));
+        }
+        var body = response.body();
+        if (body == null) {
+            throw new IOException("No content is returned from server: %s".formatted(downloadInfo.getFilename()));
+        }
+        return body;
+    }
+
+    //size of the whole file the response is part of, -1 when the server does not tell
+    private long fullLength(Response response) {
+        var body = response.body();
+        if (response.code() == 200) {
+            return body != null ? body.contentLength() : -1;
+        }
+        return ContentRange
+            .parse(response.header("Content-Range"))
+            .map(ContentRange::total)
+            .orElse(-1L);
+    }
+
+    //length of the written run from the start of the file
+    private long contiguousBytes(List<Segment> segments) {
+        var sorted = segments
+            .stream()
+            .sorted(Comparator.comparingLong(Segment::getStart))
+            .toList();
+        var contiguous = 0L;
+        for (var segment : sorted) {
+            if (segment.getStart() > contiguous) {
+                break;
+            }
+            contiguous = Math.max(contiguous, segment.getPosition());
+            if (!segment.isComplete()) {
+                break;
+            }
+        }
+        return contiguous;
+    }
+
+    private Request buildRangeRequest(Segment segment, SourcePool.Source source) {
+        var builder = new Request.Builder()
+            .get()
+            .url(source.url())
+            .addHeader("User-Agent", "Mozilla/5.0")
+            .addHeader("Range", "bytes=%d-%d".formatted(segment.getPosition(), segment.getEnd() - 1));
+        addIfRange(builder, source.etag(), source.lastModified());
+        return builder.build();
+    }
+
+    private List<Segment> splitSegments() {
+        var totalSize = downloadInfo.getTotalSize();
+        var count = Math.clamp(totalSize / Math.max(minSegmentSize, 1), 1, Math.max(connections, 1));
+        var segmentSize = totalSize / count;
+        var segments = new ArrayList<Segment>(count);
+        for (int i = 0; i < count; i++) {
+            var start = i * segmentSize;
+            var end = i == count - 1 ? totalSize : start + segmentSize;
+            segments.add(new Segment(start, end, start));
+        }
+        return segments;
+    }
+
+    private long downloadedBytes(List<Segment> segments) {
+        return segments
+            .stream()
+            .mapToLong(segment -> segment.getPosition() - segment.getStart())
+            .sum();
+    }
+
+    //one line per segment: "<start> <end> <position>"
+    private Optional<List<Segment>> loadSegments(File partFile) {
+        var segmentsFile = buildSegmentsFile();
+        if (!partFile.exists() || !segmentsFile.exists()) {
+            return Optional.empty();
+        }
+        try {
+            var segments = Files
+                .readAllLines(segmentsFile.toPath())
+                .stream()
+                .filter(line -> !line.isBlank())
+                .map(line -> line.trim().split(" "))
+                .map(parts -> new Segment(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2])))
+                .toList();
+            return Optional.of(segments).filter(list -> !list.isEmpty());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable segment state {}: {}", segmentsFile, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private List<String> describeSegments(List<Segment> segments) {
+        return segments
+            .stream()
+            .map(segment -> "%d %d %d".formatted(segment.getStart(), segment.getEnd(), segment.getPosition()))
+            .toList();
+    }
+
+    private void saveSegments(List<String> lines) throws IOException {
+        saveLines(buildSegmentsFile(), lines);
+    }
+
+    private void saveLines(File target, List<String> lines) throws IOException {
+        var path = target.toPath();
+        var temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, lines);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //without usable hashes the resumed blocks are trusted, as they were before hashes were kept
+    private BlockHashes loadBlocks() {
+        var blocksFile = buildBlocksFile();
+        try {
+            if (blocksFile.exists()) {
+                return BlockHashes.load(Files.readAllLines(blocksFile.toPath()), blockSize, downloadInfo.getTotalSize());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable block hashes {}: {}", blocksFile, e.getMessage());
+        }
+        return new BlockHashes(blockSize, downloadInfo.getTotalSize());
+    }
+
+    private File buildSegmentsFile() {
+        return new File(SEGMENTS_FORMAT.formatted(buildPartFile().getPath()));
+    }
+
+    private File buildBlocksFile() {
+        return new File(BLOCKS_FORMAT.formatted(buildPartFile().getPath()));
+    }
+}
@@ -0,0 +1,167 @@
+package com.downloader.task.segmented;
+
+import com.downloader.entity.*;
+import com.downloader.task.estimate.EwmaSpeedEstimator;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.*;
+import lombok.extern.slf4j.Slf4j;
+
+//the urls ranges are fetched from, a free connection picks one with a probability proportional to the throughput
+//its connections have delivered lately, so faster mirrors end up serving more of the file
+@Slf4j
+class SourcePool {
+
+    private final List<Source> sources;
+    private final int maxFailures;
+    private final double slowRatio;
+    private final long minSampleBytes;
+
+    SourcePool(DownloadInfo downloadInfo, int maxFailures, double slowRatio, long minSampleBytes) {
+        var all = new ArrayList<Source>();
+        all.add(new Source(downloadInfo.getUrl(), downloadInfo.getEtag(), downloadInfo.getLastModified(), true));
+        Optional
+            .ofNullable(downloadInfo.getMirrors())
+            .orElse(List.of())
+            .forEach(mirror -> all.add(new Source(mirror.url(), mirror.etag(), mirror.lastModified(), false)));
+        this.sources = List.copyOf(all);
+        this.maxFailures = Math.max(maxFailures, 1);
+        this.slowRatio = slowRatio;
+        this.minSampleBytes = Math.max(minSampleBytes, 1);
+    }
+
+    //sources without enough samples yet are weighted like the fastest one so that they get measured
+    Optional<Source> pick() {
+        var active = active();
+        if (active.size() <= 1) {
+            return active.stream().findFirst();
+        }
+        var fastest = active
+            .stream()
+            .filter(this::isMeasured)
+            .mapToDouble(Source::throughput)
+            .max()
+            .orElse(1);
+        var weights = active
+            .stream()
+            .mapToDouble(source -> isMeasured(source) ? Math.max(source.throughput(), 1) : fastest)
+            .toArray();
+        var point = ThreadLocalRandom.current().nextDouble(Arrays.stream(weights).sum());
+        for (int i = 0; i < weights.length; i++) {
+            point -= weights[i];
+            if (point < 0) {
+                return Optional.of(active.get(i));
+            }
+        }
+        return Optional.of(active.getLast());
+    }
+
+    //true when the failed range can go to another source, the last one left is never dropped
+    boolean fail(Source source, Exception e) {
+        if (source.failures.incrementAndGet() >= maxFailures) {
+            drop(source, "%d failures in a row, last: %s".formatted(source.failures.get(), e.getMessage()));
+        }
+        return hasAlternatives(source);
+    }
+
+    boolean hasAlternatives(Source source) {
+        return active().stream().anyMatch(other -> other != source);
+    }
+
+    //checked by the read loop, a slow source gives its range back for a faster one to continue
+    boolean isSlow(Source source) {
+        if (!isMeasured(source)) {
+            return false;
+        }
+        var fastest = active()
+            .stream()
+            .filter(other -> other != source && isMeasured(other))
+            .mapToDouble(Source::throughput)
+            .max()
+            .orElse(0);
+        return fastest > 0 && source.throughput() < fastest * slowRatio;
+    }
+
+    synchronized void drop(Source source, String reason) {
+        if (source.dropped || !hasAlternatives(source)) {
+            return;
+        }
+        source.dropped = true;
+        log.warn("Dropping source {}: {}", source.url, reason);
+    }
+
+    private boolean isMeasured(Source source) {
+        return source.bytes() >= minSampleBytes;
+    }
+
+    private List<Source> active() {
+        return sources
+            .stream()
+            .filter(source -> !source.dropped)
+            .toList();
+    }
+
+    static class Source {
+
+        //of time spent reading, a source that slows down is weighted by its recent rate within a few seconds
+        private static final long THROUGHPUT_TIME_CONSTANT_MS = 5000;
+
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private final boolean primary;
+
+        private final EwmaSpeedEstimator rate = new EwmaSpeedEstimator(THROUGHPUT_TIME_CONSTANT_MS);
+        private final AtomicInteger failures = new AtomicInteger();
+        private long bytes;
+        private long busyNanos;
+        private volatile boolean dropped;
+
+        private Source(String url, String etag, String lastModified, boolean primary) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.primary = primary;
+        }
+
+        String url() {
+            return url;
+        }
+
+        String etag() {
+            return etag;
+        }
+
+        String lastModified() {
+            return lastModified;
+        }
+
+        boolean isPrimary() {
+            return primary;
+        }
+
+        boolean isDropped() {
+            return dropped;
+        }
+
+        //the clock is the time spent waiting on reads, so the rate is per connection whatever the number of them
+        synchronized void record(long count, long nanos) {
+            bytes += count;
+            busyNanos += nanos;
+            rate.record(busyNanos / 1_000_000, bytes);
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+
+        void succeeded() {
+            failures.set(0);
+        }
+
+        //bytes per second of a single connection to this source
+        double throughput() {
+            return rate.getBytesPerSecond();
+        }
+    }
+}
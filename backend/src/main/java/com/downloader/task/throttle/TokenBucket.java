@@ -0,0 +1,58 @@
+package com.downloader.task.throttle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//lock-free token bucket kept as a single "next free" timestamp (GCRA), a rate of 0 means unlimited
+public class TokenBucket {
+
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final AtomicLong nextFreeNanos = new AtomicLong(System.nanoTime());
+    private volatile long bytesPerSecond;
+
+    public TokenBucket(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(bytesPerSecond, 0);
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(bytesPerSecond, 0);
+        nextFreeNanos.set(System.nanoTime());
+    }
+
+    public boolean isUnlimited() {
+        return bytesPerSecond <= 0;
+    }
+
+    //parks the calling thread until the bytes fit the rate, returns early when interrupted
+    public void acquire(long bytes) {
+        var waitNanos = reserve(bytes);
+        var deadline = System.nanoTime() + waitNanos;
+        while (waitNanos > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(waitNanos);
+            waitNanos = deadline - System.nanoTime();
+        }
+    }
+
+    //nanos until the reserved bytes fit the rate, the burst allowance already deducted
+    public long reserve(long bytes) {
+        var rate = bytesPerSecond;
+        if (rate <= 0) {
+            return 0;
+        }
+        var cost = bytes * 1_000_000_000L / rate;
+        while (true) {
+            var now = System.nanoTime();
+            var current = nextFreeNanos.get();
+            var next = Math.max(current, now) + cost;
+            if (nextFreeNanos.compareAndSet(current, next)) {
+                return Math.max(next - now - BURST_NANOS, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.downloader;
+
+import com.downloader.config.DownloaderProperties;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ClassPathResource;
+
+//binds application.yaml, with no disk reserve, no preallocation, the cache off and a ticker that never fires on its own
+//so that tests and benchmarks do not depend on the machine and flush explicitly
+public final class TestProperties {
+
+    private static final Map<String, Object> OVERRIDES = Map.of(
+        "downloader.events.tick", "1d",
+        "downloader.io.preallocate", "false",
+        "downloader.disk.min-free", "0B",
+        "downloader.cache.enabled", "false",
+        "downloader.cache.dir", "/tmp/dload-cache",
+        "downloader.cache.max-size", "1GB",
+        "downloader.cache.reuse", "COPY"
+    );
+
+    private TestProperties() {
+    }
+
+    public static DownloaderProperties defaults() {
+        return with(Map.of());
+    }
+
+    public static DownloaderProperties withScheduler(DownloaderProperties.Scheduler scheduler) {
+        return with(Map.of(
+            "scheduler.max-active", scheduler.maxActive(),
+            "scheduler.max-per-host", scheduler.maxPerHost(),
+            "scheduler.policy", scheduler.policy()
+        ));
+    }
+
+    public static DownloaderProperties withState(DownloaderProperties.State state) {
+        return with(Map.of(
+            "state.flush-interval", state.flushInterval(),
+            "state.compact-after", state.compactAfter()
+        ));
+    }
+
+    //keys are relative to the downloader prefix, e.g. "io.mode"
+    public static DownloaderProperties with(Map<String, Object> overrides) {
+        var prefixed = new HashMap<String, Object>();
+        overrides.forEach((key, value) -> prefixed.put("downloader." + key, value.toString()));
+
+        var sources = new ArrayList<PropertySource<?>>();
+        sources.add(new MapPropertySource("overrides", prefixed));
+        sources.add(new MapPropertySource("test", OVERRIDES));
+        try {
+            sources.addAll(new YamlPropertySourceLoader().load("application", new ClassPathResource("application.yaml")));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Binder(ConfigurationPropertySources.from(sources))
+            .bind("downloader", DownloaderProperties.class)
+            .get();
+    }
+}
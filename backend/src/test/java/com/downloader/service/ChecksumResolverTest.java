@@ -0,0 +1,94 @@
+package com.downloader.service;
+
+import java.io.IOException;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.*;
+import org.junit.jupiter.api.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ChecksumResolverTest {
+
+    private static final String A = "a".repeat(64);
+    private static final String B = "b".repeat(64);
+    private static final String MD5 = "c".repeat(32);
+
+    private final MockWebServer server = new MockWebServer();
+    private final ChecksumResolver resolver = new ChecksumResolver(new OkHttpClient());
+
+    @BeforeEach
+    void start() throws IOException {
+        server.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void aGivenChecksumIsNormalized() throws IOException {
+        assertThat(resolver.resolve("SHA-256=" + A.toUpperCase(), null, "http://host/a.iso", "a.iso"))
+            .isEqualTo("sha256:" + A);
+        assertThat(resolver.resolve(null, " ", "http://host/a.iso", "a.iso")).isNull();
+        assertThat(server.getRequestCount()).isZero();
+    }
+
+    @Test
+    void picksTheLineOfTheFileFromASumsFile() throws IOException {
+        serve("""
+            # release checksums
+            %s  other.iso
+            %s *dist/a.iso
+            """.formatted(A, B));
+
+        assertThat(resolver.resolve(null, sumsUrl(), "http://host/a.iso", "a.iso")).isEqualTo("sha256:" + B);
+    }
+
+    @Test
+    void theNameOnTheServerCountsWhenTheFileWasRenamed() throws IOException {
+        serve("%s  other.iso\n%s  a.iso\n".formatted(A, B));
+
+        assertThat(resolver.resolve(null, sumsUrl(), "http://host/files/a.iso?x=1", "renamed.iso"))
+            .isEqualTo("sha256:" + B);
+    }
+
+    @Test
+    void readsBsdStyleLines() throws IOException {
+        serve("SHA256 (other.iso) = %s\nMD5 (a.iso) = %s\n".formatted(A, MD5));
+
+        assertThat(resolver.resolve(null, sumsUrl(), "http://host/a.iso", "a.iso")).isEqualTo("md5:" + MD5);
+    }
+
+    @Test
+    void aLoneDigestNeedsNoName() throws IOException {
+        serve(A + "\n");
+
+        assertThat(resolver.resolve(null, sumsUrl(), "http://host/a.iso", "a.iso")).isEqualTo("sha256:" + A);
+    }
+
+    @Test
+    void failsWithoutAnEntryForTheFile() {
+        serve("%s  other.iso\n%s  more.iso\n".formatted(A, B));
+
+        assertThatThrownBy(() -> resolver.resolve(null, sumsUrl(), "http://host/a.iso", "a.iso"))
+            .isInstanceOf(IOException.class)
+            .hasMessage("No checksum for a.iso found in %s", sumsUrl());
+    }
+
+    @Test
+    void failsWhenTheSumsFileCannotBeFetched() {
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        assertThatThrownBy(() -> resolver.resolve(null, sumsUrl(), "http://host/a.iso", "a.iso"))
+            .hasMessage("Failed to fetch checksum file %s, HTTP response code: 404", sumsUrl());
+    }
+
+    private void serve(String body) {
+        server.enqueue(new MockResponse().setBody(body));
+    }
+
+    private String sumsUrl() {
+        return server.url("/SHA256SUMS").toString();
+    }
+}
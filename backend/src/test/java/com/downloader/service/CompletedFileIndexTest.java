@@ -0,0 +1,142 @@
+package com.downloader.service;
+
+import com.downloader.TestProperties;
+import com.downloader.entity.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CompletedFileIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void findsAFileByItsUrlAndVersion() throws IOException {
+        var index = index(ReuseMode.COPY, "1MB");
+        var file = download("a", 100);
+        index.add(file);
+
+        var found = index.find(request("a", "\"a\""));
+        assertThat(found).isPresent();
+        assertThat(Files.readAllBytes(found.get())).isEqualTo(Files.readAllBytes(Path.of(file.getFilePath())));
+        assertThat(index.find(request("a", "\"other\""))).isEmpty();
+        assertThat(index.find(request("a", "W/\"a\""))).isEmpty();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyReusedOnceOverItsSize() throws IOException {
+        var index = index(ReuseMode.COPY, "250B");
+        index.add(download("a", 100));
+        index.add(download("b", 100));
+        //reusing a makes b the eldest
+        assertThat(index.find(request("a", "\"a\""))).isPresent();
+
+        index.add(download("c", 100));
+
+        assertThat(index.find(request("b", "\"b\""))).isEmpty();
+        assertThat(index.find(request("a", "\"a\""))).isPresent();
+        assertThat(index.find(request("c", "\"c\""))).isPresent();
+        assertThat(objects()).hasSize(2);
+    }
+
+    @Test
+    void forgetsAnObjectThatChangedOnDisk() throws IOException {
+        var index = index(ReuseMode.COPY, "1MB");
+        index.add(download("a", 100));
+        Files.write(index.find(request("a", "\"a\"")).orElseThrow(), new byte[50]);
+
+        assertThat(index.find(request("a", "\"a\""))).isEmpty();
+        assertThat(objects()).isEmpty();
+    }
+
+    @Test
+    void hardlinksOnTheSameVolume() throws IOException {
+        var index = index(ReuseMode.HARDLINK, "1MB");
+        var file = download("a", 100);
+        index.add(file);
+
+        assertThat(Files.isSameFile(index.find(request("a", "\"a\"")).orElseThrow(), Path.of(file.getFilePath())))
+            .isTrue();
+    }
+
+    @Test
+    void copiesWhenNeitherAHardlinkNorAReflinkCanBeMade() throws IOException {
+        var shm = Path.of("/dev/shm");
+        assumeTrue(Files.isWritable(shm) && !Files.getFileStore(shm).equals(Files.getFileStore(dir)));
+        var cache = Files.createTempDirectory(shm, "dload-cache");
+        try {
+            var index = new CompletedFileIndex(TestProperties.with(Map.of(
+                "cache.enabled", true,
+                "cache.dir", cache,
+                "cache.reuse", ReuseMode.HARDLINK
+            )));
+            var file = download("a", 100);
+            index.add(file);
+
+            var object = index.find(request("a", "\"a\"")).orElseThrow();
+            assertThat(object).startsWith(cache);
+            assertThat(Files.isSameFile(object, Path.of(file.getFilePath()))).isFalse();
+            assertThat(Files.readAllBytes(object)).isEqualTo(Files.readAllBytes(Path.of(file.getFilePath())));
+        } finally {
+            FileUtils.deleteQuietly(cache.toFile());
+        }
+    }
+
+    @Test
+    void neverLinksWhenReflinksOrCopiesAreAsked() throws IOException {
+        for (var reuse : List.of(ReuseMode.REFLINK, ReuseMode.COPY)) {
+            var index = index(reuse, "1MB");
+            var file = download("a-" + reuse, 100);
+            index.add(file);
+            var target = dir.resolve("placed-" + reuse);
+
+            index.materialize(index.find(request("a-" + reuse, "\"a-" + reuse + "\"")).orElseThrow(), target);
+
+            assertThat(Files.isSameFile(target, Path.of(file.getFilePath()))).isFalse();
+            assertThat(Files.readAllBytes(target)).isEqualTo(Files.readAllBytes(Path.of(file.getFilePath())));
+        }
+    }
+
+    private CompletedFileIndex index(ReuseMode reuse, String maxSize) {
+        return new CompletedFileIndex(TestProperties.with(Map.of(
+            "cache.enabled", true,
+            "cache.dir", dir.resolve("cache"),
+            "cache.max-size", maxSize,
+            "cache.reuse", reuse
+        )));
+    }
+
+    //a completed download of random content, served with its name as the etag
+    private DownloadInfo download(String name, int size) throws IOException {
+        var bytes = new byte[size];
+        new Random(name.hashCode()).nextBytes(bytes);
+        var file = Files.write(Files.createDirectories(dir.resolve("downloads")).resolve(name), bytes);
+        var downloadInfo = request(name, "\"%s\"".formatted(name));
+        downloadInfo.setFilePath(file.toString());
+        return downloadInfo;
+    }
+
+    private static DownloadInfo request(String name, String etag) {
+        return DownloadInfo
+            .builder()
+            .url("http://host/" + name)
+            .etag(etag)
+            .build();
+    }
+
+    private List<Path> objects() throws IOException {
+        try (var files = Files.walk(dir.resolve("cache"))) {
+            return files
+                .filter(Files::isRegularFile)
+                .filter(file -> !file.getFileName().toString().startsWith("index.json"))
+                .toList();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.downloader.service;
+
+import com.downloader.TestProperties;
+import com.downloader.entity.DownloadInfo;
+import com.downloader.task.io.DirectBufferPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiskWriteSchedulerTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void safeOffsetRoundsDownToWholeBlocks() {
+        var disk = scheduler(Map.of("disk.block-size", "1MB"));
+
+        assertThat(disk.safeOffset(0)).isZero();
+        assertThat(disk.safeOffset(MB - 1)).isZero();
+        assertThat(disk.safeOffset(MB)).isEqualTo(MB);
+        assertThat(disk.safeOffset(3L * MB + 5)).isEqualTo(3L * MB);
+    }
+
+    @Test
+    void preallocatesAndCutsTheFileBackOnClose() throws IOException {
+        var disk = scheduler(Map.of("io.preallocate", true, "disk.block-size", "4KB"));
+        var file = dir.resolve("a.part").toFile();
+
+        try (var writer = disk.open(file, 0, 10L * MB)) {
+            assertThat(file.length()).isEqualTo(10L * MB);
+            writer.write(ByteBuffer.allocate(6000));
+        }
+
+        assertThat(file.length()).isEqualTo(6000);
+    }
+
+    @Test
+    void refusesWhatDoesNotFitNextToTheOtherAdmittedDownloads() throws IOException {
+        var disk = scheduler(Map.of());
+        var usable = Files.getFileStore(dir).getUsableSpace();
+
+        assertThat(disk.admit(download("a", usable * 3 / 4))).isEmpty();
+        //fits on its own, not with the rest of a still to come
+        assertThat(disk.admit(download("b", usable / 2))).hasValueSatisfying(reason -> assertThat(reason)
+            .startsWith("Not enough free space under"));
+
+        disk.release("a");
+        assertThat(disk.admit(download("b", usable / 2))).isEmpty();
+    }
+
+    @Test
+    void onlyTheRestOfAResumedDownloadIsSetAside() throws IOException {
+        var disk = scheduler(Map.of());
+        var usable = Files.getFileStore(dir).getUsableSpace();
+
+        var resumed = download("a", usable * 3 / 2);
+        resumed.setDownloadedSize(usable);
+        assertThat(disk.admit(resumed)).isEmpty();
+    }
+
+    @Test
+    void keepsTheReserveFree() throws IOException {
+        var usable = Files.getFileStore(dir).getUsableSpace();
+        var disk = scheduler(Map.of("disk.min-free", usable / 2 + "B"));
+
+        assertThat(disk.admit(download("a", usable * 3 / 4))).isPresent();
+        assertThat(disk.admit(download("b", usable / 4))).isEmpty();
+        //sizes that are not known only need the reserve
+        assertThat(disk.admit(download("c", -1))).isEmpty();
+    }
+
+    private DiskWriteScheduler scheduler(Map<String, Object> overrides) {
+        return new DiskWriteScheduler(
+            TestProperties.with(overrides),
+            new DirectBufferPool(4096, MB),
+            new DownloadMetrics(new SimpleMeterRegistry())
+        );
+    }
+
+    private DownloadInfo download(String id, long totalSize) {
+        return DownloadInfo
+            .builder()
+            .id(id)
+            .outputPath(dir.resolve(id).toString())
+            .totalSize(totalSize)
+            .build();
+    }
+}
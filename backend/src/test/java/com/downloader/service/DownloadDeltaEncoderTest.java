@@ -0,0 +1,100 @@
+package com.downloader.service;
+
+import com.downloader.entity.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownloadDeltaEncoderTest {
+
+    private final DownloadDeltaEncoder encoder = new DownloadDeltaEncoder();
+    private long sequence;
+
+    @Test
+    void sendsEveryFieldOfADownloadSeenForTheFirstTime() {
+        var event = encoder.encode(batch(false, download("a", 1)));
+
+        assertThat(event.sequence()).isEqualTo(1);
+        assertThat(event.changes())
+            .singleElement()
+            .satisfies(change -> assertThat(change).containsKeys(
+                "id", "version", "filename", "status", "speed", "progress", "totalSize", "downloadedSize",
+                "timeRemaining", "extractedSize", "extractedFiles", "priority", "speedLimit", "createdAt"));
+    }
+
+    @Test
+    void sendsOnlyTheFieldsThatChanged() {
+        encoder.encode(batch(false, download("a", 1)));
+
+        var next = download("a", 2);
+        next.setProgress(12.5);
+        next.setDownloadedSize(125);
+        next.setError("slow");
+        var event = encoder.encode(batch(false, next));
+
+        assertThat(event.changes()).singleElement().isEqualTo(Map.of(
+            "id", "a",
+            "version", 2L,
+            "progress", 12.5,
+            "downloadedSize", 125L,
+            "error", "slow"
+        ));
+    }
+
+    @Test
+    void leavesOutDownloadsWhoseVisibleFieldsDidNotChange() {
+        encoder.encode(batch(false, download("a", 1), download("b", 1)));
+
+        var a = download("a", 2);
+        a.setRetryAt(5000);
+        var b = download("b", 2);
+        b.setStatus(DownloadStatus.COMPLETED);
+        var event = encoder.encode(batch(false, a, b));
+
+        assertThat(event.changes())
+            .singleElement()
+            .isEqualTo(Map.of("id", "b", "version", 2L, "status", DownloadStatus.COMPLETED));
+    }
+
+    @Test
+    void aFullBatchStartsOver() {
+        encoder.encode(batch(false, download("a", 1)));
+
+        var event = encoder.encode(batch(true, download("a", 1)));
+
+        assertThat(event.snapshot()).isTrue();
+        assertThat(event.changes())
+            .singleElement()
+            .satisfies(change -> assertThat(change).containsKeys("filename", "status", "createdAt"));
+    }
+
+    @Test
+    void forgetsRemovedDownloads() {
+        encoder.encode(batch(false, download("a", 1)));
+
+        var removal = encoder.encode(new DownloadBatch(++sequence, List.of(), Set.of("a"), false));
+        var again = encoder.encode(batch(false, download("a", 2)));
+
+        assertThat(removal.removed()).containsExactly("a");
+        assertThat(again.changes())
+            .singleElement()
+            .satisfies(change -> assertThat(change).containsKeys("filename", "status", "createdAt"));
+    }
+
+    private DownloadBatch batch(boolean full, DownloadInfo... downloads) {
+        return new DownloadBatch(++sequence, List.of(downloads), Set.of(), full);
+    }
+
+    private static DownloadInfo download(String id, long version) {
+        return DownloadInfo
+            .builder()
+            .id(id)
+            .filename(id + ".bin")
+            .status(DownloadStatus.DOWNLOADING)
+            .totalSize(1000)
+            .createdAt(42)
+            .version(version)
+            .build();
+    }
+}
@@ -0,0 +1,138 @@
+package com.downloader.service;
+
+import com.downloader.entity.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DownloadRegistryTest {
+
+    private final DownloadRegistry registry = new DownloadRegistry();
+
+    @Test
+    void returnsEveryMatchWithoutLimitOrCursor() {
+        for (int i = 0; i < 300; i++) {
+            add("d" + i, "http://one/f" + i, "f" + i, i, 0, DownloadStatus.QUEUED);
+        }
+
+        var page = registry.query(query(DownloadSort.CREATED, false, 0, null));
+
+        assertThat(page.items()).hasSize(300);
+        assertThat(page.nextCursor()).isNull();
+    }
+
+    @Test
+    void pagesByCreationTimeInBothDirections() {
+        for (int i = 0; i < 7; i++) {
+            //two downloads per millisecond, the id orders them
+            add("d" + i, "http://one/f" + i, "f" + i, i / 2, 0, DownloadStatus.QUEUED);
+        }
+
+        assertThat(pageThrough(DownloadSort.CREATED, false, null)).containsExactly(
+            "d0", "d1", "d2", "d3", "d4", "d5", "d6");
+        assertThat(pageThrough(DownloadSort.CREATED, true, null)).containsExactly(
+            "d6", "d5", "d4", "d3", "d2", "d1", "d0");
+    }
+
+    @Test
+    void pagesThroughEqualFilenamesAndSizesByTheirIds() {
+        for (int i = 0; i < 7; i++) {
+            add("d" + i, "http://one/" + i, i % 2 == 0 ? "Same.bin" : "same.BIN", 100 - i, 42, DownloadStatus.QUEUED);
+        }
+        add("z", "http://one/z", "a.bin", 0, 7, DownloadStatus.QUEUED);
+
+        assertThat(pageThrough(DownloadSort.FILENAME, false, null)).containsExactly(
+            "z", "d0", "d1", "d2", "d3", "d4", "d5", "d6");
+        assertThat(pageThrough(DownloadSort.SIZE, true, null)).containsExactly(
+            "d6", "d5", "d4", "d3", "d2", "d1", "d0", "z");
+    }
+
+    @Test
+    void pagesThroughAFilteredSelection() {
+        for (int i = 0; i < 40; i++) {
+            add("d%02d".formatted(i), "http://host%d/f".formatted(i % 4), "f" + i, i, 0,
+                i % 10 == 0 ? DownloadStatus.FAILED : DownloadStatus.QUEUED);
+        }
+
+        //4 of 40 is selective enough to sort the status set instead of walking the time index
+        assertThat(pageThrough(DownloadSort.CREATED, false, Set.of(DownloadStatus.FAILED))).containsExactly(
+            "d00", "d10", "d20", "d30");
+        assertThat(pageThrough(DownloadSort.CREATED, true, Set.of(DownloadStatus.QUEUED))).hasSize(36);
+    }
+
+    @Test
+    void followsStatusChangesOnceReindexed() {
+        var downloadInfo = add("a", "http://one/a", "a.bin", 0, 0, DownloadStatus.QUEUED);
+
+        downloadInfo.setStatus(DownloadStatus.COMPLETED);
+        registry.reindex("a");
+
+        assertThat(registry.counts())
+            .containsEntry(DownloadStatus.QUEUED, 0)
+            .containsEntry(DownloadStatus.COMPLETED, 1);
+        assertThat(pageThrough(DownloadSort.CREATED, false, Set.of(DownloadStatus.COMPLETED))).containsExactly("a");
+    }
+
+    @Test
+    void rejectsACursorOfAnotherSort() {
+        for (int i = 0; i < 3; i++) {
+            add("d" + i, "http://one/f" + i, "f" + i, i, 0, DownloadStatus.QUEUED);
+        }
+        var cursor = registry.query(query(DownloadSort.SIZE, false, 1, null)).nextCursor();
+
+        assertThat(cursor).isNotNull();
+        assertThatThrownBy(() -> registry.query(query(DownloadSort.FILENAME, false, 1, cursor)))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> registry.query(query(DownloadSort.CREATED, false, 1, "not a cursor")))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void searchesFilenamesIgnoringCase() {
+        add("a", "http://one/a", "Ubuntu-24.04.iso", 0, 0, DownloadStatus.QUEUED);
+        add("b", "http://one/b", "debian.iso", 1, 0, DownloadStatus.QUEUED);
+
+        var page = registry.query(new DownloadQuery(
+            null, null, "UBUNTU", null, null, null, false, 0, null
+        ));
+
+        assertThat(page.items())
+            .extracting(DownloadInfo::getId)
+            .containsExactly("a");
+    }
+
+    //follows the cursors two at a time and collects the ids in order
+    private List<String> pageThrough(DownloadSort sort, boolean descending, Set<DownloadStatus> statuses) {
+        var ids = new ArrayList<String>();
+        String cursor = null;
+        do {
+            var page = registry.query(new DownloadQuery(
+                statuses, null, null, null, null, sort, descending, 2, cursor
+            ));
+            page.items().forEach(item -> ids.add(item.getId()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private static DownloadQuery query(DownloadSort sort, boolean descending, int limit, String cursor) {
+        return new DownloadQuery(null, null, null, null, null, sort, descending, limit, cursor);
+    }
+
+    private DownloadInfo add(String id, String url, String filename, long createdAt, long totalSize,
+                             DownloadStatus status) {
+        var downloadInfo = DownloadInfo
+            .builder()
+            .id(id)
+            .url(url)
+            .filename(filename)
+            .createdAt(createdAt)
+            .totalSize(totalSize)
+            .status(status)
+            .build();
+        registry.put(id, downloadInfo);
+        return downloadInfo;
+    }
+}
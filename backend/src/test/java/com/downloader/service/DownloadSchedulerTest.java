@@ -0,0 +1,104 @@
+package com.downloader.service;
+
+import com.downloader.TestProperties;
+import com.downloader.config.DownloaderProperties;
+import com.downloader.entity.*;
+import com.downloader.task.io.DirectBufferPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownloadSchedulerTest {
+
+    private DownloadScheduler scheduler;
+    private final List<String> launched = new ArrayList<>();
+    private final Map<String, Deque<Runnable>> releases = new HashMap<>();
+
+    private void start(int maxPerHost) {
+        var properties = TestProperties.withScheduler(
+            new DownloaderProperties.Scheduler(4, maxPerHost, SchedulingPolicy.FIFO)
+        );
+        var metrics = new DownloadMetrics(new SimpleMeterRegistry());
+        scheduler = new DownloadScheduler(
+            properties,
+            metrics,
+            new HostCircuitBreaker(properties, metrics),
+            new DiskWriteScheduler(properties, new DirectBufferPool(4096, 4096), metrics)
+        );
+    }
+
+    @Test
+    void admitsUpToThePerHostLimit() {
+        start(1);
+        enqueue(download("a", "http://one/a"));
+        enqueue(download("b", "http://one/b"));
+        enqueue(download("c", "http://two/c"));
+
+        assertThat(launched).containsExactly("a", "c");
+
+        release("a");
+        assertThat(launched).containsExactly("a", "c", "b");
+    }
+
+    @Test
+    void resumedDownloadWaitsForItsPreviousRunToRelease() {
+        start(2);
+        var a = download("a", "http://one/a");
+        enqueue(a);
+        //paused and resumed while the first run is still winding down
+        enqueue(a);
+        assertThat(launched).containsExactly("a");
+
+        release("a");
+        assertThat(launched).containsExactly("a", "a");
+        release("a");
+
+        //both runs gave their host slot back
+        enqueue(download("b", "http://one/b"));
+        enqueue(download("c", "http://one/c"));
+        assertThat(launched).containsExactly("a", "a", "b", "c");
+    }
+
+    @Test
+    void releasingTwiceFreesTheSlotOnce() {
+        start(1);
+        enqueue(download("a", "http://one/a"));
+        var first = releases.get("a").peekFirst();
+        first.run();
+        first.run();
+
+        enqueue(download("b", "http://one/b"));
+        enqueue(download("c", "http://one/c"));
+        assertThat(launched).containsExactly("a", "b");
+    }
+
+    private void enqueue(DownloadInfo downloadInfo) {
+        scheduler.enqueue(
+            downloadInfo,
+            release -> {
+                launched.add(downloadInfo.getId());
+                releases.computeIfAbsent(downloadInfo.getId(), id -> new ArrayDeque<>()).add(release);
+            },
+            reason -> {
+                throw new AssertionError("refused: " + reason);
+            }
+        );
+    }
+
+    private void release(String id) {
+        releases.get(id).removeFirst().run();
+    }
+
+    private static DownloadInfo download(String id, String url) {
+        return DownloadInfo
+            .builder()
+            .id(id)
+            .url(url)
+            .filename(id)
+            .outputPath(System.getProperty("java.io.tmpdir"))
+            .status(DownloadStatus.QUEUED)
+            .build();
+    }
+}
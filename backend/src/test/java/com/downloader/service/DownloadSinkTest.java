@@ -0,0 +1,166 @@
+package com.downloader.service;
+
+import com.downloader.TestProperties;
+import com.downloader.entity.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+//the ticker is never started, each test flushes by hand
+class DownloadSinkTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final DownloadSink sink = new DownloadSink(TestProperties.defaults(), new DownloadMetrics(registry));
+
+    @Test
+    void flushesTheLatestStateOfEachDownloadOnce() {
+        var recorder = subscribe(Long.MAX_VALUE);
+        var downloadInfo = download("a");
+        for (int i = 1; i <= 3; i++) {
+            downloadInfo.setProgress(i * 10);
+            sink.publish(downloadInfo);
+        }
+
+        sink.flush();
+        sink.flush();
+
+        assertThat(recorder.batches).singleElement().satisfies(batch -> {
+            assertThat(batch.sequence()).isEqualTo(1);
+            assertThat(batch.downloads())
+                .singleElement()
+                .extracting(DownloadInfo::getProgress)
+                .isEqualTo(30.0);
+        });
+    }
+
+    @Test
+    void flushesSnapshotsThatLaterChangesDoNotReach() {
+        var recorder = subscribe(Long.MAX_VALUE);
+        var downloadInfo = download("a");
+        sink.publish(downloadInfo);
+        sink.flush();
+
+        downloadInfo.setProgress(50);
+
+        assertThat(recorder.batches.getFirst().downloads().getFirst().getProgress()).isZero();
+    }
+
+    @Test
+    void conflatesWhatASlowSubscriberHasNotTakenYet() {
+        var fast = subscribe(Long.MAX_VALUE);
+        var slow = subscribe(0);
+        var a = download("a");
+        var b = download("b");
+        for (int i = 1; i <= 3; i++) {
+            a.setProgress(i * 10);
+            sink.publish(a);
+            if (i == 2) {
+                sink.publish(b);
+            }
+            sink.flush();
+        }
+
+        assertThat(fast.batches).hasSize(3);
+        assertThat(slow.batches).isEmpty();
+
+        slow.request(1);
+
+        assertThat(slow.batches).singleElement().satisfies(batch -> {
+            assertThat(batch.sequence()).isEqualTo(3);
+            assertThat(batch.downloads())
+                .extracting(DownloadInfo::getId, DownloadInfo::getProgress)
+                .containsExactly(
+                    tuple("a", 30.0),
+                    tuple("b", 0.0));
+        });
+        //the first two versions of a were replaced before the slow subscriber took them
+        assertThat(registry.counter("dload.events.conflated").count()).isEqualTo(2);
+    }
+
+    @Test
+    void catchesUpFromASequenceWithChangesAndRemovals() {
+        sink.publish(download("a"));
+        sink.publish(download("b"));
+        sink.flush();
+        var b = download("b");
+        b.setStatus(DownloadStatus.COMPLETED);
+        sink.publish(b);
+        sink.remove("a");
+        sink.publish(download("c"));
+        sink.flush();
+
+        var since = new Recorder();
+        sink.batchesSince(1).subscribe(since);
+        since.request(1);
+
+        assertThat(since.batches).singleElement().satisfies(batch -> {
+            assertThat(batch.full()).isFalse();
+            assertThat(batch.sequence()).isEqualTo(2);
+            assertThat(batch.downloads())
+                .extracting(DownloadInfo::getId)
+                .containsExactlyInAnyOrder("b", "c");
+            assertThat(batch.removed()).containsExactly("a");
+        });
+    }
+
+    @Test
+    void sendsTheFullStateForAnUnknownSequence() {
+        sink.publish(download("a"));
+        sink.publish(download("b"));
+        sink.flush();
+        sink.remove("a");
+        sink.flush();
+
+        for (var since : List.of(0L, 42L)) {
+            var recorder = new Recorder();
+            sink.batchesSince(since).subscribe(recorder);
+            recorder.request(1);
+
+            assertThat(recorder.batches).singleElement().satisfies(batch -> {
+                assertThat(batch.full()).isTrue();
+                assertThat(batch.downloads())
+                    .extracting(DownloadInfo::getId)
+                    .containsExactly("b");
+                assertThat(batch.removed()).isEmpty();
+            });
+        }
+    }
+
+    private Recorder subscribe(long request) {
+        var recorder = new Recorder();
+        sink.batches().subscribe(recorder);
+        if (request > 0) {
+            recorder.request(request);
+        }
+        return recorder;
+    }
+
+    private static DownloadInfo download(String id) {
+        return DownloadInfo
+            .builder()
+            .id(id)
+            .filename(id + ".bin")
+            .status(DownloadStatus.DOWNLOADING)
+            .build();
+    }
+
+    //requests only what the test asks for
+    private static class Recorder extends BaseSubscriber<DownloadBatch> {
+
+        private final List<DownloadBatch> batches = new ArrayList<>();
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+        }
+
+        @Override
+        protected void hookOnNext(DownloadBatch batch) {
+            batches.add(batch);
+        }
+    }
+}
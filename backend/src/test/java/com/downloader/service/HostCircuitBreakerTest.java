@@ -0,0 +1,75 @@
+package com.downloader.service;
+
+import com.downloader.TestProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HostCircuitBreakerTest {
+
+    //5 failures in a row open a host for 30s
+    private static final long OPEN_FOR_MS = 30_000;
+
+    private long now = 1_000_000;
+    private final HostCircuitBreaker breaker = new HostCircuitBreaker(
+        TestProperties.defaults(), new DownloadMetrics(new SimpleMeterRegistry()), () -> now);
+
+    @Test
+    void opensAfterTheThresholdOfFailuresInARow() {
+        fail("a", 4);
+        assertThat(breaker.allows("a")).isTrue();
+        assertThat(breaker.reopensAt("a")).isZero();
+
+        fail("a", 1);
+        assertThat(breaker.allows("a")).isFalse();
+        assertThat(breaker.reopensAt("a")).isEqualTo(now + OPEN_FOR_MS);
+        assertThat(breaker.allows("b")).isTrue();
+        assertThat(breaker.openCount()).isEqualTo(1);
+    }
+
+    @Test
+    void aSuccessStartsTheCountOver() {
+        fail("a", 4);
+        breaker.onSuccess("a");
+        fail("a", 4);
+
+        assertThat(breaker.allows("a")).isTrue();
+    }
+
+    @Test
+    void failuresWhileOpenDoNotExtendIt() {
+        fail("a", 5);
+        var reopensAt = breaker.reopensAt("a");
+
+        now += OPEN_FOR_MS / 2;
+        fail("a", 3);
+
+        assertThat(breaker.reopensAt("a")).isEqualTo(reopensAt);
+    }
+
+    @Test
+    void theFirstCallAfterOpenForDecides() {
+        fail("a", 5);
+        now += OPEN_FOR_MS;
+        assertThat(breaker.allows("a")).isTrue();
+        assertThat(breaker.openCount()).isZero();
+
+        //a single failure reopens it
+        fail("a", 1);
+        assertThat(breaker.allows("a")).isFalse();
+        assertThat(breaker.reopensAt("a")).isEqualTo(now + OPEN_FOR_MS);
+
+        //a success closes it, after which it takes the whole threshold again
+        now += OPEN_FOR_MS;
+        breaker.onSuccess("a");
+        fail("a", 4);
+        assertThat(breaker.allows("a")).isTrue();
+    }
+
+    private void fail(String host, int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.onFailure(host);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.downloader.service;
+
+import com.downloader.TestProperties;
+import com.downloader.entity.DownloadInfo;
+import com.downloader.task.retry.HttpStatusException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.*;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryEngineTest {
+
+    private final RetryEngine retryEngine = new RetryEngine(
+        TestProperties.defaults(), new DownloadMetrics(new SimpleMeterRegistry()));
+    private final DownloadInfo downloadInfo = DownloadInfo
+        .builder()
+        .id("a")
+        .filename("a.bin")
+        .build();
+
+    @Test
+    void backsOffExponentiallyWithEqualJitterUpToTheCap() {
+        //server errors: 4 attempts from 5s, times 3, capped at 2 minutes
+        var error = new HttpStatusException(502, Duration.ZERO);
+        long[] capped = {5_000, 15_000, 45_000, 120_000};
+
+        for (var cap : capped) {
+            var delay = retryEngine.nextDelay(downloadInfo, error, false).orElseThrow().toMillis();
+            assertThat(delay).isBetween(cap / 2, cap);
+        }
+        assertThat(downloadInfo.getAttempts()).isEqualTo(4);
+        assertThat(retryEngine.nextDelay(downloadInfo, error, false)).isEmpty();
+    }
+
+    @Test
+    void waitsAsLongAsRetryAfterAsksWhenThatIsLonger() {
+        var delay = retryEngine.nextDelay(downloadInfo, new HttpStatusException(429, Duration.ofMinutes(3)), false);
+        assertThat(delay).contains(Duration.ofMinutes(3));
+
+        //the backoff of the first rate limited attempt is 5 to 10s, it wins over a shorter Retry-After
+        downloadInfo.setAttempts(0);
+        var backoff = retryEngine.nextDelay(downloadInfo, new HttpStatusException(429, Duration.ofSeconds(1)), false);
+        assertThat(backoff.orElseThrow().toMillis()).isBetween(5_000L, 10_000L);
+    }
+
+    @Test
+    void progressStartsTheAttemptsOver() {
+        var error = new SocketTimeoutException("read timed out");
+        for (int i = 0; i < 5; i++) {
+            assertThat(retryEngine.nextDelay(downloadInfo, error, false)).isPresent();
+        }
+        assertThat(retryEngine.nextDelay(downloadInfo, error, false)).isEmpty();
+
+        assertThat(retryEngine.nextDelay(downloadInfo, error, true)).isPresent();
+        assertThat(downloadInfo.getAttempts()).isEqualTo(1);
+    }
+
+    @Test
+    void doesNotRetryPermanentFailures() {
+        assertThat(retryEngine.nextDelay(downloadInfo, new HttpStatusException(404, Duration.ZERO), false)).isEmpty();
+        assertThat(retryEngine.nextDelay(downloadInfo, new FileNotFoundException("a.bin"), false)).isEmpty();
+        assertThat(downloadInfo.getAttempts()).isZero();
+    }
+}
@@ -0,0 +1,105 @@
+package com.downloader.service;
+
+import com.downloader.entity.DownloadInfo;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferCoalescerTest {
+
+    private static final String URL = "http://host/file.iso";
+
+    private final TransferCoalescer coalescer = new TransferCoalescer();
+    private final DownloadInfo a = download("a");
+    private final DownloadInfo b = download("b");
+    private final DownloadInfo c = download("c");
+
+    @Test
+    void aKeyIsTheUrlWithItsVersionAndChecksum() {
+        var other = download("d");
+        other.setEtag("\"v2\"");
+
+        assertThat(TransferCoalescer.keyOf(b)).isEqualTo(TransferCoalescer.keyOf(a));
+        assertThat(TransferCoalescer.keyOf(other)).isNotEqualTo(TransferCoalescer.keyOf(a));
+        other.setEtag(a.getEtag());
+        other.setChecksum("sha256:" + "0".repeat(64));
+        assertThat(TransferCoalescer.keyOf(other)).isNotEqualTo(TransferCoalescer.keyOf(a));
+    }
+
+    //completed, failed and cancelled leaders alike hand their followers back to be settled
+    @Test
+    void followersAreHandedBackInJoinOrderWhenTheirLeaderSettles() {
+        admit(a);
+        admit(b);
+        admit(c);
+        assertThat(coalescer.followed("b")).contains("a");
+        assertThat(coalescer.followers("a")).containsExactly(b, c);
+
+        assertThat(coalescer.release("a")).containsExactly(b, c);
+
+        assertThat(coalescer.followed("b")).isEmpty();
+        assertThat(coalescer.followers("a")).isEmpty();
+        assertThat(coalescer.leaderOf(TransferCoalescer.keyOf(a))).isEmpty();
+        assertThat(coalescer.release("a")).isEmpty();
+    }
+
+    @Test
+    void theFirstFollowerOfACancelledLeaderTakesTheTransferOver() {
+        admit(a);
+        admit(b);
+        admit(c);
+
+        coalescer.release("a").forEach(this::admit);
+
+        assertThat(coalescer.leaderOf(TransferCoalescer.keyOf(a))).contains("b");
+        assertThat(coalescer.followers("b")).containsExactly(c);
+        assertThat(coalescer.followed("c")).contains("b");
+    }
+
+    @Test
+    void aCancelledFollowerStopsFollowing() {
+        admit(a);
+        admit(b);
+        admit(c);
+
+        assertThat(coalescer.unfollow("b")).isTrue();
+        assertThat(coalescer.unfollow("b")).isFalse();
+        assertThat(coalescer.followers("a")).containsExactly(c);
+
+        assertThat(coalescer.unfollow("c")).isTrue();
+        assertThat(coalescer.release("a")).isEmpty();
+        //the leader itself follows nothing
+        assertThat(coalescer.unfollow("a")).isFalse();
+    }
+
+    @Test
+    void aNewLeaderKeepsTheFollowersOfTheOldOneApart() {
+        admit(a);
+        admit(b);
+        //a was paused and a later download of the same file leads now
+        coalescer.lead(TransferCoalescer.keyOf(c), "c");
+
+        assertThat(coalescer.release("a")).containsExactly(b);
+        assertThat(coalescer.leaderOf(TransferCoalescer.keyOf(c))).contains("c");
+    }
+
+    //what DownloadService does for a download that is not reused from the cache
+    private void admit(DownloadInfo downloadInfo) {
+        var key = TransferCoalescer.keyOf(downloadInfo);
+        coalescer
+            .leaderOf(key)
+            .ifPresentOrElse(
+                leader -> coalescer.follow(leader, downloadInfo),
+                () -> coalescer.lead(key, downloadInfo.getId())
+            );
+    }
+
+    private static DownloadInfo download(String id) {
+        return DownloadInfo
+            .builder()
+            .id(id)
+            .url(URL)
+            .etag("\"v1\"")
+            .build();
+    }
+}
@@ -0,0 +1,146 @@
+package com.downloader.store;
+
+import com.downloader.TestProperties;
+import com.downloader.config.DownloaderProperties;
+import com.downloader.entity.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownloadStateStoreTest {
+
+    private static final String JOURNAL_FILE = "downloads.journal";
+    private static final String SNAPSHOT_FILE = "downloads.snapshot.json";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysTheJournalWithTheFieldsHiddenFromTheApi() {
+        var store = open(1000);
+        var downloadInfo = download("a", DownloadStatus.DOWNLOADING);
+        downloadInfo.setEtag("\"v1\"");
+        downloadInfo.setAttempts(2);
+        store.record(downloadInfo);
+        store.record(download("b", DownloadStatus.QUEUED));
+        store.close();
+
+        var loaded = byId(reload(1000));
+
+        assertThat(loaded).containsOnlyKeys("a", "b");
+        assertThat(loaded.get("a").getStatus()).isEqualTo(DownloadStatus.DOWNLOADING);
+        assertThat(loaded.get("a").getUrl()).isEqualTo("http://one/a");
+        assertThat(loaded.get("a").getEtag()).isEqualTo("\"v1\"");
+        assertThat(loaded.get("a").getAttempts()).isEqualTo(2);
+    }
+
+    @Test
+    void writesOneEntryPerDownloadAndFlush() throws IOException {
+        var store = open(1000);
+        var downloadInfo = download("a", DownloadStatus.QUEUED);
+        store.record(downloadInfo);
+        downloadInfo.setStatus(DownloadStatus.DOWNLOADING);
+        store.record(downloadInfo);
+        downloadInfo.setStatus(DownloadStatus.COMPLETED);
+        store.record(downloadInfo);
+        store.close();
+
+        assertThat(Files.readAllLines(dir.resolve(JOURNAL_FILE))).hasSize(1);
+        assertThat(reload(1000))
+            .singleElement()
+            .extracting(DownloadInfo::getStatus)
+            .isEqualTo(DownloadStatus.COMPLETED);
+    }
+
+    @Test
+    void replaysRemovals() {
+        var store = open(1000);
+        store.record(download("a", DownloadStatus.QUEUED));
+        store.record(download("b", DownloadStatus.QUEUED));
+        store.close();
+
+        store = open(1000);
+        store.remove("a");
+        store.close();
+
+        assertThat(byId(reload(1000))).containsOnlyKeys("b");
+    }
+
+    @Test
+    void skipsATornLastLine() throws IOException {
+        var store = open(1000);
+        store.record(download("a", DownloadStatus.PAUSED));
+        store.close();
+
+        Files.writeString(dir.resolve(JOURNAL_FILE), "{\"id\":\"b\",\"download\":{\"id\":\"b\",\"sta",
+            StandardOpenOption.APPEND);
+
+        assertThat(byId(reload(1000))).containsOnlyKeys("a");
+    }
+
+    @Test
+    void compactsTheJournalIntoASnapshot() throws IOException {
+        var store = open(3);
+        for (var id : List.of("a", "b", "c")) {
+            store.record(download(id, DownloadStatus.QUEUED));
+        }
+        store.close();
+
+        assertThat(dir.resolve(SNAPSHOT_FILE)).exists();
+        assertThat(dir.resolve(JOURNAL_FILE)).isEmptyFile();
+
+        //later entries are replayed over the snapshot
+        store = open(3);
+        var changed = download("b", DownloadStatus.COMPLETED);
+        store.record(changed);
+        store.remove("c");
+        store.close();
+
+        assertThat(Files.readAllLines(dir.resolve(JOURNAL_FILE))).hasSize(2);
+        var loaded = byId(reload(3));
+        assertThat(loaded).containsOnlyKeys("a", "b");
+        assertThat(loaded.get("b").getStatus()).isEqualTo(DownloadStatus.COMPLETED);
+    }
+
+    //loaded like the service does on startup, the flush interval is long enough that only close() flushes
+    private DownloadStateStore open(int compactAfter) {
+        var store = create(compactAfter);
+        store.load();
+        return store;
+    }
+
+    private List<DownloadInfo> reload(int compactAfter) {
+        var store = create(compactAfter);
+        try {
+            return store.load();
+        } finally {
+            store.close();
+        }
+    }
+
+    private DownloadStateStore create(int compactAfter) {
+        return new DownloadStateStore(
+            TestProperties.withState(new DownloaderProperties.State(Duration.ofHours(1), compactAfter)), dir);
+    }
+
+    private static Map<String, DownloadInfo> byId(List<DownloadInfo> downloads) {
+        var byId = new HashMap<String, DownloadInfo>();
+        downloads.forEach(info -> byId.put(info.getId(), info));
+        return byId;
+    }
+
+    private static DownloadInfo download(String id, DownloadStatus status) {
+        return DownloadInfo
+            .builder()
+            .id(id)
+            .url("http://one/" + id)
+            .filename(id + ".bin")
+            .status(status)
+            .build();
+    }
+}
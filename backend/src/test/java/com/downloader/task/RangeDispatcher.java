@@ -0,0 +1,55 @@
+package com.downloader.task;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import okhttp3.mockwebserver.*;
+import okio.Buffer;
+
+//serves one file, answering a single byte range with a 206 unless told to ignore ranges, and records the ranges asked for
+public class RangeDispatcher extends Dispatcher {
+
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private volatile byte[] body;
+    private volatile String etag;
+    private volatile boolean ignoreRange;
+
+    public RangeDispatcher(byte[] body) {
+        this.body = body;
+    }
+
+    //the file as a new version, with the validator it is served with
+    public void serve(byte[] body, String etag) {
+        this.body = body;
+        this.etag = etag;
+    }
+
+    public void ignoreRange() {
+        this.ignoreRange = true;
+    }
+
+    //the Range headers of the requests so far, in order
+    public List<String> ranges() {
+        return List.copyOf(ranges);
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        var content = body;
+        var response = new MockResponse();
+        if (etag != null) {
+            response.setHeader("ETag", etag);
+        }
+        var range = request.getHeader("Range");
+        if (range == null || ignoreRange) {
+            return response.setBody(new Buffer().write(content));
+        }
+        ranges.add(range);
+        var bounds = range.substring("bytes=".length()).split("-");
+        var first = Integer.parseInt(bounds[0]);
+        var last = bounds.length > 1 ? Math.min(Integer.parseInt(bounds[1]), content.length - 1) : content.length - 1;
+        return response
+            .setResponseCode(206)
+            .setHeader("Content-Range", "bytes %d-%d/%d".formatted(first, last, content.length))
+            .setBody(new Buffer().write(content, first, last - first + 1));
+    }
+}
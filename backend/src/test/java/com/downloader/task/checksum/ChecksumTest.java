@@ -0,0 +1,45 @@
+package com.downloader.task.checksum;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ChecksumTest {
+
+    private static final String SHA256 = "9F86D081884C7D659A2FEAA0C55AD015A3BF4F1B2B0B822CD15D6C15B0F00A08";
+    private static final String SHA1 = "a94a8fe5ccb19ba61c4c0873d391e987982fbbd3";
+    private static final String MD5 = "098f6bcd4621d373cade4e832627b4f6";
+
+    @Test
+    void aBareDigestIsKnownByItsLength() {
+        assertThat(Checksum.parse(SHA256)).isEqualTo(new Checksum(ChecksumAlgorithm.SHA256, SHA256.toLowerCase()));
+        assertThat(Checksum.parse(SHA1).algorithm()).isEqualTo(ChecksumAlgorithm.SHA1);
+        assertThat(Checksum.parse("  " + MD5 + "\n").algorithm()).isEqualTo(ChecksumAlgorithm.MD5);
+    }
+
+    @Test
+    void aPrefixNamesTheAlgorithm() {
+        assertThat(Checksum.parse("SHA-256:" + SHA256).algorithm()).isEqualTo(ChecksumAlgorithm.SHA256);
+        assertThat(Checksum.parse("sha1=" + SHA1).algorithm()).isEqualTo(ChecksumAlgorithm.SHA1);
+        assertThat(Checksum.parse("md5 : " + MD5)).hasToString("md5:" + MD5);
+    }
+
+    @Test
+    void rejectsWhatIsNotASupportedDigest() {
+        assertThatThrownBy(() -> Checksum.parse("abc"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Unsupported checksum: abc");
+        assertThatThrownBy(() -> Checksum.parse("sha512:" + SHA256))
+            .hasMessage("Unsupported checksum: sha512:" + SHA256);
+        assertThatThrownBy(() -> Checksum.parse("sha256:not-hex"))
+            .hasMessage("Invalid checksum: sha256:not-hex");
+    }
+
+    @Test
+    void matchesTheDigestOfTheContent() {
+        var checksum = Checksum.parse(SHA256);
+
+        assertThat(checksum.matches(ChecksumAlgorithm.SHA256.newDigest().digest("test".getBytes()))).isTrue();
+        assertThat(checksum.matches(ChecksumAlgorithm.SHA256.newDigest().digest("tests".getBytes()))).isFalse();
+    }
+}
@@ -0,0 +1,99 @@
+package com.downloader.task.checksum;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.*;
+
+class PrefixDigestTest {
+
+    @TempDir
+    Path dir;
+
+    private final byte[] content = random(3 * 1024 * 1024 + 77);
+
+    @Test
+    void resumedBytesReadBackThenStreamedHashLikeOnePass() throws IOException {
+        var resumedAt = 1024 * 1024 + 5;
+        var file = Files.write(dir.resolve("file.part"), Arrays.copyOf(content, resumedAt));
+        var digest = new PrefixDigest(sha256());
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            digest.catchUp(channel, resumedAt);
+        }
+        assertThat(digest.getOffset()).isEqualTo(resumedAt);
+        for (int off = resumedAt; off < content.length; off += 8192) {
+            var len = Math.min(8192, content.length - off);
+            if (off % 2 == 0) {
+                digest.update(off, content, off, len);
+            } else {
+                digest.update(off, ByteBuffer.wrap(content, off, len));
+            }
+        }
+
+        Files.write(file, content);
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThatCode(() -> digest.verify(channel, content.length)).doesNotThrowAnyException();
+        }
+    }
+
+    @Test
+    void bytesAheadOfTheOffsetAreReadBackLater() throws IOException {
+        var file = Files.write(dir.resolve("file.part"), content);
+        var digest = new PrefixDigest(sha256());
+
+        //a later segment arrives first and is skipped, an overlapping write only adds its new part
+        digest.update(2000, content, 2000, 1000);
+        assertThat(digest.getOffset()).isZero();
+        digest.update(0, content, 0, 1500);
+        digest.update(1000, content, 1000, 1500);
+        assertThat(digest.getOffset()).isEqualTo(2500);
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThatCode(() -> digest.verify(channel, content.length)).doesNotThrowAnyException();
+        }
+    }
+
+    @Test
+    void aMismatchTellsBothDigests() throws IOException {
+        var file = Files.write(dir.resolve("file.part"), content);
+        var expected = "0".repeat(64);
+        var digest = new PrefixDigest(Checksum.parse(expected));
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThatThrownBy(() -> digest.verify(channel, content.length))
+                .isInstanceOf(ChecksumMismatchException.class)
+                .hasMessage("Checksum mismatch: expected sha256 %s but was %s", expected, hex(content));
+        }
+    }
+
+    @Test
+    void aFileShorterThanTheLimitFails() throws IOException {
+        var file = Files.write(dir.resolve("file.part"), Arrays.copyOf(content, 100));
+        var digest = new PrefixDigest(sha256());
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThatThrownBy(() -> digest.catchUp(channel, 200))
+                .hasMessage("Unexpected end of file at 100 while verifying");
+        }
+    }
+
+    private Checksum sha256() {
+        return Checksum.parse("sha256:" + hex(content));
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(ChecksumAlgorithm.SHA256.newDigest().digest(bytes));
+    }
+
+    private static byte[] random(int size) {
+        var bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
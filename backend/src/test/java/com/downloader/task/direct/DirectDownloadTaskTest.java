@@ -0,0 +1,195 @@
+package com.downloader.task.direct;
+
+import com.downloader.TestProperties;
+import com.downloader.entity.*;
+import com.downloader.service.*;
+import com.downloader.task.RangeDispatcher;
+import com.downloader.task.checksum.ChecksumAlgorithm;
+import com.downloader.task.estimate.SpeedEstimator;
+import com.downloader.task.io.DirectBufferPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.*;
+import okio.Buffer;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DirectDownloadTaskTest {
+
+    private static final int RESUMED = 30_000;
+
+    @TempDir
+    Path dir;
+
+    private final byte[] content = random(100_000);
+    private final RangeDispatcher dispatcher = new RangeDispatcher(content);
+    private final MockWebServer server = new MockWebServer();
+
+    @BeforeEach
+    void start() throws IOException {
+        server.setDispatcher(dispatcher);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void aMatchingPartialResponseIsAppended() throws Exception {
+        var download = resumed("\"v1\"");
+        dispatcher.serve(content, "\"v1\"");
+
+        task(download).run();
+
+        var request = server.takeRequest();
+        assertThat(request.getHeader("Range")).isEqualTo("bytes=%d-".formatted(RESUMED));
+        assertThat(request.getHeader("If-Range")).isEqualTo("\"v1\"");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat(download.getStatus()).isEqualTo(DownloadStatus.COMPLETED);
+        assertThat(Files.readAllBytes(dir.resolve("file.bin"))).isEqualTo(content);
+    }
+
+    @Test
+    void aWeakEtagFallsBackToTheModificationDate() throws Exception {
+        var download = resumed("W/\"v1\"");
+        download.setLastModified("Wed, 14 Oct 2026 10:00:00 GMT");
+
+        task(download).run();
+
+        assertThat(server.takeRequest().getHeader("If-Range")).isEqualTo("Wed, 14 Oct 2026 10:00:00 GMT");
+        assertThat(Files.readAllBytes(dir.resolve("file.bin"))).isEqualTo(content);
+    }
+
+    @Test
+    void aServerThatIgnoresTheRangeStartsOver() throws IOException {
+        var download = resumed("\"v1\"");
+        dispatcher.serve(content, "\"v1\"");
+        dispatcher.ignoreRange();
+
+        task(download).run();
+
+        //the whole file came with the 200, the part file was cut back instead of appended to
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat(download.getStatus()).isEqualTo(DownloadStatus.COMPLETED);
+        assertThat(Files.readAllBytes(dir.resolve("file.bin"))).isEqualTo(content);
+    }
+
+    @Test
+    void aPartialResponseOfAnotherVersionStartsOver() throws Exception {
+        var changed = random(120_000);
+        var download = resumed("\"v1\"");
+        //a server that does not evaluate If-Range answers the range of whatever it has now
+        dispatcher.serve(changed, "\"v2\"");
+
+        task(download).run();
+
+        assertThat(server.takeRequest().getHeader("Range")).isEqualTo("bytes=%d-".formatted(RESUMED));
+        assertThat(server.takeRequest().getHeader("Range")).isNull();
+        assertThat(download.getStatus()).isEqualTo(DownloadStatus.COMPLETED);
+        assertThat(download.getEtag()).isEqualTo("\"v2\"");
+        assertThat(Files.readAllBytes(dir.resolve("file.bin"))).isEqualTo(changed);
+    }
+
+    @Test
+    void aPartialResponseAtAnotherOffsetStartsOver() throws Exception {
+        var download = resumed(null);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return request.getHeader("Range") == null
+                    ? new MockResponse().setBody(new Buffer().write(content))
+                    : new MockResponse()
+                        .setResponseCode(206)
+                        .setHeader("Content-Range", "bytes 0-%d/%d".formatted(content.length - 1, content.length))
+                        .setBody(new Buffer().write(content));
+            }
+        });
+
+        task(download).run();
+
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        assertThat(Files.readAllBytes(dir.resolve("file.bin"))).isEqualTo(content);
+    }
+
+    @Test
+    void verifiesTheChecksumOfTheDownload() throws IOException {
+        var download = download("sha256:" + sha256(content));
+
+        task(download).run();
+
+        assertThat(download.getStatus()).isEqualTo(DownloadStatus.COMPLETED);
+        assertThat(Files.readAllBytes(dir.resolve("file.bin"))).isEqualTo(content);
+    }
+
+    @Test
+    void aChecksumMismatchFailsTheDownload() {
+        var expected = "0".repeat(64);
+        var download = download("sha256:" + expected);
+
+        task(download).run();
+
+        assertThat(download.getStatus()).isEqualTo(DownloadStatus.FAILED);
+        assertThat(download.getError())
+            .isEqualTo("Checksum mismatch: expected sha256 %s but was %s".formatted(expected, sha256(content)));
+        assertThat(dir.resolve("file.bin")).doesNotExist();
+        assertThat(dir.resolve("file.bin.part")).doesNotExist();
+    }
+
+    //an earlier attempt wrote the first bytes of the file
+    private DownloadInfo resumed(String etag) throws IOException {
+        Files.write(dir.resolve("file.bin.part"), Arrays.copyOf(content, RESUMED));
+        var download = download(null);
+        download.setTotalSize(content.length);
+        download.setDownloadedSize(RESUMED);
+        download.setEtag(etag);
+        return download;
+    }
+
+    private DownloadInfo download(String checksum) {
+        return DownloadInfo
+            .builder()
+            .id("direct")
+            .url(server.url("/file.bin").toString())
+            .filename("file.bin")
+            .filePath(dir.resolve("file.bin").toString())
+            .outputPath(dir.toString())
+            .status(DownloadStatus.QUEUED)
+            .checksum(checksum)
+            .build();
+    }
+
+    private DirectDownloadTask task(DownloadInfo download) {
+        var properties = TestProperties.defaults();
+        var metrics = new DownloadMetrics(new SimpleMeterRegistry());
+        return DirectDownloadTask
+            .builder()
+            .downloadInfo(download)
+            .httpClient(new OkHttpClient())
+            .downloadSink(new DownloadSink(properties, metrics))
+            .bandwidthLimiter(new BandwidthLimiter(properties))
+            .metrics(metrics)
+            .speedEstimator(SpeedEstimator.of(properties.progress()))
+            .retryEngine(new RetryEngine(properties, metrics))
+            .ioMode(IoMode.STREAM)
+            .bufferPool(new DirectBufferPool(4096, 65536))
+            .diskWriteScheduler(new DiskWriteScheduler(properties, new DirectBufferPool(4096, 65536), metrics))
+            .build();
+    }
+
+    private static String sha256(byte[] bytes) {
+        return HexFormat.of().formatHex(ChecksumAlgorithm.SHA256.newDigest().digest(bytes));
+    }
+
+    private static byte[] random(int size) {
+        var bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,121 @@
+package com.downloader.task.estimate;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class EwmaSpeedEstimatorTest {
+
+    private static final long INTERVAL_MS = 400;
+    private static final long MB = 1_000_000;
+
+    private final Trace trace = new Trace();
+
+    @Test
+    void firstMeasuredRateSeedsTheAverages() {
+        var estimator = new EwmaSpeedEstimator(2000, 10000);
+
+        trace.sample(estimator, MB);
+        assertThat(estimator.getBytesPerSecond()).isZero();
+        trace.sample(estimator, MB);
+        assertThat(estimator.getBytesPerSecond()).isEqualTo(MB);
+    }
+
+    @Test
+    void followsTheFastAverageOnceAStepMovesItPastTheThreshold() {
+        var estimator = new EwmaSpeedEstimator(2000, 10000);
+        var fast = new EwmaSpeedEstimator(2000);
+        var slow = new EwmaSpeedEstimator(10000);
+        trace.run(MB, 20_000, estimator, fast, slow);
+
+        var stepAt = trace.time;
+        var switched = -1L;
+        while (trace.time - stepAt < 60_000) {
+            trace.sample(2 * MB, estimator, fast, slow);
+            var elapsed = trace.time - stepAt;
+            var reported = estimator.getBytesPerSecond();
+            if (switched < 0 && reported == fast.getBytesPerSecond() && reported != slow.getBytesPerSecond()) {
+                switched = elapsed;
+            }
+            //never beyond the new rate nor back under the old one
+            assertThat(reported).isBetween(MB, 2 * MB);
+            if (elapsed >= 2000) {
+                assertThat(reported).isCloseTo(2 * MB, within(2 * MB / 4));
+            }
+            if (elapsed >= 30_000) {
+                assertThat(reported).isCloseTo(2 * MB, within(2 * MB / 20));
+            }
+        }
+        //the fast average is 30% off the slow one three samples after the step, the slow one alone needs 12s
+        assertThat(switched).isEqualTo(3 * INTERVAL_MS);
+    }
+
+    @Test
+    void staysOnTheSlowAverageForChangesBelowTheThreshold() {
+        var estimator = new EwmaSpeedEstimator(2000, 10000);
+        var slow = new EwmaSpeedEstimator(10000);
+        trace.run(MB, 20_000, estimator, slow);
+
+        var stepAt = trace.time;
+        while (trace.time - stepAt < 30_000) {
+            trace.sample(MB * 11 / 10, estimator, slow);
+            assertThat(estimator.getBytesPerSecond()).isEqualTo(slow.getBytesPerSecond());
+        }
+    }
+
+    @Test
+    void smoothsABurstyTrace() {
+        var estimator = new EwmaSpeedEstimator(2000, 10000);
+
+        //4 MB/s and nothing in turns, 2 MB/s on average
+        while (trace.time < 120_000) {
+            trace.sample(estimator, trace.samples % 2 == 0 ? 4 * MB : 0);
+            if (trace.time >= 30_000) {
+                assertThat(estimator.getBytesPerSecond()).isCloseTo(2 * MB, within(2 * MB / 10));
+            }
+        }
+    }
+
+    @Test
+    void resetStartsFromTheNextSample() {
+        var estimator = new EwmaSpeedEstimator(2000, 10000);
+        trace.run(MB, 10_000, estimator);
+
+        estimator.reset();
+        assertThat(estimator.getBytesPerSecond()).isZero();
+        trace.sample(estimator, 3 * MB);
+        trace.sample(estimator, 3 * MB);
+        assertThat(estimator.getBytesPerSecond()).isEqualTo(3 * MB);
+    }
+
+    //samples of the downloaded size every INTERVAL_MS, as the progress sampler feeds them
+    static class Trace {
+
+        long time;
+        long size;
+        int samples;
+
+        void sample(SpeedEstimator estimator, long bytesPerSecond) {
+            sample(bytesPerSecond, estimator);
+        }
+
+        void sample(long bytesPerSecond, SpeedEstimator... estimators) {
+            if (samples > 0) {
+                time += INTERVAL_MS;
+                size += bytesPerSecond * INTERVAL_MS / 1000;
+            }
+            samples++;
+            for (var estimator : estimators) {
+                estimator.record(time, size);
+            }
+        }
+
+        void run(long bytesPerSecond, long millis, SpeedEstimator... estimators) {
+            var end = time + millis;
+            while (time < end) {
+                sample(bytesPerSecond, estimators);
+            }
+        }
+    }
+}
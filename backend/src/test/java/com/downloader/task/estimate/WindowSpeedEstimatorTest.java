@@ -0,0 +1,78 @@
+package com.downloader.task.estimate;
+
+import com.downloader.task.estimate.EwmaSpeedEstimatorTest.Trace;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class WindowSpeedEstimatorTest {
+
+    private static final long WINDOW_MS = 10_000;
+    private static final long MB = 1_000_000;
+
+    private final Trace trace = new Trace();
+    private final WindowSpeedEstimator estimator = new WindowSpeedEstimator(WINDOW_MS, 400);
+
+    @Test
+    void needsTwoSamples() {
+        assertThat(estimator.getBytesPerSecond()).isZero();
+        trace.sample(estimator, MB);
+        assertThat(estimator.getBytesPerSecond()).isZero();
+        trace.sample(estimator, MB);
+        assertThat(estimator.getBytesPerSecond()).isEqualTo(MB);
+    }
+
+    @Test
+    void reportsTheNewRateOnceTheWindowHasPassedAStep() {
+        trace.run(MB, 30_000, estimator);
+
+        var stepAt = trace.time;
+        trace.run(2 * MB, WINDOW_MS / 2, estimator);
+        //half of the window at each rate, give or take one of its 25 intervals
+        assertThat(estimator.getBytesPerSecond()).isCloseTo(MB * 3 / 2, within(MB / 25));
+
+        while (trace.time - stepAt < WINDOW_MS) {
+            assertThat(estimator.getBytesPerSecond()).isBetween(MB, 2 * MB - 1);
+            trace.sample(estimator, 2 * MB);
+        }
+        assertThat(estimator.getBytesPerSecond()).isEqualTo(2 * MB);
+    }
+
+    @Test
+    void keepsOnlyTheLastWindowOnceTheRingWrapsAround() {
+        //26 slots for 10s at 400ms, written round almost four times with a rate that changes every sample
+        var sizes = new long[100];
+        for (int i = 0; i < sizes.length; i++) {
+            var bytesPerSecond = (i % 7 + 1) * MB;
+            trace.sample(estimator, bytesPerSecond);
+            sizes[i] = trace.size;
+        }
+
+        assertThat(estimator.getBytesPerSecond()).isEqualTo((sizes[99] - sizes[99 - 25]) * 1000 / WINDOW_MS);
+    }
+
+    @Test
+    void averagesABurstyTraceOverTheWindow() {
+        //4 MB/s and nothing in turns, 2 MB/s on average
+        while (trace.time < 60_000) {
+            trace.sample(estimator, trace.samples % 2 == 0 ? 4 * MB : 0);
+            if (trace.time >= WINDOW_MS) {
+                //25 intervals hold 12 or 13 bursts
+                assertThat(estimator.getBytesPerSecond()).isCloseTo(2 * MB, within(2 * MB / 25));
+            }
+        }
+    }
+
+    @Test
+    void resetStartsFromTheNextSample() {
+        trace.run(MB, 20_000, estimator);
+
+        estimator.reset();
+        assertThat(estimator.getBytesPerSecond()).isZero();
+        trace.sample(estimator, 3 * MB);
+        assertThat(estimator.getBytesPerSecond()).isZero();
+        trace.sample(estimator, 3 * MB);
+        assertThat(estimator.getBytesPerSecond()).isEqualTo(3 * MB);
+    }
+}
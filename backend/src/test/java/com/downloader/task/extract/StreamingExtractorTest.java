@@ -0,0 +1,173 @@
+package com.downloader.task.extract;
+
+import com.downloader.entity.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Random;
+import org.apache.commons.compress.archivers.tar.*;
+import org.apache.commons.compress.archivers.zip.*;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamingExtractorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void extractsTarGzFedInSmallPieces() throws IOException {
+        var large = new byte[300 * 1024];
+        new Random(7).nextBytes(large);
+        var archive = tarGz(tar -> {
+            addFile(tar, "bundle/a.txt", "alpha".getBytes(StandardCharsets.UTF_8));
+            addFile(tar, "bundle/nested/large.bin", large);
+        });
+        var downloadInfo = download("bundle.tar.gz", ArchiveFormat.TAR_GZ);
+
+        try (var extractor = StreamingExtractor.start(downloadInfo, () -> { })) {
+            for (int off = 0; off < archive.length; off += 1000) {
+                extractor.feed(archive, off, Math.min(1000, archive.length - off));
+            }
+            extractor.finish();
+        }
+
+        var target = dir.resolve("bundle");
+        assertThat(target.resolve("bundle/a.txt")).hasContent("alpha");
+        assertThat(Files.readAllBytes(target.resolve("bundle/nested/large.bin"))).isEqualTo(large);
+        assertThat(downloadInfo.getExtractedFiles()).isEqualTo(2);
+        assertThat(downloadInfo.getExtractedSize()).isEqualTo(archive.length);
+        assertThat(dir.resolve("bundle.tar.gz.extracting")).doesNotExist();
+    }
+
+    @Test
+    void extractsZipFedAsBuffers() throws IOException {
+        var archive = zip(zip -> addFile(zip, "b.txt", "beta".getBytes(StandardCharsets.UTF_8)));
+        var downloadInfo = download("bundle.zip", ArchiveFormat.ZIP);
+
+        try (var extractor = StreamingExtractor.start(downloadInfo, () -> { })) {
+            var buffer = ByteBuffer.wrap(archive);
+            extractor.feed(buffer);
+            assertThat(buffer.position()).isZero();
+            extractor.finish();
+        }
+
+        assertThat(dir.resolve("bundle/b.txt")).hasContent("beta");
+    }
+
+    @Test
+    void leavesAnExistingDirectoryAlone() throws IOException {
+        var existing = Files.createDirectories(dir.resolve("bundle")).resolve("mine.txt");
+        Files.writeString(existing, "keep");
+        Files.createDirectories(dir.resolve("bundle (1)"));
+        var archive = tarGz(tar -> addFile(tar, "a.txt", "alpha".getBytes(StandardCharsets.UTF_8)));
+
+        extract(download("bundle.tar.gz", ArchiveFormat.TAR_GZ), archive);
+
+        assertThat(existing).hasContent("keep");
+        assertThat(dir.resolve("bundle/a.txt")).doesNotExist();
+        assertThat(dir.resolve("bundle (1)")).isEmptyDirectory();
+        assertThat(dir.resolve("bundle (2)/a.txt")).hasContent("alpha");
+    }
+
+    @Test
+    void rejectsEntriesEscapingTheTarget() throws IOException {
+        var archive = tarGz(tar -> addFile(tar, "../evil.txt", "evil".getBytes(StandardCharsets.UTF_8)));
+        var downloadInfo = download("bundle.tar.gz", ArchiveFormat.TAR_GZ);
+
+        assertThatThrownBy(() -> extract(downloadInfo, archive))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("outside of the extraction directory");
+        assertThat(dir.resolve("evil.txt")).doesNotExist();
+        assertThat(dir.getParent().resolve("evil.txt")).doesNotExist();
+        assertThat(dir.resolve("bundle")).doesNotExist();
+        assertThat(dir.resolve("bundle.tar.gz.extracting")).doesNotExist();
+    }
+
+    @Test
+    void skipsLinks() throws IOException {
+        var tarArchive = tarGz(tar -> {
+            var link = new TarArchiveEntry("passwd", TarConstants.LF_SYMLINK);
+            link.setLinkName("/etc/passwd");
+            tar.putArchiveEntry(link);
+            tar.closeArchiveEntry();
+            addFile(tar, "a.txt", "alpha".getBytes(StandardCharsets.UTF_8));
+        });
+        var zipArchive = zip(zip -> {
+            var link = new ZipArchiveEntry("passwd");
+            link.setUnixMode(UnixStat.LINK_FLAG | 0777);
+            zip.putArchiveEntry(link);
+            zip.write("/etc/passwd".getBytes(StandardCharsets.UTF_8));
+            zip.closeArchiveEntry();
+        });
+
+        var tarDownload = download("links.tar.gz", ArchiveFormat.TAR_GZ);
+        extract(tarDownload, tarArchive);
+        extract(download("links.zip", ArchiveFormat.ZIP), zipArchive);
+
+        assertThat(dir.resolve("links/a.txt")).hasContent("alpha");
+        assertThat(tarDownload.getExtractedFiles()).isEqualTo(1);
+        assertThat(dir.resolve("links/passwd")).doesNotExist();
+        //a streamed zip does not tell links apart, it is written as a plain file and never followed
+        assertThat(dir.resolve("links (1)/passwd"))
+            .isRegularFile()
+            .hasContent("/etc/passwd");
+    }
+
+    private void extract(DownloadInfo downloadInfo, byte[] archive) throws IOException {
+        try (var extractor = StreamingExtractor.start(downloadInfo, () -> { })) {
+            extractor.feed(archive, 0, archive.length);
+            extractor.finish();
+        }
+    }
+
+    private DownloadInfo download(String filename, ArchiveFormat format) {
+        return DownloadInfo
+            .builder()
+            .id(filename)
+            .filename(filename)
+            .outputPath(dir.toString())
+            .filePath(dir.resolve(filename).toString())
+            .extract(format)
+            .build();
+    }
+
+    private interface Writer<T> {
+        void write(T archive) throws IOException;
+    }
+
+    private static byte[] tarGz(Writer<TarArchiveOutputStream> writer) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(bytes))) {
+            writer.write(tar);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zip(Writer<ZipArchiveOutputStream> writer) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipArchiveOutputStream(bytes)) {
+            writer.write(zip);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void addFile(TarArchiveOutputStream tar, String name, byte[] content) throws IOException {
+        var entry = new TarArchiveEntry(name);
+        entry.setSize(content.length);
+        tar.putArchiveEntry(entry);
+        tar.write(content);
+        tar.closeArchiveEntry();
+    }
+
+    private static void addFile(ZipArchiveOutputStream zip, String name, byte[] content) throws IOException {
+        zip.putArchiveEntry(new ZipArchiveEntry(name));
+        zip.write(content);
+        zip.closeArchiveEntry();
+    }
+}
@@ -0,0 +1,139 @@
+package com.downloader.task.io;
+
+import com.downloader.service.DownloadMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.*;
+
+class BlockWriterTest {
+
+    private static final int BLOCK = 4096;
+
+    @TempDir
+    Path dir;
+
+    private final DirectBufferPool bufferPool = new DirectBufferPool(BLOCK, BLOCK);
+    private final DownloadMetrics metrics = new DownloadMetrics(new SimpleMeterRegistry());
+
+    @Test
+    void onlyWholeBlocksReachTheFileUntilClosed() throws IOException {
+        var file = dir.resolve("part");
+        var bytes = random(BLOCK * 5 / 2);
+
+        try (var writer = writer(file, 0, new VolumeBudget(0))) {
+            //small writes that straddle block boundaries
+            for (int off = 0; off < bytes.length; off += 1000) {
+                writer.write(bytes, off, Math.min(1000, bytes.length - off));
+            }
+            assertThat(writer.getPosition()).isEqualTo(bytes.length);
+            assertThat(Files.size(file)).isEqualTo(2 * BLOCK);
+        }
+
+        assertThat(Files.readAllBytes(file)).isEqualTo(bytes);
+    }
+
+    @Test
+    void closeCutsAPreallocatedFileBackToTheBytesWritten() throws IOException {
+        var file = dir.resolve("part");
+        try (var raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(10L * BLOCK);
+        }
+        var bytes = random(BLOCK + 100);
+
+        try (var writer = writer(file, 0, new VolumeBudget(0))) {
+            writer.write(ByteBuffer.wrap(bytes));
+        }
+
+        assertThat(Files.size(file)).isEqualTo(bytes.length);
+        assertThat(Files.readAllBytes(file)).isEqualTo(bytes);
+    }
+
+    @Test
+    void flushesThePartialLastBlockWhenTheCopyFails() throws IOException {
+        var file = dir.resolve("part");
+        Files.write(file, random(BLOCK));
+        var existing = Files.readAllBytes(file);
+        var bytes = random(BLOCK / 2 + 7);
+
+        assertThatThrownBy(() -> {
+            try (var writer = writer(file, BLOCK, new VolumeBudget(0))) {
+                writer.write(bytes, 0, bytes.length);
+                throw new IOException("Connection reset");
+            }
+        }).hasMessage("Connection reset");
+
+        var content = Files.readAllBytes(file);
+        assertThat(content).hasSize(BLOCK + bytes.length);
+        assertThat(content).startsWith(existing).endsWith(bytes);
+    }
+
+    @Test
+    void forcesOnceTheVolumeGoesOverItsBudget() throws IOException {
+        var volume = new VolumeBudget(3 * BLOCK);
+
+        try (var writer = writer(dir.resolve("part"), 0, volume)) {
+            writer.write(ByteBuffer.wrap(random(3 * BLOCK)));
+            assertThat(volume.getDirty()).isEqualTo(3 * BLOCK);
+
+            writer.write(ByteBuffer.wrap(random(BLOCK)));
+            assertThat(volume.getDirty()).isZero();
+
+            writer.write(ByteBuffer.wrap(random(BLOCK)));
+            assertThat(volume.getDirty()).isEqualTo(BLOCK);
+        }
+
+        //the rest is forced and released on close
+        assertThat(volume.getDirty()).isZero();
+    }
+
+    @Test
+    void aBudgetOfZeroNeverForces() {
+        var volume = new VolumeBudget(0);
+
+        assertThat(volume.written(Long.MAX_VALUE / 2)).isFalse();
+        volume.forced(Long.MAX_VALUE / 2);
+        assertThat(volume.getDirty()).isZero();
+    }
+
+    @Test
+    void positionalWritesAreChargedToTheVolume() throws IOException {
+        var file = dir.resolve("segmented");
+        var volume = new VolumeBudget(2 * BLOCK);
+        var bytes = random(4 * BLOCK);
+
+        try (var writer = new PositionalWriter(FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.READ), volume, metrics)) {
+            //segments land out of order
+            writer.write(ByteBuffer.wrap(bytes, 2 * BLOCK, 2 * BLOCK), 2 * BLOCK);
+            assertThat(volume.getDirty()).isEqualTo(2 * BLOCK);
+
+            writer.write(ByteBuffer.wrap(bytes, 0, BLOCK), 0);
+            assertThat(volume.getDirty()).isZero();
+
+            writer.write(ByteBuffer.wrap(bytes, BLOCK, BLOCK), BLOCK);
+            assertThat(volume.getDirty()).isEqualTo(BLOCK);
+        }
+
+        assertThat(volume.getDirty()).isZero();
+        assertThat(Files.readAllBytes(file)).isEqualTo(bytes);
+    }
+
+    private BlockWriter writer(Path file, long position, VolumeBudget volume) throws IOException {
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.READ);
+        return new BlockWriter(channel, position, BLOCK, bufferPool, volume, metrics);
+    }
+
+    private static byte[] random(int size) {
+        var bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
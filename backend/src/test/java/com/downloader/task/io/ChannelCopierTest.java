@@ -0,0 +1,202 @@
+package com.downloader.task.io;
+
+import com.downloader.entity.*;
+import com.downloader.service.DownloadMetrics;
+import com.downloader.task.checksum.*;
+import com.downloader.task.extract.StreamingExtractor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.apache.commons.compress.archivers.tar.*;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ChannelCopierTest {
+
+    private static final int MIN_BUFFER = 4096;
+    private static final int MAX_BUFFER = 65536;
+
+    @TempDir
+    Path dir;
+
+    private final CountingPool bufferPool = new CountingPool();
+    private final DownloadMetrics metrics = new DownloadMetrics(new SimpleMeterRegistry());
+
+    @Test
+    void copiesTheWholeBody() throws IOException {
+        var content = random(300_000);
+        var digest = new PrefixDigest(sha256(content));
+        var file = dir.resolve("part");
+
+        try (var writer = writer(file, 0)) {
+            var copied = new ArrayList<Integer>();
+            var copier = new ChannelCopier(bufferPool, digest, null);
+
+            assertThat(copier.copy(new Buffer().write(content), writer, () -> false, copied::add)).isTrue();
+            assertThat(copied.stream().mapToInt(Integer::intValue).sum()).isEqualTo(content.length);
+            //the buffer grew while the body came in faster than it was written
+            assertThat(Collections.max(copied)).isEqualTo(MAX_BUFFER);
+        }
+
+        assertThat(Files.readAllBytes(file)).isEqualTo(content);
+        assertThat(digest.getOffset()).isEqualTo(content.length);
+        verify(digest, file, content.length);
+        assertReturned();
+    }
+
+    @Test
+    void aStoppedCopyPicksUpWhereItLeft() throws IOException {
+        var large = random(500_000);
+        var archive = tarGz("bundle/large.bin", large);
+        var digest = new PrefixDigest(sha256(archive));
+        var file = dir.resolve("part");
+        var source = new Buffer().write(archive);
+        var downloadInfo = download();
+        var chunks = new AtomicInteger();
+        long written;
+
+        try (var extractor = StreamingExtractor.start(downloadInfo, () -> { })) {
+            var copier = new ChannelCopier(bufferPool, digest, extractor);
+            try (var writer = writer(file, 0)) {
+                assertThat(copier.copy(source, writer, () -> chunks.get() == 3, count -> chunks.incrementAndGet()))
+                    .isFalse();
+                written = writer.getPosition();
+            }
+
+            //nothing read from the body was dropped on the way to the file and the digest
+            assertThat(written).isEqualTo(archive.length - source.size());
+            assertThat(Files.readAllBytes(file)).isEqualTo(Arrays.copyOf(archive, (int) written));
+            assertThat(digest.getOffset()).isEqualTo(written);
+            assertReturned();
+
+            try (var writer = writer(file, written)) {
+                assertThat(copier.copy(source, writer, () -> false, count -> { })).isTrue();
+            }
+            extractor.finish();
+        }
+
+        assertThat(Files.readAllBytes(file)).isEqualTo(archive);
+        verify(digest, file, archive.length);
+        assertThat(Files.readAllBytes(dir.resolve("bundle/bundle/large.bin"))).isEqualTo(large);
+        assertThat(downloadInfo.getExtractedSize()).isEqualTo(archive.length);
+        assertReturned();
+    }
+
+    @Test
+    void returnsTheBufferWhenTheBodyFails() throws IOException {
+        var content = random(100_000);
+        var body = new ForwardingSource(new Buffer().write(content)) {
+            private long read;
+
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                if (read >= 20_000) {
+                    throw new IOException("Connection reset");
+                }
+                var count = super.read(sink, Math.min(byteCount, 20_000 - read));
+                read += count;
+                return count;
+            }
+        };
+        var copier = new ChannelCopier(bufferPool, null, null);
+        var copied = new AtomicInteger();
+
+        assertThatThrownBy(() -> {
+            try (var writer = writer(dir.resolve("part"), 0)) {
+                copier.copy(Okio.buffer(body), writer, () -> false, copied::addAndGet);
+            }
+        }).hasMessage("Connection reset");
+
+        //what made it into the buffer before the failure is lost, everything reported as copied is on disk
+        assertThat(copied.get()).isPositive();
+        assertThat(Files.readAllBytes(dir.resolve("part"))).isEqualTo(Arrays.copyOf(content, copied.get()));
+        assertReturned();
+    }
+
+    //every buffer the copy and the writer took is back in the pool
+    private void assertReturned() {
+        assertThat(bufferPool.outstanding).isZero();
+        assertThat(bufferPool.pooled()).isEqualTo(bufferPool.allocated.size());
+    }
+
+    private BlockWriter writer(Path file, long position) throws IOException {
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.READ);
+        return new BlockWriter(channel, position, MIN_BUFFER, bufferPool, new VolumeBudget(0), metrics);
+    }
+
+    private DownloadInfo download() {
+        return DownloadInfo
+            .builder()
+            .id("bundle")
+            .filename("bundle.tar.gz")
+            .outputPath(dir.toString())
+            .filePath(dir.resolve("bundle.tar.gz").toString())
+            .extract(ArchiveFormat.TAR_GZ)
+            .build();
+    }
+
+    private static void verify(PrefixDigest digest, Path file, long size) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            digest.verify(channel, size);
+        }
+    }
+
+    private static Checksum sha256(byte[] content) {
+        var hex = HexFormat.of().formatHex(ChecksumAlgorithm.SHA256.newDigest().digest(content));
+        return Checksum.parse("sha256:" + hex);
+    }
+
+    private static byte[] tarGz(String name, byte[] content) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(bytes))) {
+            var entry = new TarArchiveEntry(name);
+            entry.setSize(content.length);
+            tar.putArchiveEntry(entry);
+            tar.write(content);
+            tar.closeArchiveEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] random(int size) {
+        var bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    //keeps track of the buffers handed out and not given back yet
+    private static class CountingPool extends DirectBufferPool {
+
+        private final Set<ByteBuffer> allocated = Collections.newSetFromMap(new IdentityHashMap<>());
+        private int outstanding;
+
+        CountingPool() {
+            super(MIN_BUFFER, MAX_BUFFER);
+        }
+
+        @Override
+        public ByteBuffer acquire(int size) {
+            var buffer = super.acquire(size);
+            allocated.add(buffer);
+            outstanding++;
+            return buffer;
+        }
+
+        @Override
+        public void release(ByteBuffer buffer) {
+            outstanding--;
+            super.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.downloader.task.range;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentRangeTest {
+
+    @Test
+    void parsesARangeOfAKnownTotal() {
+        assertThat(ContentRange.parse("bytes 100-199/1000")).contains(new ContentRange(100, 199, 1000));
+        assertThat(ContentRange.parse("  bytes  0-0/1 ")).contains(new ContentRange(0, 0, 1));
+    }
+
+    @Test
+    void anUnknownTotalIsMinusOne() {
+        assertThat(ContentRange.parse("bytes 5-9/*")).contains(new ContentRange(5, 9, -1));
+    }
+
+    @Test
+    void ignoresWhatIsNotASatisfiedByteRange() {
+        assertThat(ContentRange.parse(null)).isEmpty();
+        assertThat(ContentRange.parse("bytes */1000")).isEmpty();
+        assertThat(ContentRange.parse("items 0-9/10")).isEmpty();
+        assertThat(ContentRange.parse("bytes 0-9")).isEmpty();
+    }
+}
@@ -0,0 +1,159 @@
+package com.downloader.task.range;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RangeSchedulerTest {
+
+    private long now;
+
+    @Test
+    void servesUnclaimedRangesFirst() {
+        var first = new Segment(0, 1000, 0);
+        var second = new Segment(1000, 2000, 1000);
+        var scheduler = new RangeScheduler(List.of(first, second), 100, () -> now);
+
+        assertThat(scheduler.next()).containsSame(first);
+        assertThat(scheduler.next()).containsSame(second);
+    }
+
+    @Test
+    void stealsTheSecondHalfOfTheSlowestRange() {
+        var fast = new Segment(0, 1000, 0);
+        var slow = new Segment(1000, 2000, 1000);
+        var scheduler = new RangeScheduler(List.of(fast, slow), 100, () -> now);
+        scheduler.next();
+        scheduler.next();
+
+        write(fast, 400);
+        write(slow, 100);
+        now += TimeUnit.SECONDS.toNanos(1);
+        //the slow worker has already reserved its next read
+        assertThat(slow.reserve(50)).isEqualTo(50);
+
+        var tail = scheduler.next().orElseThrow();
+
+        //400 B/s with 600 left against 100 B/s with 900 left, split at max(position, reserved) = 1150
+        assertThat(tail.getStart()).isEqualTo(1575);
+        assertThat(tail.getEnd()).isEqualTo(2000);
+        assertThat(tail.getPosition()).isEqualTo(1575);
+        assertThat(slow.getEnd()).isEqualTo(1575);
+        assertThat(fast.getEnd()).isEqualTo(1000);
+        assertCovers(scheduler.segments(), 2000);
+    }
+
+    @Test
+    void splitsAfterReservedBytesThatAreNotWrittenYet() {
+        var segment = new Segment(0, 1000, 0);
+        var scheduler = new RangeScheduler(List.of(segment), 100, () -> now);
+        scheduler.next();
+
+        //a read of up to 600 bytes is in flight, none of them are written yet
+        segment.reserve(600);
+        var tail = scheduler.next().orElseThrow();
+
+        assertThat(tail.getStart()).isEqualTo(800);
+        assertThat(segment.getEnd()).isEqualTo(800);
+        segment.advance(600);
+        assertCovers(scheduler.segments(), 1000);
+    }
+
+    @Test
+    void doesNotSplitBelowTwiceTheMinimum() {
+        var segment = new Segment(0, 1000, 0);
+        var scheduler = new RangeScheduler(List.of(segment), 100, () -> now);
+        scheduler.next();
+        write(segment, 801);
+
+        assertThat(scheduler.next()).isEmpty();
+        assertThat(segment.getEnd()).isEqualTo(1000);
+    }
+
+    @Test
+    void connectionsWithoutSamplesAreAssumedToRunAtTheAverage() {
+        var measured = new Segment(0, 1000, 0);
+        var fresh = new Segment(1000, 3000, 1000);
+        var scheduler = new RangeScheduler(List.of(measured, fresh), 100, () -> now);
+        scheduler.next();
+        scheduler.next();
+
+        write(measured, 500);
+        now += TimeUnit.SECONDS.toNanos(1);
+
+        //500 left at 500 B/s against 2000 left at the same assumed rate
+        var tail = scheduler.next().orElseThrow();
+        assertThat(tail.getStart()).isEqualTo(2000);
+        assertThat(fresh.getEnd()).isEqualTo(2000);
+    }
+
+    @Test
+    void rangesNeverOverlapOrLoseBytesUntilComplete() {
+        var totalSize = 100_000L;
+        var scheduler = new RangeScheduler(List.of(new Segment(0, totalSize, 0)), 100, () -> now);
+        var random = new Random(42);
+        var speeds = new int[]{4000, 2500, 1500};
+        var running = new Segment[speeds.length];
+        var reserved = new int[speeds.length];
+        var written = 0L;
+
+        while (!scheduler.isComplete()) {
+            now += TimeUnit.MILLISECONDS.toNanos(100);
+            //busy workers reserve their reads first, so that the steals of idle ones land between reads and writes
+            for (int worker = 0; worker < speeds.length; worker++) {
+                if (running[worker] != null && running[worker].isComplete()) {
+                    scheduler.release(running[worker]);
+                    running[worker] = null;
+                }
+                reserved[worker] = running[worker] != null ? running[worker].reserve(read(speeds[worker], random)) : 0;
+            }
+            for (int worker = 0; worker < speeds.length; worker++) {
+                if (running[worker] == null) {
+                    running[worker] = scheduler.next().orElse(null);
+                    reserved[worker] = running[worker] != null
+                        ? running[worker].reserve(read(speeds[worker], random))
+                        : 0;
+                }
+            }
+            for (int worker = 0; worker < speeds.length; worker++) {
+                if (running[worker] != null) {
+                    running[worker].advance(reserved[worker]);
+                    written += reserved[worker];
+                }
+            }
+            assertCovers(scheduler.segments(), totalSize);
+        }
+
+        assertThat(written).isEqualTo(totalSize);
+        assertThat(scheduler.segments()).hasSizeGreaterThan(1);
+    }
+
+    //bytes read in 100ms
+    private static int read(int speed, Random random) {
+        return speed / 10 + random.nextInt(50);
+    }
+
+    //reserves and writes the bytes the way a worker does
+    private static void write(Segment segment, int bytes) {
+        segment.advance(segment.reserve(bytes));
+    }
+
+    //sorted by start, the ranges follow each other from 0 to totalSize without a gap or an overlap, and each
+    //position lies within its range
+    private static void assertCovers(List<Segment> segments, long totalSize) {
+        var sorted = segments
+            .stream()
+            .sorted(Comparator.comparingLong(Segment::getStart))
+            .toList();
+        var expectedStart = 0L;
+        for (var segment : sorted) {
+            assertThat(segment.getStart()).isEqualTo(expectedStart);
+            assertThat(segment.getEnd()).isGreaterThanOrEqualTo(segment.getStart());
+            assertThat(segment.getPosition()).isBetween(segment.getStart(), segment.getEnd());
+            expectedStart = segment.getEnd();
+        }
+        assertThat(expectedStart).isEqualTo(totalSize);
+    }
+}
@@ -0,0 +1,50 @@
+package com.downloader.task.retry;
+
+import java.io.*;
+import java.net.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ErrorClassTest {
+
+    @Test
+    void classifiesTransportFailuresThroughTheirCauses() {
+        assertThat(ErrorClass.of(new SocketTimeoutException("read timed out"))).contains(ErrorClass.TIMEOUT);
+        assertThat(ErrorClass.of(new ConnectException("refused"))).contains(ErrorClass.RESET);
+        assertThat(ErrorClass.of(new EOFException("unexpected end of stream"))).contains(ErrorClass.RESET);
+        assertThat(ErrorClass.of(new UncheckedIOException(new IOException(new SocketException("reset")))))
+            .contains(ErrorClass.RESET);
+    }
+
+    @Test
+    void classifiesStatusCodes() {
+        assertThat(ErrorClass.of(new HttpStatusException(429, Duration.ZERO))).contains(ErrorClass.RATE_LIMITED);
+        assertThat(ErrorClass.of(new HttpStatusException(408, Duration.ZERO))).contains(ErrorClass.TIMEOUT);
+        assertThat(ErrorClass.of(new HttpStatusException(503, Duration.ZERO))).contains(ErrorClass.SERVER_ERROR);
+        assertThat(ErrorClass.of(new HttpStatusException(404, Duration.ZERO))).isEmpty();
+        assertThat(ErrorClass.of(new HttpStatusException(416, Duration.ZERO))).isEmpty();
+    }
+
+    @Test
+    void leavesEverythingElseUnclassified() {
+        assertThat(ErrorClass.of(new FileNotFoundException("/downloads/a.bin"))).isEmpty();
+        assertThat(ErrorClass.of(new IllegalStateException())).isEmpty();
+    }
+
+    @Test
+    void parsesRetryAfterInSecondsOrAsADate() {
+        assertThat(HttpStatusException.of(503, "120").getRetryAfter()).isEqualTo(Duration.ofSeconds(120));
+        assertThat(HttpStatusException.of(503, null).getRetryAfter()).isZero();
+        assertThat(HttpStatusException.of(503, "soon").getRetryAfter()).isZero();
+
+        var inAMinute = ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(1).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        assertThat(HttpStatusException.of(429, inAMinute).getRetryAfter().toMillis())
+            .isCloseTo(60_000, within(2_000L));
+        var aMinuteAgo = ZonedDateTime.now(ZoneOffset.UTC).minusMinutes(1).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        assertThat(HttpStatusException.of(429, aMinuteAgo).getRetryAfter()).isZero();
+    }
+}
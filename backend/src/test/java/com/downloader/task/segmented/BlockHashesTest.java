@@ -0,0 +1,131 @@
+package com.downloader.task.segmented;
+
+import com.downloader.task.range.Segment;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.*;
+
+class BlockHashesTest {
+
+    private static final int BLOCK = 1000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void streamedBlocksHashLikeTheBytesOnDisk() throws IOException {
+        var bytes = random(3 * BLOCK + 500);
+        var file = write(bytes);
+        var streamed = new BlockHashes(BLOCK, bytes.length);
+        //block 0 passes by in order, block 1 from its middle only and has to be read back, 2 and 3 are not written
+        streamed.update(0, bytes, 0, 300);
+        streamed.update(300, bytes, 300, BLOCK - 300);
+        streamed.update(BLOCK + 500, bytes, BLOCK + 500, 500);
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            streamed.complete(channel, List.of(
+                new Segment(0, 2 * BLOCK, 2 * BLOCK),
+                new Segment(2 * BLOCK, bytes.length, 2 * BLOCK + 10)
+            ));
+
+            var described = streamed.describe();
+            assertThat(described).hasSize(3);
+            assertThat(described.getFirst()).isEqualTo(Integer.toString(BLOCK));
+            assertThat(described.get(1)).isEqualTo("0 " + hex(hash(bytes, 0)));
+            assertThat(described.get(2)).isEqualTo("1 " + hex(hash(bytes, 1)));
+            assertThat(streamed.verify(channel)).isEmpty();
+        }
+    }
+
+    @Test
+    void theLastBlockIsShort() {
+        var blocks = new BlockHashes(BLOCK, 2 * BLOCK + 1);
+
+        assertThat(blocks.count()).isEqualTo(3);
+        assertThat(blocks.blockStart(2)).isEqualTo(2 * BLOCK);
+        assertThat(blocks.blockEnd(2)).isEqualTo(2 * BLOCK + 1);
+    }
+
+    @Test
+    void reportsAndForgetsExactlyTheBlocksThatChangedOnDisk() throws IOException {
+        var bytes = random(40 * BLOCK);
+        var file = write(bytes);
+        var blocks = new BlockHashes(BLOCK, bytes.length);
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            blocks.complete(channel, List.of(new Segment(0, bytes.length, bytes.length)));
+
+            flip(channel, 7 * BLOCK + 3);
+            flip(channel, 31 * BLOCK);
+            assertThat(blocks.verify(channel)).containsExactly(7, 31);
+
+            //forgotten until recorded again
+            assertThat(blocks.verify(channel)).isEmpty();
+            assertThat(blocks.describe()).hasSize(39);
+        }
+    }
+
+    @Test
+    void describedHashesLoadBack() throws IOException {
+        var bytes = random(5 * BLOCK);
+        var file = write(bytes);
+        var blocks = new BlockHashes(BLOCK, bytes.length);
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            blocks.complete(channel, List.of(new Segment(0, 3 * BLOCK, 3 * BLOCK)));
+
+            var loaded = BlockHashes.load(blocks.describe(), BLOCK, bytes.length);
+            assertThat(loaded.describe()).isEqualTo(blocks.describe());
+
+            flip(channel, 2 * BLOCK);
+            assertThat(loaded.verify(channel)).containsExactly(2);
+        }
+    }
+
+    @Test
+    void hashesOfAnotherBlockSizeAreDropped() {
+        var loaded = BlockHashes.load(List.of("4096", "0 " + hex(BlockHashes.hash(new byte[4096]))), BLOCK, 10 * BLOCK);
+
+        assertThat(loaded.describe()).containsExactly(Integer.toString(BLOCK));
+    }
+
+    @Test
+    void aTornSidecarDoesNotLoad() {
+        var line = "1 " + hex(BlockHashes.hash(new byte[BLOCK]));
+
+        assertThatThrownBy(() -> BlockHashes.load(List.of(Integer.toString(BLOCK), line.substring(0, 21)), BLOCK,
+            10 * BLOCK)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BlockHashes.load(List.of(Integer.toString(BLOCK), "3"), BLOCK, 10 * BLOCK))
+            .isInstanceOf(RuntimeException.class);
+        assertThat(BlockHashes.load(List.of(), BLOCK, 10 * BLOCK).describe()).hasSize(1);
+    }
+
+    private Path write(byte[] bytes) throws IOException {
+        return Files.write(dir.resolve("file.part"), bytes);
+    }
+
+    private static void flip(FileChannel channel, long position) throws IOException {
+        var buffer = ByteBuffer.allocate(1);
+        channel.read(buffer, position);
+        buffer.put(0, (byte) ~buffer.get(0)).rewind();
+        channel.write(buffer, position);
+    }
+
+    private static byte[] hash(byte[] bytes, int index) {
+        return BlockHashes.hash(Arrays.copyOfRange(bytes, index * BLOCK, (index + 1) * BLOCK));
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    private static byte[] random(int size) {
+        var bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,161 @@
+package com.downloader.task.segmented;
+
+import com.downloader.TestProperties;
+import com.downloader.entity.*;
+import com.downloader.service.*;
+import com.downloader.task.RangeDispatcher;
+import com.downloader.task.estimate.SpeedEstimator;
+import com.downloader.task.io.DirectBufferPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.IntStream;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//a resumed download whose part file got one byte flipped while it was paused
+class SegmentedDownloadTaskTest {
+
+    private static final int BLOCK = 4096;
+    private static final int BLOCKS = 8;
+    private static final int CORRUPT = 5;
+
+    @TempDir
+    Path dir;
+
+    private final byte[] content = random(BLOCKS * BLOCK);
+    private final RangeDispatcher dispatcher = new RangeDispatcher(content);
+    private final MockWebServer server = new MockWebServer();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @BeforeEach
+    void start() throws IOException {
+        server.setDispatcher(dispatcher);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        executor.close();
+        server.shutdown();
+    }
+
+    @Test
+    void refetchesOnlyTheBlockThatNoLongerMatchesItsHash() throws IOException {
+        var blocks = new ArrayList<String>();
+        blocks.add(Integer.toString(BLOCK));
+        IntStream
+            .range(0, BLOCKS)
+            .mapToObj(index -> "%d %s".formatted(index, HexFormat.of().formatHex(hash(index))))
+            .forEach(blocks::add);
+        var download = pausedWithCorruptBlock(blocks, null);
+
+        task(download).run();
+
+        assertThat(download.getStatus()).isEqualTo(DownloadStatus.COMPLETED);
+        assertThat(dispatcher.ranges()).containsExactly(range(CORRUPT));
+        assertThat(Files.readAllBytes(dir.resolve("file.bin"))).isEqualTo(content);
+    }
+
+    @Test
+    void withoutTheSidecarTheChecksumFindsTheBlock() throws IOException {
+        var download = pausedWithCorruptBlock(null, checksum());
+
+        task(download).run();
+
+        //every block is compared with the source once, only the corrupt one differs
+        assertThat(download.getStatus()).isEqualTo(DownloadStatus.COMPLETED);
+        assertThat(dispatcher.ranges()).containsExactlyInAnyOrderElementsOf(IntStream
+            .range(0, BLOCKS)
+            .mapToObj(this::range)
+            .toList());
+        assertThat(Files.readAllBytes(dir.resolve("file.bin"))).isEqualTo(content);
+    }
+
+    @Test
+    void aTornSidecarIsIgnored() throws IOException {
+        var torn = "%d %s".formatted(CORRUPT, HexFormat.of().formatHex(hash(CORRUPT)).substring(0, 11));
+        var download = pausedWithCorruptBlock(List.of(Integer.toString(BLOCK), torn), checksum());
+
+        task(download).run();
+
+        assertThat(download.getStatus()).isEqualTo(DownloadStatus.COMPLETED);
+        assertThat(dispatcher.ranges()).hasSize(BLOCKS);
+        assertThat(Files.readAllBytes(dir.resolve("file.bin"))).isEqualTo(content);
+    }
+
+    //every segment written, the byte flipped after its block was hashed
+    private DownloadInfo pausedWithCorruptBlock(List<String> blocks, String checksum) throws IOException {
+        var corrupt = content.clone();
+        corrupt[CORRUPT * BLOCK + 17] ^= 0x20;
+        Files.write(dir.resolve("file.bin.part"), corrupt);
+        var half = content.length / 2;
+        Files.write(dir.resolve("file.bin.part.segments"), List.of(
+            "0 %d %d".formatted(half, half),
+            "%d %d %d".formatted(half, content.length, content.length)
+        ));
+        if (blocks != null) {
+            Files.write(dir.resolve("file.bin.part.blocks"), blocks);
+        }
+        return DownloadInfo
+            .builder()
+            .id("segmented")
+            .url(server.url("/file.bin").toString())
+            .filename("file.bin")
+            .filePath(dir.resolve("file.bin").toString())
+            .outputPath(dir.toString())
+            .status(DownloadStatus.QUEUED)
+            .totalSize(content.length)
+            .downloadedSize(content.length)
+            .rangeSupported(true)
+            .checksum(checksum)
+            .build();
+    }
+
+    private SegmentedDownloadTask task(DownloadInfo download) {
+        var properties = TestProperties.defaults();
+        var metrics = new DownloadMetrics(new SimpleMeterRegistry());
+        return SegmentedDownloadTask
+            .builder()
+            .downloadInfo(download)
+            .httpClient(new OkHttpClient())
+            .downloadSink(new DownloadSink(properties, metrics))
+            .bandwidthLimiter(new BandwidthLimiter(properties))
+            .metrics(metrics)
+            .speedEstimator(SpeedEstimator.of(properties.progress()))
+            .retryEngine(new RetryEngine(properties, metrics))
+            .executor(executor)
+            .diskWriteScheduler(new DiskWriteScheduler(properties, new DirectBufferPool(4096, 65536), metrics))
+            .connections(2)
+            .minSegmentSize(BLOCK)
+            .minSplitSize(BLOCK)
+            .blockSize(BLOCK)
+            .maxSourceFailures(3)
+            .slowSourceRatio(0)
+            .build();
+    }
+
+    private String checksum() {
+        return "sha256:" + HexFormat.of().formatHex(BlockHashes.hash(content));
+    }
+
+    private byte[] hash(int index) {
+        return BlockHashes.hash(Arrays.copyOfRange(content, index * BLOCK, (index + 1) * BLOCK));
+    }
+
+    private String range(int index) {
+        return "bytes=%d-%d".formatted(index * BLOCK, (index + 1) * BLOCK - 1);
+    }
+
+    private static byte[] random(int size) {
+        var bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
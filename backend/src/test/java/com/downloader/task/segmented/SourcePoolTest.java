@@ -0,0 +1,128 @@
+package com.downloader.task.segmented;
+
+import com.downloader.entity.*;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourcePoolTest {
+
+    private static final int READ = 64 * 1024;
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final SourcePool pool = new SourcePool(download(), 3, 0.25, 1024 * 1024);
+    private final Map<String, SourcePool.Source> byUrl = new HashMap<>();
+
+    SourcePoolTest() {
+        for (int i = 0; i < 100; i++) {
+            var source = pool.pick().orElseThrow();
+            byUrl.putIfAbsent(source.url(), source);
+        }
+    }
+
+    @Test
+    void unmeasuredSourcesAreAllTried() {
+        assertThat(byUrl).containsOnlyKeys("http://primary/f", "http://fast/f", "http://slow/f");
+        assertThat(pool.isSlow(source("slow"))).isFalse();
+    }
+
+    @Test
+    void picksSourcesInProportionToTheirThroughput() {
+        //64 MB/s, 32 MB/s and 3.2 MB/s per connection
+        reads(source("fast"), 100, MS);
+        reads(source("primary"), 100, 2 * MS);
+        reads(source("slow"), 100, 20 * MS);
+
+        var picks = new HashMap<String, Integer>();
+        for (int i = 0; i < 20_000; i++) {
+            picks.merge(pool.pick().orElseThrow().url(), 1, Integer::sum);
+        }
+
+        assertThat(picks.get("http://fast/f")).isBetween(11_500, 14_000);
+        assertThat(picks.get("http://primary/f")).isBetween(5_500, 7_000);
+        assertThat(picks.get("http://slow/f")).isBetween(400, 1_000);
+    }
+
+    @Test
+    void aSourceSlowerThanTheRatioOfTheFastestIsSlow() {
+        reads(source("fast"), 100, MS);
+        reads(source("primary"), 100, 3 * MS);
+        reads(source("slow"), 100, 20 * MS);
+
+        assertThat(pool.isSlow(source("slow"))).isTrue();
+        assertThat(pool.isSlow(source("primary"))).isFalse();
+        assertThat(pool.isSlow(source("fast"))).isFalse();
+    }
+
+    @Test
+    void followsASourceThatSlowsDown() {
+        var mirror = source("fast");
+        //ten seconds at 64 MB/s, then twenty at 3.2 MB/s
+        reads(mirror, 10_000, MS);
+        reads(mirror, 1_000, 20 * MS);
+
+        assertThat(mirror.throughput()).isBetween(3.0e6, 6.5e6);
+        reads(source("primary"), 100, 2 * MS);
+        assertThat(pool.isSlow(mirror)).isTrue();
+    }
+
+    @Test
+    void dropsASourceAfterTooManyFailuresInARow() {
+        var mirror = source("slow");
+        var failure = new IOException("Connection reset");
+
+        assertThat(pool.fail(mirror, failure)).isTrue();
+        assertThat(pool.fail(mirror, failure)).isTrue();
+        mirror.succeeded();
+        assertThat(pool.fail(mirror, failure)).isTrue();
+        assertThat(pool.fail(mirror, failure)).isTrue();
+        assertThat(mirror.isDropped()).isFalse();
+
+        //the failed range still has the other sources to go to
+        assertThat(pool.fail(mirror, failure)).isTrue();
+        assertThat(mirror.isDropped()).isTrue();
+        for (int i = 0; i < 100; i++) {
+            assertThat(pool.pick()).get().isNotSameAs(mirror);
+        }
+    }
+
+    @Test
+    void neverDropsTheLastSource() {
+        var failure = new IOException("Connection reset");
+        for (int i = 0; i < 3; i++) {
+            pool.fail(source("slow"), failure);
+            pool.fail(source("fast"), failure);
+        }
+
+        var primary = source("primary");
+        for (int i = 0; i < 3; i++) {
+            assertThat(pool.fail(primary, failure)).isFalse();
+        }
+        assertThat(primary.isDropped()).isFalse();
+        assertThat(pool.pick()).containsSame(primary);
+    }
+
+    private SourcePool.Source source(String host) {
+        return byUrl.get("http://%s/f".formatted(host));
+    }
+
+    private static void reads(SourcePool.Source source, int count, long nanos) {
+        for (int i = 0; i < count; i++) {
+            source.record(READ, nanos);
+        }
+    }
+
+    private static DownloadInfo download() {
+        return DownloadInfo
+            .builder()
+            .url("http://primary/f")
+            .mirrors(List.of(
+                new Mirror("http://fast/f", null, null),
+                new Mirror("http://slow/f", null, null)
+            ))
+            .build();
+    }
+}
@@ -0,0 +1,105 @@
+package com.downloader.task.throttle;
+
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long MB = 1_000_000;
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void aRateOfZeroIsUnlimited() {
+        var bucket = new TokenBucket(0);
+
+        assertThat(bucket.isUnlimited()).isTrue();
+        assertThat(bucket.reserve(100 * MB)).isZero();
+        assertThat(new TokenBucket(-1).getBytesPerSecond()).isZero();
+    }
+
+    @Test
+    void letsABurstOfAHundredMillisecondsThrough() {
+        var bucket = new TokenBucket(MB);
+
+        assertThat(bucket.reserve(MB / 20)).isZero();
+        assertThat(bucket.reserve(MB / 25)).isZero();
+        //past the burst each reservation waits for the ones before it, less the time that passed since
+        assertThat(bucket.reserve(MB / 10)).isBetween(40 * MS, 90 * MS);
+    }
+
+    @Test
+    void chargesEachReservationAtTheRate() {
+        var bucket = new TokenBucket(10 * MB);
+
+        var waits = new long[4];
+        for (int i = 0; i < waits.length; i++) {
+            waits[i] = bucket.reserve(MB);
+        }
+
+        //100ms a reservation, less the burst
+        for (int i = 0; i < waits.length; i++) {
+            assertThat(waits[i]).isBetween(Math.max(i * 100 - 50, 0) * MS, i * 100 * MS);
+        }
+    }
+
+    @Test
+    void aNewRateDropsTheDebtOfTheOldOne() {
+        var bucket = new TokenBucket(MB);
+        bucket.reserve(10 * MB);
+
+        bucket.setBytesPerSecond(100 * MB);
+
+        assertThat(bucket.reserve(MB)).isZero();
+        bucket.setBytesPerSecond(0);
+        assertThat(bucket.reserve(10 * MB)).isZero();
+    }
+
+    @Test
+    void concurrentReservationsShareTheRate() throws Exception {
+        var bucket = new TokenBucket(10 * MB);
+        var threads = 8;
+        var perThread = 50;
+        var maxWait = new ConcurrentLinkedQueue<Long>();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var start = new CountDownLatch(1);
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    var wait = 0L;
+                    for (int i = 0; i < perThread; i++) {
+                        wait = Math.max(wait, bucket.reserve(10_000));
+                    }
+                    maxWait.add(wait);
+                });
+            }
+            start.countDown();
+        }
+
+        //4 MB reserved in total at 10 MB/s, none of it lost to a race: the last one waits 400ms less the burst
+        var longest = maxWait
+            .stream()
+            .mapToLong(Long::longValue)
+            .max()
+            .orElseThrow();
+        assertThat(longest).isBetween(200 * MS, 300 * MS);
+    }
+
+    @Test
+    void acquireParksUntilTheBytesFit() {
+        var bucket = new TokenBucket(10 * MB);
+
+        var started = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            bucket.acquire(MB);
+        }
+
+        assertThat(System.nanoTime() - started).isBetween(280 * MS, 1000 * MS);
+    }
+}
@@ -1,4 +1,4 @@
-import React, {useState, useEffect} from 'react';
+import React, {useState, useEffect, useRef} from 'react';
 import DownloadForm from './components/DownloadForm';
 import DownloadList from './components/DownloadList';
 import Header from './components/Header';
@@ -15,8 +15,14 @@ export const getApiUrl = () => {
     }
 };
 
+// Downloads per page of the list, the next one is fetched when the end of the list scrolls into view
+const PAGE_SIZE = 100;
+
 function App() {
     const [downloads, setDownloads] = useState([]);
+    const [nextCursor, setNextCursor] = useState(null);
+    const loadingMore = useRef(false);
+    const countsTimer = useRef(null);
     const [globalEventSource, setGlobalEventSource] = useState(null);
     const [isModalOpen, setIsModalOpen] = useState(false);
     const [stats, setStats] = useState({
@@ -39,20 +45,76 @@ function App() {
         });
     };
 
+    const fetchDownloadsPage = async (cursor) => {
+        const params = new URLSearchParams({limit: String(PAGE_SIZE)});
+        if (cursor) {
+            params.set('cursor', cursor);
+        }
+        const response = await fetch(`${getApiUrl()}/api/downloads?${params}`);
+        if (!response.ok) {
+            return null;
+        }
+        return {items: await response.json(), cursor: response.headers.get('X-Next-Cursor')};
+    };
+
     const fetchDownloadsList = async () => {
         try {
-            const response = await fetch(`${getApiUrl()}/api/downloads`);
-            if (response.ok) {
-                const downloadsList = await response.json();
-                setDownloads(downloadsList);
-                return downloadsList;
+            // Only the first page, the rest is loaded on demand by loadMoreDownloads
+            const page = await fetchDownloadsPage(null);
+            if (!page) {
+                return [];
             }
+            setDownloads(page.items);
+            setNextCursor(page.cursor);
+            return page.items;
         } catch (error) {
             console.error('Error fetching downloads list:', error);
         }
         return [];
     };
 
+    const loadMoreDownloads = async () => {
+        if (!nextCursor || loadingMore.current) {
+            return;
+        }
+        loadingMore.current = true;
+        try {
+            const page = await fetchDownloadsPage(nextCursor);
+            if (page) {
+                // Progress events may already have added some of them
+                setDownloads(prev => {
+                    const known = new Set(prev.map(d => d.id));
+                    return prev.concat(page.items.filter(d => !known.has(d.id)));
+                });
+                setNextCursor(page.cursor);
+            }
+        } catch (error) {
+            console.error('Error fetching more downloads:', error);
+        } finally {
+            loadingMore.current = false;
+        }
+    };
+
+    // The header shows every download, not only the loaded pages
+    const fetchCounts = async () => {
+        try {
+            const response = await fetch(`${getApiUrl()}/api/downloads/counts`);
+            if (!response.ok) {
+                return;
+            }
+            const counts = await response.json();
+            const count = (...statuses) => statuses.reduce((sum, status) => sum + (counts[status] || 0), 0);
+            setStats({
+                total: Object.values(counts).reduce((sum, n) => sum + n, 0),
+                active: count('DOWNLOADING', 'QUEUED'),
+                completed: count('COMPLETED'),
+                failed: count('FAILED')
+            });
+        } catch (error) {
+            console.error('Error fetching download counts:', error);
+        }
+    };
+
     const setupGlobalSSEConnection = () => {
         if (globalEventSource) {
             return;
@@ -109,16 +171,21 @@ function App() {
         // eslint-disable-next-line react-hooks/exhaustive-deps
     }, []);
 
-    // Update stats whenever downloads change
+    // Refresh stats when downloads change, at most once a second
     useEffect(() => {
-        const total = downloads.length;
-        const active = downloads.filter(d => d.status === 'DOWNLOADING' || d.status === 'QUEUED').length;
-        const completed = downloads.filter(d => d.status === 'COMPLETED').length;
-        const failed = downloads.filter(d => d.status === 'FAILED').length;
-
-        setStats({total, active, completed, failed});
+        if (!countsTimer.current) {
+            countsTimer.current = setTimeout(() => {
+                countsTimer.current = null;
+                fetchCounts();
+            }, 1000);
+        }
+        // eslint-disable-next-line react-hooks/exhaustive-deps
     }, [downloads]);
 
+    useEffect(() => {
+        return () => clearTimeout(countsTimer.current);
+    }, []);
+
     const handleDownloadStart = async (downloadInfo) => {
         try {
             // Add the download to the list immediately
@@ -194,6 +261,8 @@ function App() {
                         onPauseDownload={handlePauseDownload}
                         onResumeDownload={handleResumeDownload}
                         onAddDownload={() => setIsModalOpen(true)}
+                        hasMore={nextCursor !== null}
+                        onLoadMore={loadMoreDownloads}
                     />
                 </div>
             </div>
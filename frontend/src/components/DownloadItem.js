@@ -170,6 +170,12 @@ const DownloadItem = ({ download, onCancel, onPause, onResume }) => {
           {download.timeRemaining > 0 && isActive && (
             <span>{formatTimeRemaining(download.timeRemaining)} Remaining</span>
           )}
+          {download.extractedSize > 0 && (
+            <span>
+              {download.extractedFiles} files extracted
+              {isActive && download.totalSize > 0 && ` (${(download.extractedSize / download.totalSize * 100).toFixed(1)}%)`}
+            </span>
+          )}
         </div>
       </div>
 
@@ -1,7 +1,23 @@
-import React from 'react';
+import React, { useEffect, useRef } from 'react';
 import DownloadItem from './DownloadItem';
 
-const DownloadList = ({ downloads, onCancelDownload, onPauseDownload, onResumeDownload, onAddDownload }) => {
+const DownloadList = ({ downloads, onCancelDownload, onPauseDownload, onResumeDownload, onAddDownload, hasMore, onLoadMore }) => {
+  const sentinel = useRef(null);
+
+  // Loads the next page once the end of the list comes into view
+  useEffect(() => {
+    if (!hasMore || !sentinel.current) {
+      return undefined;
+    }
+    const observer = new IntersectionObserver(entries => {
+      if (entries.some(entry => entry.isIntersecting)) {
+        onLoadMore();
+      }
+    });
+    observer.observe(sentinel.current);
+    return () => observer.disconnect();
+  }, [hasMore, onLoadMore]);
+
   return (
     <div className="space-y-6">
       {/* Header with Add Button - Always Visible */}
@@ -59,6 +75,16 @@ const DownloadList = ({ downloads, onCancelDownload, onPauseDownload, onResumeDo
               onResume={onResumeDownload}
             />
           ))}
+          {hasMore && (
+            <div ref={sentinel} className="text-center">
+              <button
+                onClick={onLoadMore}
+                className="text-sm text-gray-400 hover:text-gray-200 transition-colors"
+              >
+                Load more
+              </button>
+            </div>
+          )}
         </div>
       )}
     </div>